@@ -0,0 +1,145 @@
+package minesweeper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.Board;
+import minesweeper.OptionBar;
+import minesweeper.engine.GameState;
+
+/**
+ * The Board's own entry points, with its views attached: the first click,
+ * chording every number that can be chorded, and the end of game pass after
+ * clicking a mine. Boards up to Board.PAINTED_THRESHOLD cells update one
+ * component per cell; larger boards only schedule repaints. Each move is
+ * timed until Board.flush returns, so from being sent to the engine thread
+ * until its changes are applied on the event dispatch thread. Runs headless.
+ *
+ * Setups also play through the Board, so the game is only changed on the
+ * engine thread, and read it after Board.flush. Boards smaller than 32 are
+ * left out, since JMH's per-invocation setup would swamp their moves.
+ *
+ * @author blueajo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardBenchmark {
+
+	@Param({ "32", "512" })
+	int size;
+
+	@Param({ "0.12", "0.21" })
+	double density;
+
+	private Board board;
+	private GameState state;
+	private int center;
+
+	// Numbers whose mines are all flagged and that still have hidden
+	// neighbors, and a mine to lose on.
+	private int[] chordable;
+	private int numChordable;
+	private int mine;
+
+	@Setup(Level.Trial)
+	public void createBoard() {
+		this.board = new Board(this.size, this.size, Boards.mines(this.size, this.density), 0, new OptionBar());
+		this.state = this.board.getState();
+		this.center = Boards.center(this.size);
+		this.chordable = new int[this.size * this.size];
+	}
+
+	@Setup(Level.Invocation)
+	public void resetBoard() {
+		this.board.newGame();
+		this.board.flush();
+	}
+
+	@Benchmark
+	public Board firstClick() {
+		this.board.firstClick(this.center);
+		this.board.flush();
+		return this.board;
+	}
+
+	/**
+	 * Opens the board and flags every mine next to a revealed number, so that
+	 * chording those numbers reveals the rest of their neighbors.
+	 */
+	@State(Scope.Thread)
+	public static class Opened {
+
+		@Setup(Level.Invocation)
+		public void open(BoardBenchmark bench) {
+			GameState state = bench.state;
+			bench.board.firstClick(bench.center);
+			bench.board.flush();
+
+			// Flags the mines next to revealed numbers, keeping one mine
+			// unflagged to click for the end of game pass.
+			bench.mine = -1;
+			for (int i = 0; i < state.getNumCells(); i++) {
+				if (!state.isMine(i)) {
+					continue;
+				}
+				if (state.numAdjacentHidden(i) == state.numNeighbors(i) && bench.mine == -1) {
+					bench.mine = i;
+				} else if (state.numAdjacentHidden(i) < state.numNeighbors(i)) {
+					bench.board.rightClickSquare(i);
+				}
+			}
+			bench.board.flush();
+			if (bench.mine == -1) {
+				for (int i = 0; bench.mine == -1; i++) {
+					if (state.isFlagged(i)) {
+						bench.board.rightClickSquare(i);
+						bench.mine = i;
+					}
+				}
+				bench.board.flush();
+			}
+
+			bench.numChordable = 0;
+			for (int i = 0; i < state.getNumCells(); i++) {
+				if (state.isRevealed(i) && state.getAdjacent(i) > 0
+						&& state.getAdjacent(i) == state.numAdjacentFlagged(i)
+						&& state.numAdjacentHidden(i) > state.numAdjacentFlagged(i)) {
+					bench.chordable[bench.numChordable++] = i;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int chord(Opened opened) {
+		for (int i = 0; i < this.numChordable; i++) {
+			this.board.leftClickSquare(this.chordable[i]);
+		}
+		this.board.flush();
+		return this.state.getNumSafeRevealed();
+	}
+
+	@Benchmark
+	public boolean endGame(Opened opened) {
+		this.board.leftClickSquare(this.mine);
+		this.board.flush();
+		return this.state.isLost();
+	}
+}
@@ -0,0 +1,29 @@
+package minesweeper.bench;
+
+/**
+ * Sizes shared by the benchmarks. Boards are square, size by size, with
+ * density times their cells in mines.
+ *
+ * @author blueajo
+ *
+ */
+final class Boards {
+
+	private Boards() {
+	}
+
+	/**
+	 * @return the number of mines for a square board of the given size and
+	 *         density, leaving room for the safe first click
+	 */
+	static int mines(int size, double density) {
+		return Math.min(size * size - 9, (int) Math.round(size * size * density));
+	}
+
+	/**
+	 * @return the index of the center cell of a square board
+	 */
+	static int center(int size) {
+		return (size / 2) * size + size / 2;
+	}
+}
@@ -0,0 +1,63 @@
+package minesweeper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.engine.GameState;
+
+/**
+ * Mine placement and adjacency counting on the first click, on a game that is
+ * reset to a new seed before every invocation. Boards smaller than 256 are
+ * left out, since JMH's per-invocation setup costs about as much as placing
+ * their mines.
+ *
+ * @author blueajo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+	@Param({ "256", "2048" })
+	int size;
+
+	@Param({ "0.12", "0.21" })
+	double density;
+
+	private GameState state;
+	private int center;
+	private long seed;
+
+	@Setup(Level.Trial)
+	public void createGame() {
+		this.state = new GameState(this.size, this.size, Boards.mines(this.size, this.density), 0);
+		this.center = Boards.center(this.size);
+	}
+
+	@Setup(Level.Invocation)
+	public void resetGame() {
+		this.state.reset(++this.seed);
+	}
+
+	@Benchmark
+	public GameState placeMines() {
+		this.state.placeMines(this.center);
+		return this.state;
+	}
+}
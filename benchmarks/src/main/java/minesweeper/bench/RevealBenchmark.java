@@ -0,0 +1,63 @@
+package minesweeper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.engine.GameState;
+
+/**
+ * The zero-cell cascade of the first reveal. Mines are placed before every
+ * invocation, so only the cascade is measured; low densities open most of
+ * the board. Boards smaller than 256 are left out, since JMH's per-invocation
+ * setup costs about as much as their cascades and would swamp the result.
+ *
+ * @author blueajo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RevealBenchmark {
+
+	@Param({ "256", "2048" })
+	int size;
+
+	@Param({ "0.05", "0.12", "0.21" })
+	double density;
+
+	private GameState state;
+	private int center;
+	private long seed;
+
+	@Setup(Level.Trial)
+	public void createGame() {
+		this.state = new GameState(this.size, this.size, Boards.mines(this.size, this.density), 0);
+		this.center = Boards.center(this.size);
+	}
+
+	@Setup(Level.Invocation)
+	public void placeMines() {
+		this.state.reset(++this.seed);
+		this.state.placeMines(this.center);
+	}
+
+	@Benchmark
+	public int cascade() {
+		return this.state.reveal(this.center);
+	}
+}
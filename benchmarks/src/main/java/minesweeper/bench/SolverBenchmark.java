@@ -0,0 +1,87 @@
+package minesweeper.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.engine.GameState;
+import minesweeper.solver.Solver;
+
+/**
+ * The solver on a game whose first click has already been made: a single
+ * step, every certain deduction, and a whole game with guessing. Boards
+ * smaller than 256 are left out, since JMH's per-invocation setup costs about
+ * as much as a step on them.
+ *
+ * @author blueajo
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	@Param({ "256", "1024" })
+	int size;
+
+	@Param({ "0.12", "0.16", "0.21" })
+	double density;
+
+	private GameState state;
+	private Solver solver;
+	private int center;
+	private long seed;
+
+	@Setup(Level.Trial)
+	public void createGame() {
+		this.state = new GameState(this.size, this.size, Boards.mines(this.size, this.density), 0);
+		this.solver = new Solver(this.state);
+		this.center = Boards.center(this.size);
+	}
+
+	@Setup(Level.Invocation)
+	public void firstClick() {
+		this.state.reset(++this.seed);
+		this.state.placeMines(this.center);
+		this.state.reveal(this.center);
+	}
+
+	@Benchmark
+	public boolean step() {
+		return this.solver.step();
+	}
+
+	@Benchmark
+	public int solve() {
+		return this.solver.solve();
+	}
+
+	@Benchmark
+	public int solveLinear() {
+		this.solver.setLinearMode(true);
+		try {
+			return this.solver.solve();
+		} finally {
+			this.solver.setLinearMode(false);
+		}
+	}
+
+	@Benchmark
+	public int play() {
+		return this.solver.play();
+	}
+}
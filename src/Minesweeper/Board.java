@@ -4,13 +4,23 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import javax.swing.*;
 import java.awt.*;
 
+import minesweeper.engine.BoardIO;
+import minesweeper.engine.GameState;
+import minesweeper.engine.MoveReplayer;
+import minesweeper.engine.SaveFile;
+
 /**
  * 
  * @author blueajo
@@ -18,20 +28,44 @@ import java.awt.*;
  *         This class is a Minesweeper Board.
  *         When instantiated, it generates a game of minesweeper
  *
+ *         Small boards are made of one Square component per cell. Boards with
+ *         more than PAINTED_THRESHOLD cells are instead painted directly by a
+ *         BoardPainter, which only draws the cells in view and can be zoomed
+ *         with ctrl + mouse wheel.
+ *
+ *         Moves are played by a GameEngine on the engine thread, never on the
+ *         event dispatch thread. The board draws from its own copy of every
+ *         cell's Tile appearance, which the engine keeps up to date by
+ *         applying batches of changes on the event dispatch thread.
+ *
  */
-public class Board extends JComponent implements MouseListener {
+public class Board extends JComponent implements MouseListener, MouseWheelListener {
 
 	private static final long serialVersionUID = 1L;
 	private static final int buttonSize = 75;
+	private static final int paintedCellSize = 24;
+
+	/**
+	 * Boards with more cells than this are painted instead of being built
+	 * from one component per cell.
+	 */
+	public static final int PAINTED_THRESHOLD = 1024;
 	
 	public OptionBar bar;
 
-	private Square[][] grid;
+	private GameState state;
+	private GameEngine engine;
+	private Square[] squares;
+	private BoardPainter painter;
+	private int pressed;
+
+	// What the board shows, only used on the event dispatch thread.
+	private byte[] tiles;
+	private boolean over;
+	private boolean noGuess;
+	private boolean playback;
+	private boolean recording;
 	private int rows, cols;
-	private int numMines, numFlagged;
-	private int numSafe, numSafeRevealed;
-	private boolean isFirstClick;
-	private boolean gameOver;
 
 	/**
 	 * Constructs a square minesweeper board with length and width equal to
@@ -47,34 +81,75 @@ public class Board extends JComponent implements MouseListener {
 	 *             for invalid numbers of mines, rows, and columns
 	 */
 	public Board(int rows, int cols, int numMines, OptionBar bar) {
+		this(new GameState(rows, cols, numMines), bar);
+	}
 
-		if(rows < 3 || cols < 3) {
-			throw new IllegalArgumentException("rows and cols must be at least 3");
-		}
-		
-		if (numMines > rows * cols - 9 || numMines < 0) {
-			throw new IllegalArgumentException("For a " + rows + "x" + cols +
-					" board, there must be fewer than " + (rows * cols - 9) + "squares");
-		}
+	/**
+	 * Constructs a minesweeper board with the given number of rows, columns and
+	 * mines whose layout is determined by seed.
+	 * 
+	 * @param rows
+	 *            the number of rows in the board
+	 * @param cols
+	 * 			  the number of columns in the board
+	 * @param numMines
+	 *            the number of mines to initialize
+	 * @param seed
+	 *            the seed for the mine layout
+	 * @throws IllegalArgumentException
+	 *             for invalid numbers of mines, rows, and columns
+	 */
+	public Board(int rows, int cols, int numMines, long seed, OptionBar bar) {
+		this(new GameState(rows, cols, numMines, seed), bar);
+	}
+
+	/**
+	 * Constructs a board that displays the given game, which may have been
+	 * created ahead of time on another thread.
+	 * 
+	 * @param state
+	 *            the game to display
+	 */
+	public Board(GameState state, OptionBar bar) {
+		int rows = state.getRows();
+		int cols = state.getCols();
+
+		this.state = state;
 		
 		this.bar = bar;
 
 		this.rows = rows;
 		this.cols = cols;
-		
-		this.numMines = numMines;
-		this.numFlagged = 0;
 
-		this.numSafe = (rows * cols) - this.numMines;
-		this.numSafeRevealed = 0;
+		this.pressed = -1;
 
-		this.isFirstClick = true;
-		
-		this.gameOver = false;
+		this.tiles = new byte[rows * cols];
+		for (int i = 0; i < this.tiles.length; i++) {
+			this.tiles[i] = (byte) Tile.of(state, i);
+		}
+		this.over = state.isOver();
+		this.engine = new GameEngine(state, this);
 
+		if (rows * cols > PAINTED_THRESHOLD) {
+			this.painter = new BoardPainter(state, this.tiles, paintedCellSize);
+			this.setPreferredSize(this.painter.getPreferredSize());
+			this.setOpaque(true);
+			this.addMouseListener(this);
+			this.addMouseWheelListener(this);
+		} else {
+			this.initSquares();
+		}
+
+		this.setVisible(true);
+	}
+
+	/**
+	 * Initializes one Square component for every cell.
+	 */
+	private void initSquares() {
 		this.setPreferredSize(new Dimension(rows * buttonSize, cols * buttonSize));
 
-		this.grid = new Square[rows][cols];
+		this.squares = new Square[rows * cols];
 
 		setLayout(new GridBagLayout());
 		GridBagConstraints c = new GridBagConstraints();
@@ -82,9 +157,8 @@ public class Board extends JComponent implements MouseListener {
 		// Initializes the squares within the array.
 		for (int row = 0; row < rows; row++) {
 			for (int col = 0; col < cols; col++) {
-				// Initially, squares are declared not to be mines.
-				Square current = new Square(row, col);
-				this.grid[row][col] = current;
+				Square current = new Square(this.state.index(row, col));
+				this.squares[current.index] = current;
 				
 				current.setMinimumSize(new Dimension(buttonSize, buttonSize));
 				current.setPreferredSize(new Dimension(buttonSize, buttonSize));
@@ -94,111 +168,154 @@ public class Board extends JComponent implements MouseListener {
 				c.gridy = col;
 
 				this.add(current, c);
+				this.fillSquare(current);
 				current.addMouseListener(this);
 			}
 		}
+	}
 
-		this.setVisible(true);
+	/**
+	 * @return the headless game state shown by this board, which belongs to
+	 *         the engine thread: it is only safe to use from another thread
+	 *         after flush while no moves are being sent
+	 */
+	public GameState getState() {
+		return this.state;
 	}
 
 	/**
-	 * The action performed the first time the user left clicks a square.
-	 * Ensures that sq and none of its adjacent squares are mines.
+	 * Waits until every move sent so far has been played and the board shows
+	 * its result.
+	 */
+	public void flush() {
+		this.engine.flush();
+	}
+
+	/**
+	 * Saves the game on the engine thread. The first save takes over the file
+	 * from the board that last saved to it, or creates it, replacing any file
+	 * there; later ones only write what changed.
 	 * 
-	 * @param sq
-	 *            the Square that's clicked
+	 * @param file
+	 *            the file to save to
 	 */
-	private void firstClick(Square sq) {
-		this.isFirstClick = false;
+	public void save(File file) {
+		this.engine.save(file);
+	}
 
-		List<Square> mineOrder = new ArrayList<Square>();
+	/**
+	 * Keeps saving to the file the game was loaded from.
+	 * 
+	 * @param save
+	 *            the save file holding this board's game
+	 */
+	void setSaveFile(SaveFile save) {
+		this.engine.setSaveFile(save);
+	}
 
-		// Creates a list of squares guaranteed to not be mines.
-		List<Square> sqAndAdjacent = new ArrayList<Square>();
-		sqAndAdjacent = this.getAdjacent(sq);
-		sqAndAdjacent.add(sq);
+	/**
+	 * Stops saving the game, so that another board can save to the same file.
+	 */
+	public void closeSave() {
+		this.engine.closeSave();
+	}
 
-		for (int row = 0; row < this.rows; row++) {
-			for (int col = 0; col < this.cols; col++) {
-				if (!sqAndAdjacent.contains(this.grid[row][col])) {
-					mineOrder.add(this.grid[row][col]);
-				}
-			}
-		}
+	/**
+	 * Hands over a save file that no board is using, so that the next board
+	 * to save to the same file writes over it rather than replacing it.
+	 * 
+	 * @param save
+	 *            the unused save file
+	 */
+	static void releaseSave(SaveFile save) {
+		GameEngine.releaseSave(save);
+	}
 
-		// Randomizes the order of the squares to select mines from.
-		Collections.shuffle(mineOrder);
+	/**
+	 * Records every move of the game to a journal file on the engine thread,
+	 * replacing any journal being recorded. A game that has already started
+	 * is not recorded.
+	 * 
+	 * @param file
+	 *            the file to record to
+	 */
+	public void record(File file) {
+		this.recording = true;
+		this.engine.record(file);
+	}
 
-		// Sets the first numMines Squares to be mines.
-		for (int i = 0; i < this.numMines; i++) {
-			mineOrder.get(i).isMine = true;
-		}
+	/**
+	 * @return true if record has been called since the journal was last
+	 *         closed
+	 */
+	public boolean isRecording() {
+		return this.recording;
+	}
 
-		// Sets the number of adjacent mines for each square.
-		for (int row = 0; row < this.rows; row++) {
-			for (int col = 0; col < this.cols; col++) {
-				if (this.grid[row][col].isMine) {
-					List<Square> adjacent = this.getAdjacent(this.grid[row][col]);
-
-					for (Square adjSquare : adjacent) {
-						if (!adjSquare.isMine) {
-							adjSquare.numAdjacent++;
-						}
-					}
-				}
-			}
-		}
+	/**
+	 * Writes the moves recorded so far to the journal file.
+	 */
+	public void flushJournal() {
+		this.engine.flushJournal();
+	}
 
-		bar.updateMinesLeft(this.numMines);
-		this.reveal(sq);
-		bar.startTimer();
+	/**
+	 * Stops recording the game's moves.
+	 */
+	public void closeJournal() {
+		this.recording = false;
+		this.engine.closeJournal();
 	}
 
 	/**
-	 * Reveals all squares in the given list.
+	 * Plays back the moves of a journal up to a given time. Once a board has
+	 * played back a journal, it ignores the mouse.
 	 * 
-	 * @param squares
-	 *            the list of squares
+	 * @param replayer
+	 *            the replayer of this board's game
+	 * @param time
+	 *            the time, in milliseconds since the journal was started
+	 * @param ended
+	 *            run on the event dispatch thread once the journal has no
+	 *            more moves
 	 */
-	private void reveal(List<Square> squares) {
-		for (Square sq : squares) {
-			this.reveal(sq);
-		}
+	void replay(MoveReplayer replayer, long time, Runnable ended) {
+		this.playback = true;
+		this.engine.replay(replayer, time, ended);
 	}
 
 	/**
-	 * Reveals the given square if it is not flagged and not already revealed.
-	 * 
-	 * @param sq
-	 *            the given square
-	 */
-	private void reveal(Square sq) {
-		if (!sq.isFlagged && !sq.isRevealed) {
-			fillSquare(sq);
-			
-			// If the square is a mine, then the user loses.
-			if (sq.isMine) {
-				sq.setBackground(Color.RED);
-				this.endGame(false);
-				
-			} else {
-				sq.isRevealed = true;
-				this.numSafeRevealed++;
+	 * @return true if mines are placed so that the game never needs a guess
+	 */
+	public boolean isNoGuess() {
+		return this.noGuess;
+	}
 
-				// If the user has revealed every safe square, then the user wins.
-				if (this.numSafeRevealed == this.numSafe) {
-					this.endGame(true);
-				}
+	/**
+	 * Sets whether mines are placed so that the game can be won from the
+	 * first click without guessing. Takes effect on the first click.
+	 * 
+	 * @param noGuess
+	 *            true to generate games that need no guessing
+	 */
+	public void setNoGuess(boolean noGuess) {
+		this.noGuess = noGuess;
+		this.engine.setNoGuess(noGuess);
+	}
 
-				// If the square had 0 adjacent mines, reveals every adjacent
-				// square.
-				else if (sq.numAdjacent == 0) {
-					this.reveal(this.getAdjacent(sq));
-				}
-			}
-		}
+	/**
+	 * The action performed the first time the user left clicks a square.
+	 * Ensures that the square and none of its adjacent squares are mines, and
+	 * in no-guess mode that the game can be won without guessing. Does
+	 * nothing if the game has already started.
+	 * 
+	 * @param index
+	 *            the index of the square that's clicked
+	 */
+	public void firstClick(int index) {
+		this.engine.firstClick(index);
 	}
-	
+
 	/**
 	 * Fills the square, revealing whether it was a mine, it was clicked,
 	 * or how many mines were adjacent to it.
@@ -207,195 +324,167 @@ public class Board extends JComponent implements MouseListener {
 	 * 			the square to be filled
 	 */
 	private void fillSquare(Square sq) {
-		String text;
-		if (sq.isMine) {
-			if(!sq.getBackground().equals(Color.RED)) {
-				sq.setBackground(Color.GRAY);
-			}
-			text = "";
-		} else if(!sq.isMine && sq.isFlagged) {
-			sq.setBackground(Color.CYAN);
-			text = "X";
-		} else {
-			sq.setBackground(Color.CYAN);
-
-			if (sq.numAdjacent > 0) {
-				text = String.valueOf(sq.numAdjacent);
-			} else {
-				text = "";
-			}
-		}
-		sq.setText(text);
+		int tile = this.tiles[sq.index];
+		sq.setBackground(Tile.background(tile));
+		sq.setText(Tile.text(tile));
 	}
 
 	/**
 	 * Runs through the process of the user left-clicking on a tile. If the tile
-	 * is flagged or has already been revealed, nothing occurs.
+	 * is flagged, nothing occurs. If it has already been revealed and enough of
+	 * its neighbors are flagged, its neighbors are revealed. If the game has
+	 * not started, this is the first click.
 	 * 
-	 * @param sq
-	 *            the square the user clicked on
-	 */
-	public void leftClickSquare(Square sq) {
-		if (!sq.isFlagged && !sq.isRevealed) {
-			this.reveal(sq);
-			
-			if (sq.isMine) {
-				this.endGame(false);
-			} else {
-				// If the square has no adjacent mines, reveals all adjacent
-				// squares.
-				if (sq.numAdjacent == 0) {
-					this.reveal(this.getAdjacent(sq));
-				}
-			}
-		} else if (sq.isRevealed && sq.numAdjacent == this.numAdjacentFlagged(sq)) {
-			this.reveal(this.getAdjacent(sq));
-		}
+	 * @param index
+	 *            the index of the square the user clicked on
+	 */
+	public void leftClickSquare(int index) {
+		this.engine.leftClick(index);
 	}
 
 	/**
 	 * Flags the square that the user right clicks on. Does nothing if the user
 	 * right clicks on an already revealed square.
 	 * 
-	 * @param sq
-	 *            the square that the user right clicked
+	 * @param index
+	 *            the index of the square that the user right clicked
 	 */
-	public void rightClickSquare(Square sq) {
-		if (!sq.isRevealed) {
+	public void rightClickSquare(int index) {
+		this.engine.toggleFlag(index);
+	}
 
-			if (sq.isFlagged) {
-				this.numFlagged--;
-				sq.setText("");
-			} else {
-				this.numFlagged++;
-				sq.setText("F");
-			}
+	/**
+	 * Plays every move that can be deduced with certainty. If the game has not
+	 * started, the center square is clicked first. If nothing can be deduced,
+	 * the square least likely to be a mine is revealed.
+	 */
+	public void solve() {
+		this.engine.solve();
+	}
 
-			// Toggle square's flagged status:
-			sq.isFlagged = !sq.isFlagged;
-			bar.updateMinesLeft(this.numMines - this.numFlagged);
-		}
+	/**
+	 * Takes back the last move that changed the game, including a move that
+	 * lost it. Undoing the first move takes the mines off the board.
+	 */
+	public void undo() {
+		this.engine.undo();
 	}
 
 	/**
-	 * Runs the end of the game process. Behavior depends on if the user won.
-	 * 
-	 * @param wasGameWon
-	 *            true if the user won the game, false if the user lost
+	 * Plays again the last move taken back by undo.
 	 */
-	private void endGame(boolean wasGameWon) {
-		if(!this.gameOver) {
-			bar.stopTimer();
-			
-			this.gameOver = true;
-			
-			for (int row = 0; row < this.rows; row++) {
-				for (int col = 0; col < this.cols; col++) {
-					if(!this.grid[row][col].isRevealed){
-						fillSquare(this.grid[row][col]);
-					}
-				}
-			}
-			
-			if(wasGameWon) {
-				bar.updateMinesLeft(0);
-				bar.playButton.setBackground(Color.GREEN);
-				bar.playButton.setText("YOU WIN! PLAY AGAIN?");
-			} else {
-				bar.playButton.setBackground(Color.RED);
-				bar.playButton.setText("YOU LOSE. PLAY AGAIN?");
-			}
-		}
+	public void redo() {
+		this.engine.redo();
 	}
 
 	/**
-	 * Currently returns a grid composed of "X" and "O" representing mines and
-	 * non-mines respectively.
+	 * Shows a batch of changes published by the engine. Called on the event
+	 * dispatch thread.
 	 * 
-	 * @return a 2D representation of the mine locations, indicated by "X"s
+	 * @param diff
+	 *            the changes since the last batch
 	 */
-	@Override
-	public String toString() {
-		String output = "Mine layout:\n";
-
-		for (int row = 0; row < this.rows; row++) {
-			for (int col = 0; col < this.cols; col++) {
-				output += grid[row][col].toString();
-				output += " ";
+	void apply(GameEngine.Diff diff) {
+		if (diff.reset) {
+			Arrays.fill(this.tiles, (byte) Tile.HIDDEN);
+			this.over = false;
+			this.pressed = -1;
+
+			if (this.painter != null) {
+				this.repaint();
+			} else {
+				for (Square sq : this.squares) {
+					fillSquare(sq);
+				}
 			}
-			output += "\n";
 		}
 
-		output += "\nAdjacent mines:\n";
+		int count = diff.getCount();
+		for (int i = 0; i < count; i++) {
+			this.tiles[diff.getCell(i)] = (byte) diff.getTile(i);
+		}
 
-		for (int row = 0; row < this.rows; row++) {
-			for (int col = 0; col < this.cols; col++) {
-				output += this.grid[row][col].numAdjacent;
-				output += " ";
+		if (count > 0) {
+			if (this.painter != null) {
+				this.repaint(this.painter.bounds(diff.getCells(), count));
+			} else {
+				for (int i = 0; i < count; i++) {
+					this.fillSquare(this.squares[diff.getCell(i)]);
+				}
 			}
-			output += "\n";
 		}
 
-		return output;
-	}
-
-	/**
-	 * Returns an ArrayList of squares that are adjacent to the given square.
-	 * 
-	 * @param sq
-	 *            the given square to find adjacent squares of
-	 * @return an ArrayList of squares that are next to (within a distance of 1)
-	 *         the square at the given coordinates
-	 */
-	private List<Square> getAdjacent(Square sq) {
-		List<Square> adjacent = new ArrayList<Square>();
-
-		for (int i = sq.row - 1; i <= sq.row + 1; i++) {
-			for (int j = sq.col - 1; j <= sq.col + 1; j++) {
-				if (!(i == sq.row && j == sq.col) && isInBounds(i, j)) {
-					adjacent.add(this.grid[i][j]);
+		if (diff.minesLeft >= 0) {
+			bar.updateMinesLeft(diff.minesLeft);
+		}
+		if (diff.restored) {
+			this.over = diff.over;
+			if (diff.over) {
+				this.endGame(diff.won);
+			} else {
+				bar.playButton.setBackground(Color.LIGHT_GRAY);
+				bar.playButton.setText("PLAY");
+				if (diff.running) {
+					bar.startTimer();
+				} else {
+					bar.stopTimer();
 				}
 			}
 		}
-
-		return adjacent;
+		if (diff.started) {
+			bar.startTimer();
+		}
+		if (diff.ended) {
+			this.over = true;
+			this.endGame(diff.won);
+		}
 	}
 
 	/**
-	 * Returns the number of squares which have been flagged adjacent to a given
-	 * square.
+	 * Runs the end of the game process. Behavior depends on if the user won.
 	 * 
-	 * @param sq
-	 *            the given square
-	 * @return the number of adjacent squares which have been flagged
+	 * @param wasGameWon
+	 *            true if the user won the game, false if the user lost
 	 */
-	private int numAdjacentFlagged(Square sq) {
-		int count = 0;
-
-		for (Square adjacent : this.getAdjacent(sq)) {
-			if (adjacent.isFlagged) {
-				count++;
-			}
+	private void endGame(boolean wasGameWon) {
+		bar.stopTimer();
+		
+		if(wasGameWon) {
+			bar.updateMinesLeft(0);
+			bar.playButton.setBackground(Color.GREEN);
+			bar.playButton.setText("YOU WIN! PLAY AGAIN?");
+		} else {
+			bar.playButton.setBackground(Color.RED);
+			bar.playButton.setText("YOU LOSE. PLAY AGAIN?");
 		}
-		return count;
 	}
 
 	/**
-	 * Determines whether the square at the given coordinates is within the
-	 * grid's bounds.
+	 * Dumps the game in BoardIO's text form: a header, then one line per row
+	 * showing every mine, flag and revealed number. Moves still being played
+	 * on the engine thread may be missing; call flush first to include them.
 	 * 
-	 * @param row
-	 *            the index of the row
-	 * @param col
-	 *            the index of the column
-	 * @return true if the square is in the grid, false otherwise
+	 * @return the game as text
 	 */
-	private boolean isInBounds(int row, int col) {
-		return (row >= 0) && (row < this.rows) && (col >= 0) && (col < this.cols);
+	@Override
+	public String toString() {
+		StringWriter out = new StringWriter();
+		try {
+			BoardIO.writeText(this.state, out);
+		} catch (IOException e) {
+			// A StringWriter never fails.
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
 	}
 	
-	public void newGame( ) {
-		
+	/**
+	 * Starts a new game with a random layout on this board, keeping its size
+	 * and number of mines. The game state, components and listeners are all
+	 * reused, so nothing is allocated.
+	 */
+	public void newGame() {
+		this.engine.reset(new SplittableRandom().nextLong());
 	}
 
 	@Override
@@ -407,15 +496,16 @@ public class Board extends JComponent implements MouseListener {
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-
-		Object clickLocation = e.getSource();
-		if (clickLocation instanceof Square && !gameOver) {
-			Square sq = (Square) e.getSource();
-
-			if (sq.isRevealed) {
-				sq.setBackground(Color.BLUE);
+		int index = this.indexOf(e);
+
+		if (index >= 0 && !this.over && !this.playback) {
+			if (this.painter != null) {
+				this.pressed = index;
+				this.repaint(this.painter.bounds(index));
+			} else if (this.tiles[index] <= 8) {
+				this.squares[index].setBackground(Color.BLUE);
 			} else {
-				sq.setBackground(Color.DARK_GRAY);
+				this.squares[index].setBackground(Color.DARK_GRAY);
 			}
 		}
 	}
@@ -423,35 +513,89 @@ public class Board extends JComponent implements MouseListener {
 	@Override
 	public void mouseReleased(MouseEvent e) {
 		int clickType = e.getButton();
-		Object clickLocation = e.getSource();
+		int index = this.indexOf(e);
 
-		if (clickLocation instanceof Square && !gameOver) {
-			Square sq = (Square) e.getSource();
+		if (this.painter != null && this.pressed >= 0) {
+			this.repaint(this.painter.bounds(this.pressed));
+			this.pressed = -1;
+		}
 
-			if (sq.isRevealed) {
-				sq.setBackground(Color.CYAN);
-			} else {
-				sq.setBackground(Color.LIGHT_GRAY);
+		if (index >= 0 && !this.over && !this.playback) {
+			if (this.painter == null) {
+				this.fillSquare(this.squares[index]);
 			}
 
 			// Left click:
 			if (clickType == 1 && !e.isControlDown()) {
-				if (this.isFirstClick) {
-					this.firstClick(sq);
-				}
-
-				else {
-					this.leftClickSquare(sq);
-				}
+				this.leftClickSquare(index);
 			}
 
 			// Right click:
 			else if (clickType == 3 || e.isControlDown()) {
-				this.rightClickSquare(sq);
+				this.rightClickSquare(index);
 			}
 		}
 	}
 
+	/**
+	 * Zooms a painted board in or out when the wheel is turned with ctrl held
+	 * down, keeping the cell under the mouse in place. Otherwise the wheel
+	 * scrolls the enclosing scroll pane as usual.
+	 */
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		if (!e.isControlDown()) {
+			Component parent = this.getParent();
+			parent.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, parent));
+			return;
+		}
+
+		int oldSize = this.painter.getCellSize();
+		int newSize = (e.getWheelRotation() < 0) ? oldSize + Math.max(1, oldSize / 4)
+				: oldSize - Math.max(1, oldSize / 5);
+		this.painter.setCellSize(newSize);
+		newSize = this.painter.getCellSize();
+
+		if (newSize != oldSize) {
+			Dimension size = this.painter.getPreferredSize();
+			this.setPreferredSize(size);
+
+			if (this.getParent() instanceof JViewport) {
+				JViewport viewport = (JViewport) this.getParent();
+				Point view = viewport.getViewPosition();
+				int x = (int) ((long) e.getX() * newSize / oldSize) - (e.getX() - view.x);
+				int y = (int) ((long) e.getY() * newSize / oldSize) - (e.getY() - view.y);
+
+				viewport.setViewSize(size);
+				viewport.setViewPosition(new Point(
+						Math.max(0, Math.min(x, size.width - viewport.getWidth())),
+						Math.max(0, Math.min(y, size.height - viewport.getHeight()))));
+			}
+			this.revalidate();
+			this.repaint();
+		}
+	}
+
+	/**
+	 * @return the index of the cell a mouse event happened on, or -1 if it
+	 *         did not happen on a cell
+	 */
+	private int indexOf(MouseEvent e) {
+		if (e.getSource() instanceof Square) {
+			return ((Square) e.getSource()).index;
+		} else if (e.getSource() == this && this.painter != null) {
+			return this.painter.cellAt(e.getX(), e.getY());
+		}
+		return -1;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (this.painter != null) {
+			this.painter.paint(g, g.getClipBounds(this.getVisibleRect()), this.pressed);
+		}
+	}
+
 	@Override
 	public void mouseEntered(MouseEvent e) {
 		// TODO Auto-generated method stub
@@ -465,50 +609,31 @@ public class Board extends JComponent implements MouseListener {
 	}
 
 	/**
-	 * This class represents a single square on a minesweeper board.
+	 * This class represents a single square on a minesweeper board. The
+	 * square's state is kept in the board's GameState; the square only knows
+	 * its index.
 	 */
 	private static class Square extends JLabel {
 
 		private static final long serialVersionUID = 1L;
 
-		public int col, row;
-
-		public boolean isMine;
-		public boolean isRevealed;
-		public boolean isFlagged;
-
-		public int numAdjacent;
+		public final int index;
 
 		/**
-		 * Constructs a square with coordinates at the given x and y indices.
-		 * Initializes the square as not revealed, not flagged, and not a mine.
+		 * Constructs a square for the cell at the given index. The square is
+		 * drawn as not revealed and not flagged.
 		 * 
-		 * @param col
-		 *            the column of the square
-		 * @param row
-		 *            the row of the square
+		 * @param index
+		 *            the index of the cell, row * cols + col
 		 */
-		public Square(int row, int col) {
+		public Square(int index) {
 			super("", CENTER);
 
-			this.isMine = false;
-			this.isRevealed = false;
-			this.isFlagged = false;
-			this.col = col;
-			this.row = row;
-			this.numAdjacent = 0;
+			this.index = index;
 
 			this.setOpaque(true);
 			this.setBackground(Color.LIGHT_GRAY);
 			this.setBorder(BorderFactory.createLineBorder(Color.BLACK));
 		}
-
-		/**
-		 * @return "X" if the square is a mine, and "O" if it isn't
-		 */
-		@Override
-		public String toString() {
-			return (isMine) ? "X" : "O";
-		}
 	}
 }
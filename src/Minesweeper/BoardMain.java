@@ -1,8 +1,25 @@
 package minesweeper;
 
+import java.io.File;
+import java.io.IOException;
+
 public class BoardMain {
 	
-	public static void main(String[] args) {
+	/**
+	 * Opens a game window, or with the path of a journal and an optional
+	 * speed, a window playing the journal back, or with -world, a window
+	 * playing the infinite world.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("-world")) {
+			WorldWindow world = new WorldWindow();
+			return;
+		}
+		if (args.length > 0) {
+			double speed = (args.length > 1) ? Double.parseDouble(args[1]) : 1;
+			ReplayWindow replay = new ReplayWindow(new File(args[0]), speed);
+			return;
+		}
 		MinesweeperWindow game = new MinesweeperWindow();
 	}
 }
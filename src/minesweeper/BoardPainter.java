@@ -0,0 +1,197 @@
+package minesweeper;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.UIManager;
+
+import minesweeper.engine.GameState;
+
+/**
+ * This class draws the cells of a board straight from its tiles, for
+ * boards too large to hold one component per cell. Only the cells that
+ * intersect the clip are painted, so the cost of a paint depends on the size
+ * of the viewport rather than the size of the board. Cells are copied from a
+ * TileAtlas of pre-drawn images rather than drawn with text.
+ *
+ * Like the component board, rows run left to right and columns top to
+ * bottom.
+ *
+ * @author blueajo
+ *
+ */
+final class BoardPainter {
+
+	static final int MIN_CELL_SIZE = 4;
+	static final int MAX_CELL_SIZE = 75;
+
+	// The number of zoom levels whose tile atlases are kept.
+	private static final int MAX_ATLASES = 8;
+
+	private final GameState state;
+	private final byte[] tiles;
+	private final Font font;
+	private int cellSize;
+
+	// Recently used tile atlases by cell size, least recently used first.
+	private final Map<Integer, TileAtlas> atlases = new LinkedHashMap<Integer, TileAtlas>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, TileAtlas> eldest) {
+			return this.size() > MAX_ATLASES;
+		}
+	};
+
+	/**
+	 * Constructs a painter for the given game.
+	 *
+	 * @param state
+	 *            the game to draw, which is only used for its size
+	 * @param tiles
+	 *            the Tile appearance of every cell, kept up to date by the
+	 *            board
+	 * @param cellSize
+	 *            the width and height of a cell, in pixels
+	 */
+	BoardPainter(GameState state, byte[] tiles, int cellSize) {
+		this.state = state;
+		this.tiles = tiles;
+		this.font = UIManager.getFont("Label.font");
+		this.setCellSize(cellSize);
+	}
+
+	int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Sets the zoom level.
+	 *
+	 * @param cellSize
+	 *            the width and height of a cell, in pixels, which is clamped
+	 *            between MIN_CELL_SIZE and MAX_CELL_SIZE
+	 */
+	void setCellSize(int cellSize) {
+		this.cellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize));
+	}
+
+	/**
+	 * @return the size of the whole board at the current zoom level
+	 */
+	Dimension getPreferredSize() {
+		return new Dimension(this.state.getRows() * this.cellSize, this.state.getCols() * this.cellSize);
+	}
+
+	/**
+	 * Finds the cell under a point.
+	 *
+	 * @param x
+	 *            the x coordinate, in pixels
+	 * @param y
+	 *            the y coordinate, in pixels
+	 * @return the index of the cell, or -1 if the point is off the board
+	 */
+	int cellAt(int x, int y) {
+		if (x < 0 || y < 0) {
+			return -1;
+		}
+
+		int row = x / this.cellSize;
+		int col = y / this.cellSize;
+		return this.state.isInBounds(row, col) ? this.state.index(row, col) : -1;
+	}
+
+	/**
+	 * Computes the smallest rectangle that covers the given cells, so that
+	 * one repaint can cover a whole batch of changes.
+	 *
+	 * @param cells
+	 *            the indices of the cells
+	 * @param count
+	 *            the number of valid entries in cells
+	 * @return the rectangle covering the cells, in pixels
+	 */
+	Rectangle bounds(int[] cells, int count) {
+		int minRow = Integer.MAX_VALUE, maxRow = -1;
+		int minCol = Integer.MAX_VALUE, maxCol = -1;
+
+		for (int i = 0; i < count; i++) {
+			int row = this.state.row(cells[i]);
+			int col = this.state.col(cells[i]);
+			minRow = Math.min(minRow, row);
+			maxRow = Math.max(maxRow, row);
+			minCol = Math.min(minCol, col);
+			maxCol = Math.max(maxCol, col);
+		}
+
+		return new Rectangle(minRow * this.cellSize, minCol * this.cellSize,
+				(maxRow - minRow + 1) * this.cellSize, (maxCol - minCol + 1) * this.cellSize);
+	}
+
+	/**
+	 * @return the rectangle covered by the cell at the given index, in pixels
+	 */
+	Rectangle bounds(int index) {
+		return new Rectangle(this.state.row(index) * this.cellSize, this.state.col(index) * this.cellSize,
+				this.cellSize, this.cellSize);
+	}
+
+	/**
+	 * Paints every cell that intersects the clip, copying each one from the
+	 * tile atlas for the current zoom level.
+	 *
+	 * @param g
+	 *            the graphics to paint with
+	 * @param clip
+	 *            the area to paint, in pixels
+	 * @param pressed
+	 *            the index of the cell the mouse is held down on, or -1
+	 */
+	void paint(Graphics g, Rectangle clip, int pressed) {
+		int firstRow = Math.max(0, clip.x / this.cellSize);
+		int lastRow = Math.min(this.state.getRows() - 1, (clip.x + clip.width - 1) / this.cellSize);
+		int firstCol = Math.max(0, clip.y / this.cellSize);
+		int lastCol = Math.min(this.state.getCols() - 1, (clip.y + clip.height - 1) / this.cellSize);
+
+		TileAtlas atlas = this.atlas();
+		GraphicsConfiguration gc = (g instanceof Graphics2D) ? ((Graphics2D) g).getDeviceConfiguration() : null;
+
+		// Paints again if the atlas lost its contents while being copied from.
+		do {
+			Image image = atlas.prepare(gc);
+
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int col = firstCol; col <= lastCol; col++) {
+					int index = this.state.index(row, col);
+					int slot = this.tiles[index];
+
+					if (index == pressed) {
+						slot = (slot <= 8) ? TileAtlas.PRESSED_REVEALED : TileAtlas.PRESSED_HIDDEN;
+					}
+					atlas.drawTile(g, image, slot, row * this.cellSize, col * this.cellSize);
+				}
+			}
+		} while (atlas.contentsLost());
+	}
+
+	/**
+	 * @return the tile atlas for the current zoom level, drawing a new one if
+	 *         this zoom level has not been used recently
+	 */
+	private TileAtlas atlas() {
+		TileAtlas atlas = this.atlases.get(this.cellSize);
+		if (atlas == null) {
+			atlas = new TileAtlas(this.cellSize, this.font);
+			this.atlases.put(this.cellSize, atlas);
+		}
+		return atlas;
+	}
+}
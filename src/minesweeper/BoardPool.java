@@ -0,0 +1,153 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+import minesweeper.engine.GameState;
+
+/**
+ * This class keeps the next boards ready while a game is being played, so
+ * that starting a new game is a swap rather than a build.
+ *
+ * Boards taken out of play are recycled into the pool when their
+ * difficulty is wanted. Otherwise the games are allocated on a background
+ * thread. Their Swing components are then built on the event dispatch
+ * thread, in a task of their own queued behind whatever the user is doing.
+ * Mines are not placed ahead of time, since every layout depends on the
+ * first click.
+ *
+ * All methods must be called on the event dispatch thread.
+ *
+ * @author blueajo
+ *
+ */
+final class BoardPool {
+
+	// The most boards kept ready at once.
+	private static final int CAPACITY = 3;
+
+	private final OptionBar bar;
+	private final ExecutorService executor;
+
+	// Ready boards by difficulty, the difficulties being prepared, and the
+	// difficulties currently wanted.
+	private final Map<String, Board> ready = new LinkedHashMap<String, Board>();
+	private final List<String> pending = new ArrayList<String>();
+	private List<String> wanted = new ArrayList<String>();
+
+	/**
+	 * Constructs an empty pool.
+	 *
+	 * @param bar
+	 *            the option bar every board reports to
+	 */
+	BoardPool(OptionBar bar) {
+		this.bar = bar;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "board-pool");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Takes the ready board for a difficulty, or builds one right away if
+	 * none is ready.
+	 *
+	 * @param difficulty
+	 *            EASY, MEDIUM, or HARD
+	 * @return a board that has not been played
+	 */
+	Board take(String difficulty) {
+		Board board = this.ready.remove(difficulty);
+		if (board == null) {
+			board = new Board(MinesweeperWindow.newState(difficulty), this.bar);
+		}
+		return board;
+	}
+
+	/**
+	 * Takes back a board that is no longer shown. The board is reset in place
+	 * and kept ready in case its difficulty is played again, until the next
+	 * call to prepare drops it if its difficulty is not wanted.
+	 * 
+	 * @param difficulty
+	 *            the difficulty of the board
+	 * @param board
+	 *            the board, which must not be shown anywhere
+	 */
+	void recycle(String difficulty, Board board) {
+		if (!this.ready.containsKey(difficulty)) {
+			board.newGame();
+			this.ready.put(difficulty, board);
+		}
+	}
+
+	/**
+	 * Sets which difficulties to keep a board ready for, dropping ready
+	 * boards of any other difficulty, and starts preparing whichever wanted
+	 * ones are missing.
+	 *
+	 * @param difficulties
+	 *            the difficulties, most likely to be played first
+	 */
+	void prepare(String... difficulties) {
+		this.wanted = new ArrayList<String>(Arrays.asList(difficulties));
+		this.ready.keySet().retainAll(this.wanted);
+
+		for (String difficulty : this.wanted) {
+			if (this.ready.size() + this.pending.size() >= CAPACITY) {
+				break;
+			}
+			if (!this.ready.containsKey(difficulty) && !this.pending.contains(difficulty)) {
+				this.start(difficulty);
+			}
+		}
+	}
+
+	/**
+	 * Allocates a game in the background, then builds its board on the event
+	 * dispatch thread if it is still wanted.
+	 */
+	private void start(final String difficulty) {
+		this.pending.add(difficulty);
+
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final GameState state = MinesweeperWindow.newState(difficulty);
+
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						BoardPool.this.finish(difficulty, state);
+					}
+				});
+			}
+		});
+	}
+
+	private void finish(String difficulty, GameState state) {
+		this.pending.remove(difficulty);
+
+		// Drops the board if the difficulty stopped being wanted meanwhile.
+		if (this.wanted.contains(difficulty) && !this.ready.containsKey(difficulty)) {
+			this.ready.put(difficulty, new Board(state, this.bar));
+		}
+
+		// Starts whatever was skipped while this one was pending.
+		this.prepare(this.wanted.toArray(new String[this.wanted.size()]));
+	}
+}
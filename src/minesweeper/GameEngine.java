@@ -0,0 +1,613 @@
+package minesweeper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+import minesweeper.engine.GameHistory;
+import minesweeper.engine.GameListener;
+import minesweeper.engine.GameState;
+import minesweeper.engine.MoveJournal;
+import minesweeper.engine.MoveReplayer;
+import minesweeper.engine.SaveFile;
+import minesweeper.solver.NoGuessGenerator;
+import minesweeper.solver.PatternCache;
+import minesweeper.solver.Solver;
+
+/**
+ * This class plays the moves of one Board on the engine thread, away from
+ * the event dispatch thread, so that generation, large cascades and solver
+ * runs never hold up input or painting.
+ *
+ * Every board shares the one engine thread, which is the only thread that
+ * touches a board's GameState once the board is shown. As the game changes,
+ * the cells that changed and their new Tile appearances are written to a
+ * Diff. A Diff is handed to the board on the event dispatch thread at most
+ * once per turn of the event queue, so any number of moves played in
+ * between are applied together.
+ *
+ * @author blueajo
+ *
+ */
+final class GameEngine implements GameListener {
+
+	// The most memory each board's undo history may hold.
+	private static final long HISTORY_BUDGET = 64L << 20;
+
+	// The window shapes solved on every board, so that a new board's solver
+	// starts with what earlier boards taught. Only used on the engine thread.
+	private static final PatternCache PATTERNS = new PatternCache(1 << 16);
+
+	// A save file that no board is saving to, kept open so that the next
+	// board to save to the same file writes over it instead of replacing a
+	// file that may still be mapped. Only used on the engine thread.
+	private static SaveFile idleSave;
+
+	private static final ExecutorService THREAD = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "game-engine");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final GameState state;
+	private final Board view;
+	private final GameHistory history;
+
+	// Only used on the engine thread.
+	private Solver solver;
+	private NoGuessGenerator generator;
+	private SaveFile save;
+	private MoveJournal journal;
+
+	// The changes not yet applied, the Diff being applied, and whether a
+	// publication is queued. Guarded by this.
+	private Diff pending = new Diff();
+	private Diff applying = new Diff();
+	private boolean scheduled;
+
+	private final Runnable publisher = new Runnable() {
+		@Override
+		public void run() {
+			GameEngine.this.publish();
+		}
+	};
+
+	/**
+	 * Constructs an engine that plays the given game and shows it on the
+	 * given board. Must be called before any move is played on the game.
+	 *
+	 * @param state
+	 *            the game to play
+	 * @param view
+	 *            the board to publish changes to
+	 */
+	GameEngine(GameState state, Board view) {
+		this.state = state;
+		this.view = view;
+		this.history = new GameHistory(state, HISTORY_BUDGET);
+		this.state.addGameListener(this);
+	}
+
+	/**
+	 * Sets whether mines are placed so that the game needs no guessing,
+	 * taking effect on the first click.
+	 */
+	void setNoGuess(final boolean noGuess) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.generator = noGuess ? new NoGuessGenerator() : null;
+			}
+		});
+	}
+
+	/**
+	 * Places the mines around index and reveals it, if the game has not
+	 * started.
+	 */
+	void firstClick(final int index) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.start(index);
+			}
+		});
+	}
+
+	/**
+	 * Reveals a hidden cell or chords a revealed one, starting the game
+	 * first if needed.
+	 */
+	void leftClick(final int index) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameState state = GameEngine.this.state;
+
+				if (!state.isStarted()) {
+					GameEngine.this.start(index);
+				} else if (state.isRevealed(index)) {
+					state.chord(index);
+				} else {
+					state.reveal(index);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Flags or unflags a cell.
+	 */
+	void toggleFlag(final int index) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.state.toggleFlag(index);
+			}
+		});
+	}
+
+	/**
+	 * Plays every move the solver is certain of, starting from the center if
+	 * the game has not started, and guesses if there are none.
+	 */
+	void solve() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameState state = GameEngine.this.state;
+				if (state.isOver()) {
+					return;
+				}
+
+				if (GameEngine.this.solver == null) {
+					GameEngine.this.solver = new Solver(state);
+					GameEngine.this.solver.setPatternCache(PATTERNS);
+				}
+
+				if (!state.isStarted()) {
+					GameEngine.this.start(state.index(state.getRows() / 2, state.getCols() / 2));
+				}
+				if (GameEngine.this.solver.solve() == 0) {
+					GameEngine.this.solver.guess();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Undoes the last move that changed the game, if there is one.
+	 */
+	void undo() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.history.undo();
+			}
+		});
+	}
+
+	/**
+	 * Redoes the last move undone, if there is one.
+	 */
+	void redo() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.history.redo();
+			}
+		});
+	}
+
+	/**
+	 * Starts a new game of the same size with the given seed.
+	 */
+	void reset(final long seed) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.state.reset(seed);
+			}
+		});
+	}
+
+	/**
+	 * Saves the game, the first time by taking over the idle save file if it
+	 * is for the same file and otherwise by creating the file, and then only
+	 * writing what changed. A failed save is reported on standard error
+	 * rather than stopping play.
+	 */
+	void save(final File file) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (GameEngine.this.save == null && idleSave != null && idleSave.getFile().equals(file)) {
+						SaveFile save = idleSave;
+						idleSave = null;
+						save.reuse(GameEngine.this.state);
+						GameEngine.this.save = save;
+					} else if (GameEngine.this.save == null) {
+						GameEngine.this.save = SaveFile.create(file, GameEngine.this.state);
+					} else {
+						GameEngine.this.save.save();
+					}
+				} catch (IOException e) {
+					System.err.println("could not save the game: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Keeps saving to a save file the game was loaded from.
+	 */
+	void setSaveFile(final SaveFile save) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.save = save;
+			}
+		});
+	}
+
+	/**
+	 * Stops saving the game, without saving it first. The save file is kept
+	 * open for the next board that saves to it.
+	 */
+	void closeSave() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (GameEngine.this.save != null) {
+					idle(GameEngine.this.save);
+					GameEngine.this.save = null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Keeps a save file that no board uses open, for the next board that
+	 * saves to it.
+	 */
+	static void releaseSave(final SaveFile save) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				idle(save);
+			}
+		});
+	}
+
+	/**
+	 * Makes a save file the idle one, closing the one it replaces. Called on
+	 * the engine thread.
+	 */
+	private static void idle(SaveFile save) {
+		save.detach();
+		if (idleSave != null) {
+			try {
+				idleSave.close();
+			} catch (IOException e) {
+				System.err.println("could not close the save file: " + e.getMessage());
+			}
+		}
+		idleSave = save;
+	}
+
+	/**
+	 * Records the moves of the game to a journal file, replacing any journal
+	 * being recorded. Only a game that has not started can be recorded, so a
+	 * started game is left unrecorded.
+	 */
+	void record(final File file) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.closeJournalNow();
+				if (GameEngine.this.state.isStarted()) {
+					return;
+				}
+
+				try {
+					GameEngine.this.journal = new MoveJournal(GameEngine.this.state,
+							new BufferedOutputStream(new FileOutputStream(file)));
+				} catch (IOException e) {
+					System.err.println("could not record the game: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the moves recorded so far to the journal file.
+	 */
+	void flushJournal() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (GameEngine.this.journal != null) {
+					try {
+						GameEngine.this.journal.flush();
+					} catch (IOException e) {
+						System.err.println("could not write the journal: " + e.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops recording the game's moves.
+	 */
+	void closeJournal() {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				GameEngine.this.closeJournalNow();
+			}
+		});
+	}
+
+	private void closeJournalNow() {
+		if (this.journal != null) {
+			try {
+				this.journal.close();
+			} catch (IOException e) {
+				System.err.println("could not close the journal: " + e.getMessage());
+			}
+			this.journal = null;
+		}
+	}
+
+	/**
+	 * Replays the moves of a journal played up to a given time. The replayer
+	 * must be replaying this engine's game, and from then on belongs to the
+	 * engine thread.
+	 *
+	 * @param time
+	 *            the time, in milliseconds since the journal was started
+	 * @param ended
+	 *            run on the event dispatch thread once the journal has no
+	 *            more moves, or cannot be read any further
+	 */
+	void replay(final MoveReplayer replayer, final long time, final Runnable ended) {
+		THREAD.execute(new Runnable() {
+			@Override
+			public void run() {
+				boolean more;
+				try {
+					replayer.skipTo(time);
+					more = replayer.peekTime() >= 0;
+				} catch (IOException e) {
+					System.err.println("could not replay the journal: " + e.getMessage());
+					more = false;
+				}
+				if (!more) {
+					SwingUtilities.invokeLater(ended);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until every move sent so far has been played and its changes
+	 * applied to the board. Must not be called on the engine thread.
+	 */
+	void flush() {
+		Future<?> done = THREAD.submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+
+		try {
+			done.get();
+			if (SwingUtilities.isEventDispatchThread()) {
+				this.publish();
+			} else {
+				SwingUtilities.invokeAndWait(this.publisher);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | InvocationTargetException e) {
+			throw new IllegalStateException("the engine failed", e.getCause());
+		}
+	}
+
+	private void start(int index) {
+		if (this.state.isStarted()) {
+			return;
+		}
+
+		if (this.generator != null) {
+			this.generator.generate(this.state, index);
+		} else {
+			this.state.placeMines(index);
+		}
+
+		synchronized (this) {
+			this.pending.started = true;
+			this.pending.minesLeft = this.state.getNumMines() - this.state.getNumFlagged();
+			this.schedule();
+		}
+		this.state.reveal(index);
+	}
+
+	@Override
+	public synchronized void cellsRevealed(int[] cells, int count) {
+		for (int i = 0; i < count; i++) {
+			this.pending.add(cells[i], this.state.getAdjacent(cells[i]));
+		}
+		this.schedule();
+	}
+
+	@Override
+	public synchronized void flagToggled(int index, boolean flagged) {
+		this.pending.add(index, flagged ? Tile.FLAGGED : Tile.HIDDEN);
+		this.pending.minesLeft = this.state.getNumMines() - this.state.getNumFlagged();
+		this.schedule();
+	}
+
+	@Override
+	public synchronized void gameEnded(boolean won) {
+		// Only mines, including the exploded one, and wrong flags change
+		// appearance, so the cost follows the number of mines and flags
+		// rather than the size of the board.
+		GameState state = this.state;
+		for (int i = 0; i < state.getNumMines(); i++) {
+			int mine = state.getMine(i);
+			this.pending.add(mine, Tile.of(state, mine));
+		}
+		for (int i = state.nextFlagged(0); i >= 0; i = state.nextFlagged(i + 1)) {
+			if (!state.isMine(i)) {
+				this.pending.add(i, Tile.WRONG_FLAG);
+			}
+		}
+		this.pending.ended = true;
+		this.pending.won = won;
+		this.schedule();
+	}
+
+	@Override
+	public synchronized void gameReset() {
+		// Nothing from before the reset is worth showing.
+		this.pending.clear();
+		this.pending.reset = true;
+		this.schedule();
+	}
+
+	@Override
+	public synchronized void stateRestored(int[] cells, int count) {
+		GameState state = this.state;
+		for (int i = 0; i < count; i++) {
+			this.pending.add(cells[i], Tile.of(state, cells[i]));
+		}
+
+		// Supersedes the game starting or ending earlier in the same Diff.
+		this.pending.started = false;
+		this.pending.ended = false;
+		this.pending.restored = true;
+		this.pending.running = state.isStarted() && !state.isOver();
+		this.pending.over = state.isOver();
+		this.pending.won = state.isWon();
+		this.pending.minesLeft = state.getNumMines() - state.getNumFlagged();
+		this.schedule();
+	}
+
+	/**
+	 * Queues a publication unless one is already queued. Must hold this.
+	 */
+	private void schedule() {
+		if (!this.scheduled) {
+			this.scheduled = true;
+			SwingUtilities.invokeLater(this.publisher);
+		}
+	}
+
+	/**
+	 * Hands the pending changes to the board. Runs on the event dispatch
+	 * thread.
+	 */
+	private void publish() {
+		Diff diff;
+		synchronized (this) {
+			if (!this.scheduled) {
+				return;
+			}
+			this.scheduled = false;
+
+			diff = this.pending;
+			this.pending = this.applying;
+			this.applying = diff;
+		}
+
+		this.view.apply(diff);
+		diff.clear();
+	}
+
+	/**
+	 * The changes to a game since they were last shown: the cells that
+	 * changed, in order, each with its new Tile appearance, and whatever
+	 * else the board shows. A cell can appear more than once, in which case
+	 * its last entry is its current appearance.
+	 */
+	static final class Diff {
+
+		private int[] cells = new int[64];
+		private byte[] tiles = new byte[64];
+		private int count;
+
+		// Whether the game was reset, then whether it started and ended.
+		boolean reset;
+		boolean started;
+		boolean ended;
+		boolean won;
+
+		// Whether an undo or redo put back another version of the game, and
+		// whether that version is being played or is over. Applied before
+		// started and ended, which can only come after it.
+		boolean restored;
+		boolean running;
+		boolean over;
+
+		// The number of mines less the number of flags, or -1 if it did not
+		// change.
+		int minesLeft = -1;
+
+		int getCount() {
+			return this.count;
+		}
+
+		int getCell(int i) {
+			return this.cells[i];
+		}
+
+		int getTile(int i) {
+			return this.tiles[i];
+		}
+
+		/**
+		 * @return the cells array, whose first getCount() entries are valid
+		 */
+		int[] getCells() {
+			return this.cells;
+		}
+
+		void add(int cell, int tile) {
+			if (this.count == this.cells.length) {
+				this.cells = Arrays.copyOf(this.cells, this.count * 2);
+				this.tiles = Arrays.copyOf(this.tiles, this.count * 2);
+			}
+			this.cells[this.count] = cell;
+			this.tiles[this.count] = (byte) tile;
+			this.count++;
+		}
+
+		void clear() {
+			this.count = 0;
+			this.reset = false;
+			this.started = false;
+			this.ended = false;
+			this.won = false;
+			this.restored = false;
+			this.running = false;
+			this.over = false;
+			this.minesLeft = -1;
+		}
+	}
+}
@@ -5,19 +5,41 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.EventListener;
 
+import javax.swing.AbstractAction;
+import javax.swing.InputMap;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JComponent;
 import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+
+import minesweeper.engine.GameState;
+import minesweeper.engine.SaveFile;
 
 /**
  * 
  * This class is a window that holds a minesweeper Board and OptionBar
  * 
+ * The game being played is saved to SAVE_FILE every AUTOSAVE_MILLIS and when
+ * the window closes, and is resumed the next time the window opens. The moves
+ * of every new game are recorded to a journal in JOURNAL_DIRECTORY, which can
+ * be played back with ReplayWindow. Only the last MAX_JOURNALS journals are
+ * kept. Ctrl+Z undoes a move and Ctrl+Y or Ctrl+Shift+Z redoes it.
+ * 
  * @author blueajo
  *
  */
@@ -25,11 +47,18 @@ public class MinesweeperWindow extends JFrame implements MouseListener {
 	
 	private static final long serialVersionUID = 1L;
 	
+	static final File SAVE_FILE = new File(new File(System.getProperty("user.home"), ".minesweeper"), "save.msav");
+	private static final int AUTOSAVE_MILLIS = 60000;
+	static final File JOURNAL_DIRECTORY = new File(SAVE_FILE.getParentFile(), "journals");
+	private static final int MAX_JOURNALS = 20;
+	
 	OptionBar bar;
+	BoardPool pool;
 	Board board;
 	JScrollPane boardViewer;
 	
 	String difficulty;
+	String boardDifficulty;
 	
 	/**
 	 * Constructs and displays a Minesweeper game window
@@ -47,10 +76,15 @@ public class MinesweeperWindow extends JFrame implements MouseListener {
 		setLayout(new BorderLayout(0, 0));
 		
 		this.bar = new OptionBar();
+		this.pool = new BoardPool(this.bar);
 		
 		this.difficulty = "MEDIUM";
-			
-		this.newGame();
+		
+		if (!this.resume()) {
+			this.newGame();
+		}
+		this.initSaving();
+		this.initUndo();
 		
 		bar.setOpaque(true);
 		
@@ -65,61 +99,245 @@ public class MinesweeperWindow extends JFrame implements MouseListener {
 	}
 
 	/**
-	 * Creates a new minesweeper game for the window
+	 * Creates a new minesweeper game for the window. If the difficulty has
+	 * not changed, the current board is reset in place. Otherwise a board of
+	 * the new difficulty is taken from the pool and the old one is given back
+	 * to it.
 	 */
 	private void newGame() {
 		bar.updateMinesLeft(0);
 		
-		board = this.makeBoard(this.difficulty);
-		boardViewer = new JScrollPane(board);
-		boardViewer.setOpaque(true);
+		if (board != null && this.difficulty.equals(this.boardDifficulty)) {
+			// A board already recording keeps the reset in the same journal.
+			board.newGame();
+		} else {
+			Board old = board;
+			this.show(this.pool.take(this.difficulty));
+			
+			// Recycled before preparing, so that preparing can drop it.
+			if (old != null) {
+				old.closeSave();
+				old.closeJournal();
+				this.pool.recycle(this.boardDifficulty, old);
+			}
+			this.boardDifficulty = this.difficulty;
+		}
 		
-		this.add(boardViewer, BorderLayout.CENTER);
-		this.setVisible(true);
+		if (!board.isRecording()) {
+			this.startJournal();
+		}
+
+		this.preparePool();
+	}
+
+	/**
+	 * Records the board's moves to a new journal, first deleting the oldest
+	 * journals so that no more than MAX_JOURNALS are kept.
+	 */
+	private void startJournal() {
+		JOURNAL_DIRECTORY.mkdirs();
+		
+		File[] journals = JOURNAL_DIRECTORY.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File directory, String name) {
+				return name.endsWith(".mjnl");
+			}
+		});
+		if (journals != null && journals.length >= MAX_JOURNALS) {
+			// Named by the time they were started, so oldest first.
+			Arrays.sort(journals);
+			for (int i = 0; i <= journals.length - MAX_JOURNALS; i++) {
+				journals[i].delete();
+			}
+		}
+		
+		board.record(new File(JOURNAL_DIRECTORY, System.currentTimeMillis() + ".mjnl"));
+	}
+
+	/**
+	 * Shows a board in place of the current one.
+	 */
+	private void show(Board board) {
+		this.board = board;
+		
+		if (boardViewer == null) {
+			boardViewer = new JScrollPane(board);
+			boardViewer.setOpaque(true);
+			boardViewer.getVerticalScrollBar().setUnitIncrement(16);
+			boardViewer.getHorizontalScrollBar().setUnitIncrement(16);
+			this.add(boardViewer, BorderLayout.CENTER);
+		} else {
+			boardViewer.setViewportView(board);
+		}
 	}
 
 	/**
-	 * creates a new board object according to this.difficulty
-	 * if this.difficulty is EASY, creates a 9x9 bard with 10 mines
-	 * 					 	 MEDIUM, creates a 16x16 board with 40 mines
-	 * 						 HARD, creates a 30x16 board with 99 mines
+	 * Shows the game that was saved when the window last closed, if it was
+	 * still being played.
+	 * 
+	 * @return true if a game was resumed
+	 */
+	private boolean resume() {
+		if (!SAVE_FILE.isFile()) {
+			return false;
+		}
+		
+		SaveFile save;
+		try {
+			save = SaveFile.open(SAVE_FILE);
+		} catch (IOException e) {
+			System.err.println("could not resume the saved game: " + e.getMessage());
+			return false;
+		}
+		
+		GameState state = save.getState();
+		if (!state.isStarted() || state.isOver()) {
+			// Left open for the new game to write over.
+			Board.releaseSave(save);
+			return false;
+		}
+		
+		Board board = new Board(state, this.bar);
+		board.setSaveFile(save);
+		this.show(board);
+		
+		this.boardDifficulty = difficultyOf(state);
+		if (this.boardDifficulty != null) {
+			this.difficulty = this.boardDifficulty;
+			this.bar.difficultyToggle.setText(this.difficulty);
+		}
+		bar.updateMinesLeft(state.getNumMines() - state.getNumFlagged());
+		bar.startTimer();
+		
+		this.preparePool();
+		return true;
+	}
+
+	/**
+	 * Saves the game on a timer and when the window closes.
+	 */
+	private void initSaving() {
+		SAVE_FILE.getParentFile().mkdirs();
+		
+		Timer autosave = new Timer(AUTOSAVE_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				MinesweeperWindow.this.board.save(SAVE_FILE);
+				MinesweeperWindow.this.board.flushJournal();
+			}
+		});
+		autosave.start();
+		
+		this.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				// Waits for the save, since the program exits right after.
+				MinesweeperWindow.this.board.save(SAVE_FILE);
+				MinesweeperWindow.this.board.closeJournal();
+				MinesweeperWindow.this.board.flush();
+			}
+		});
+	}
+
+	/**
+	 * Binds the undo and redo keys to the board shown.
+	 */
+	private void initUndo() {
+		InputMap keys = this.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+		keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+		keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+		keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+		
+		this.getRootPane().getActionMap().put("undo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				MinesweeperWindow.this.board.undo();
+			}
+		});
+		this.getRootPane().getActionMap().put("redo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				MinesweeperWindow.this.board.redo();
+			}
+		});
+	}
+
+	/**
+	 * Keeps boards ready for the selected difficulty and the one after it,
+	 * except for the difficulty of the board shown, which is reset in place.
+	 */
+	private void preparePool() {
+		String next = nextDifficulty(this.difficulty);
+		
+		if (this.difficulty.equals(this.boardDifficulty)) {
+			this.pool.prepare(next);
+		} else if (next.equals(this.boardDifficulty)) {
+			this.pool.prepare(this.difficulty);
+		} else {
+			this.pool.prepare(this.difficulty, next);
+		}
+	}
+
+	/**
+	 * creates a new game according to difficulty
+	 * if difficulty is EASY, creates a 9x9 bard with 10 mines
+	 * 					MEDIUM, creates a 16x16 board with 40 mines
+	 * 					HARD, creates a 30x16 board with 99 mines
 	 * 
 	 * @param  difficulty
-	 * 		   the difficulty of the board created
+	 * 		   the difficulty of the game created
 	 * @throws IllegalArgumentException if difficulty is not
 	 * 		   "EASY", "MEDIUM", or "HARD"
-	 * @return the board created
+	 * @return the game created
 	 */
-	private Board makeBoard(String difficulty) {
-		Board board;
+	static GameState newState(String difficulty) {
 		switch (difficulty) {
-			case "EASY":	board = new Board(9, 9, 10, this.bar);
-							break;
-			case "MEDIUM":	board = new Board(16, 16, 40, this.bar);
-							break;
-			case "HARD":	board = new Board(30, 16, 99, this.bar);
-							break;
+			case "EASY":	return new GameState(9, 9, 10);
+			case "MEDIUM":	return new GameState(16, 16, 40);
+			case "HARD":	return new GameState(30, 16, 99);
 			default:		throw new IllegalArgumentException();
 		}
-		
-		return board;
 	}
 	
 	/**
-	 * toggles this.difficulty between EASY, MEDIUM, and HARD
+	 * @return the difficulty whose games are the size of the given game, or
+	 *         null if it is a custom size
 	 */
-	private void toggleDifficulty() {
-		switch(this.difficulty) {
-			case "EASY":	this.difficulty = "MEDIUM";
-							break;
-			case "MEDIUM":	this.difficulty = "HARD";
-							break;
-			case "HARD":	this.difficulty = "EASY";
-							break;
+	private static String difficultyOf(GameState state) {
+		for (String difficulty : new String[] { "EASY", "MEDIUM", "HARD" }) {
+			GameState preset = newState(difficulty);
+			if (preset.getRows() == state.getRows() && preset.getCols() == state.getCols()
+					&& preset.getNumMines() == state.getNumMines()) {
+				return difficulty;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the difficulty that toggleDifficulty moves to from difficulty
+	 */
+	private static String nextDifficulty(String difficulty) {
+		switch(difficulty) {
+			case "EASY":	return "MEDIUM";
+			case "MEDIUM":	return "HARD";
+			case "HARD":	return "EASY";
 			default:		throw new IllegalArgumentException();
 		}
+	}
+	
+	/**
+	 * toggles this.difficulty between EASY, MEDIUM, and HARD
+	 */
+	private void toggleDifficulty() {
+		this.difficulty = nextDifficulty(this.difficulty);
 		
 		this.bar.difficultyToggle.setText(this.difficulty);
+		this.preparePool();
 	}
 	
 	@Override
@@ -145,8 +363,9 @@ public class MinesweeperWindow extends JFrame implements MouseListener {
 				bar.stopTimer();
 				bar.resetTimeLabel();
 				button.setText("PLAY");
-				this.remove(boardViewer);
 				this.newGame();
+			} else if(button.equals(this.bar.solveButton)) { // if source is solve button
+				this.board.solve();
 			} else if(button.equals(this.bar.difficultyToggle)) { // if source is difficulty toggle
 				this.toggleDifficulty();
 			}
@@ -0,0 +1,206 @@
+package minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.Timer;
+
+import minesweeper.engine.MoveReplayer;
+
+/**
+ *
+ * This class is a window that plays back a journal recorded by MoveJournal
+ * on a Board, at the pace the moves were played times an adjustable speed.
+ * The play button starts playback again from the beginning, the SOLVE
+ * button pauses and resumes it, and the difficulty toggle cycles through the
+ * speeds. Playback stops at the end of the journal.
+ *
+ * @author blueajo
+ *
+ */
+public class ReplayWindow extends JFrame {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int TICK_MILLIS = 20;
+	private static final double[] SPEEDS = { 0.25, 0.5, 1, 2, 4, 8, 16, 64, 256 };
+
+	private final File file;
+	private final OptionBar bar;
+	private final JScrollPane boardViewer;
+	private final Timer timer;
+
+	private InputStream in;
+	private MoveReplayer replayer;
+	private Board board;
+
+	private int speed;
+	private boolean paused;
+
+	// The point of the journal reached, in milliseconds since it was started.
+	private double time;
+	private long lastTick;
+
+	/**
+	 * Constructs and displays a window playing back a journal.
+	 *
+	 * @param file
+	 *            the journal to play back
+	 * @param speed
+	 *            how many times faster than it was recorded to play it back
+	 * @throws IOException
+	 *             if the journal cannot be opened
+	 */
+	public ReplayWindow(File file, double speed) throws IOException {
+		this.file = file;
+		this.open();
+
+		this.setTitle("Minesweeper replay - " + file.getName());
+		this.setDefaultCloseOperation(EXIT_ON_CLOSE);
+		this.setResizable(true);
+		this.setMinimumSize(new Dimension(700, 750));
+		this.setPreferredSize(new Dimension(1000, 900));
+		this.pack();
+		this.setLocationRelativeTo(null);
+		setLayout(new BorderLayout(0, 0));
+
+		this.bar = new OptionBar();
+		this.bar.setOpaque(true);
+		this.board = new Board(this.replayer.getState(), this.bar);
+
+		this.boardViewer = new JScrollPane(this.board);
+		this.boardViewer.setOpaque(true);
+		this.boardViewer.getVerticalScrollBar().setUnitIncrement(16);
+		this.boardViewer.getHorizontalScrollBar().setUnitIncrement(16);
+
+		this.add(this.bar, BorderLayout.PAGE_START);
+		this.add(this.boardViewer, BorderLayout.CENTER);
+
+		this.speed = 0;
+		while (this.speed < SPEEDS.length - 1 && SPEEDS[this.speed] < speed) {
+			this.speed++;
+		}
+		this.initControls();
+
+		this.timer = new Timer(TICK_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ReplayWindow.this.tick();
+			}
+		});
+		this.lastTick = System.nanoTime();
+		this.timer.start();
+
+		this.setVisible(true);
+	}
+
+	/**
+	 * Opens the journal and reads its header.
+	 */
+	private void open() throws IOException {
+		// Read by the replayer until playback restarts or the window closes.
+		this.in = new BufferedInputStream(new FileInputStream(this.file));
+		try {
+			this.replayer = new MoveReplayer(this.in);
+		} catch (IOException e) {
+			this.in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts playback again from the beginning of the journal, on a new
+	 * board.
+	 */
+	private void restart() {
+		this.timer.stop();
+		// Lets the engine finish with the old replayer before its stream is
+		// closed.
+		this.board.flush();
+		try {
+			this.in.close();
+			this.open();
+		} catch (IOException e) {
+			System.err.println("could not reopen the journal: " + e.getMessage());
+			return;
+		}
+
+		this.board = new Board(this.replayer.getState(), this.bar);
+		this.boardViewer.setViewportView(this.board);
+
+		this.time = 0;
+		this.paused = false;
+		this.bar.solveButton.setText("PAUSE");
+		this.lastTick = System.nanoTime();
+		this.timer.start();
+	}
+
+	/**
+	 * Turns the bar's buttons into playback controls.
+	 */
+	private void initControls() {
+		this.bar.playButton.setText("REPLAY");
+		this.bar.solveButton.setText("PAUSE");
+		this.bar.difficultyToggle.setText(speedText(SPEEDS[this.speed]));
+		this.bar.flagToggle.setText("");
+
+		this.bar.playButton.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				ReplayWindow.this.restart();
+			}
+		});
+
+		this.bar.solveButton.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				ReplayWindow.this.paused = !ReplayWindow.this.paused;
+				ReplayWindow.this.bar.solveButton.setText(ReplayWindow.this.paused ? "RESUME" : "PAUSE");
+			}
+		});
+
+		this.bar.difficultyToggle.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				ReplayWindow.this.speed = (ReplayWindow.this.speed + 1) % SPEEDS.length;
+				ReplayWindow.this.bar.difficultyToggle.setText(speedText(SPEEDS[ReplayWindow.this.speed]));
+			}
+		});
+	}
+
+	/**
+	 * Moves playback on by the time since the last tick, times the speed.
+	 */
+	private void tick() {
+		long now = System.nanoTime();
+		if (!this.paused) {
+			this.time += (now - this.lastTick) / 1e6 * SPEEDS[this.speed];
+			final MoveReplayer replayer = this.replayer;
+			this.board.replay(replayer, (long) this.time, new Runnable() {
+				@Override
+				public void run() {
+					// Unless playback was restarted since.
+					if (ReplayWindow.this.replayer == replayer) {
+						ReplayWindow.this.timer.stop();
+					}
+				}
+			});
+		}
+		this.lastTick = now;
+	}
+
+	private static String speedText(double speed) {
+		return (speed < 1 ? String.valueOf(speed) : String.valueOf((int) speed)) + "x";
+	}
+}
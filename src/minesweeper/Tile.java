@@ -0,0 +1,111 @@
+package minesweeper;
+
+import java.awt.Color;
+
+import minesweeper.engine.ChunkedWorld;
+import minesweeper.engine.GameState;
+
+/**
+ * This class lists every way a single cell of a board can look. Appearances
+ * 0 through 8 are revealed cells showing their number of adjacent mines.
+ *
+ * @author blueajo
+ *
+ */
+final class Tile {
+
+	static final int HIDDEN = 9;
+	static final int FLAGGED = 10;
+	static final int MINE = 11;
+	static final int EXPLODED = 12;
+	static final int WRONG_FLAG = 13;
+
+	static final int NUM_TILES = 14;
+
+	private Tile() {
+	}
+
+	/**
+	 * Determines how a cell should look. Once the game is over, mines and flags
+	 * that were wrong are shown; other hidden cells stay hidden.
+	 *
+	 * @param state
+	 *            the game
+	 * @param index
+	 *            the index of the cell
+	 * @return the cell's appearance
+	 */
+	static int of(GameState state, int index) {
+		if (state.isRevealed(index)) {
+			return state.getAdjacent(index);
+		}
+
+		if (state.isOver()) {
+			if (state.isMine(index)) {
+				return (index == state.getExploded()) ? EXPLODED : MINE;
+			} else if (state.isFlagged(index)) {
+				return WRONG_FLAG;
+			}
+			return HIDDEN;
+		}
+
+		return state.isFlagged(index) ? FLAGGED : HIDDEN;
+	}
+
+	/**
+	 * Determines how a cell of a ChunkedWorld should look, as of for a
+	 * GameState.
+	 *
+	 * @param world
+	 *            the world
+	 * @param x
+	 *            the row of the cell
+	 * @param y
+	 *            the column of the cell
+	 * @return the cell's appearance
+	 */
+	static int of(ChunkedWorld world, int x, int y) {
+		if (world.isRevealed(x, y)) {
+			return world.getAdjacent(x, y);
+		}
+
+		if (world.isLost()) {
+			if (world.isMine(x, y)) {
+				return (x == world.getExplodedX() && y == world.getExplodedY()) ? EXPLODED : MINE;
+			} else if (world.isFlagged(x, y)) {
+				return WRONG_FLAG;
+			}
+			return HIDDEN;
+		}
+
+		return world.isFlagged(x, y) ? FLAGGED : HIDDEN;
+	}
+
+	/**
+	 * @return the background color of a cell with the given appearance
+	 */
+	static Color background(int tile) {
+		switch (tile) {
+			case HIDDEN:
+			case FLAGGED:		return Color.LIGHT_GRAY;
+			case MINE:			return Color.GRAY;
+			case EXPLODED:		return Color.RED;
+			default:			return Color.CYAN;
+		}
+	}
+
+	/**
+	 * @return the text shown on a cell with the given appearance
+	 */
+	static String text(int tile) {
+		switch (tile) {
+			case FLAGGED:		return "F";
+			case WRONG_FLAG:	return "X";
+			case 0:
+			case HIDDEN:
+			case MINE:
+			case EXPLODED:		return "";
+			default:			return String.valueOf(tile);
+		}
+	}
+}
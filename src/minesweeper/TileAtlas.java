@@ -0,0 +1,169 @@
+package minesweeper;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * This class is a strip of pre-drawn cell images for one zoom level: every
+ * Tile appearance, plus the two pressed looks. Once the strip is drawn,
+ * painting a cell is a single image copy with no text layout.
+ *
+ * The strip is kept in a VolatileImage when the graphics device supports
+ * one, so that copies can stay in video memory, and is redrawn whenever the
+ * device loses its contents.
+ *
+ * @author blueajo
+ *
+ */
+final class TileAtlas {
+
+	static final int PRESSED_REVEALED = Tile.NUM_TILES;
+	static final int PRESSED_HIDDEN = Tile.NUM_TILES + 1;
+	private static final int NUM_SLOTS = Tile.NUM_TILES + 2;
+
+	// Numbers are not drawn on cells smaller than this.
+	private static final int MIN_TEXT_SIZE = 10;
+
+	private final int cellSize;
+	private final Font font;
+
+	private VolatileImage volatileImage;
+	private BufferedImage bufferedImage;
+
+	/**
+	 * Constructs an atlas for the given cell size. Nothing is drawn until the
+	 * first call to prepare.
+	 *
+	 * @param cellSize
+	 *            the width and height of a cell, in pixels
+	 * @param font
+	 *            the font to draw numbers and flags in
+	 */
+	TileAtlas(int cellSize, Font font) {
+		this.cellSize = cellSize;
+		this.font = font.deriveFont(Font.BOLD, Math.min(font.getSize2D(), cellSize * 0.6f));
+	}
+
+	int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the atlas image, ready to copy from on the given device. Must be
+	 * called before each paint, since a VolatileImage can lose its contents at
+	 * any time.
+	 *
+	 * @param gc
+	 *            the configuration of the device being painted, or null
+	 * @return the strip of tile images
+	 */
+	Image prepare(GraphicsConfiguration gc) {
+		if (gc == null) {
+			return this.buffered();
+		}
+
+		if (this.volatileImage == null) {
+			this.volatileImage = gc.createCompatibleVolatileImage(NUM_SLOTS * this.cellSize, this.cellSize,
+					Transparency.OPAQUE);
+			if (this.volatileImage == null) {
+				return this.buffered();
+			}
+			this.draw(this.volatileImage.createGraphics());
+		}
+
+		switch (this.volatileImage.validate(gc)) {
+			case VolatileImage.IMAGE_INCOMPATIBLE:
+				this.volatileImage = null;
+				return this.prepare(gc);
+			case VolatileImage.IMAGE_RESTORED:
+				this.draw(this.volatileImage.createGraphics());
+				break;
+			default:
+				break;
+		}
+		return this.volatileImage;
+	}
+
+	/**
+	 * @return true if the atlas lost its contents since it was last prepared,
+	 *         in which case whatever was painted from it must be painted again
+	 */
+	boolean contentsLost() {
+		return this.volatileImage != null && this.volatileImage.contentsLost();
+	}
+
+	/**
+	 * Copies one tile from the atlas.
+	 *
+	 * @param g
+	 *            the graphics to draw on
+	 * @param atlas
+	 *            the image returned by prepare
+	 * @param slot
+	 *            the Tile appearance, or PRESSED_REVEALED or PRESSED_HIDDEN
+	 * @param x
+	 *            the left edge of the cell, in pixels
+	 * @param y
+	 *            the top edge of the cell, in pixels
+	 */
+	void drawTile(Graphics g, Image atlas, int slot, int x, int y) {
+		int sx = slot * this.cellSize;
+		g.drawImage(atlas, x, y, x + this.cellSize, y + this.cellSize, sx, 0, sx + this.cellSize, this.cellSize,
+				null);
+	}
+
+	/**
+	 * @return the atlas as a BufferedImage, drawing it the first time
+	 */
+	private Image buffered() {
+		if (this.bufferedImage == null) {
+			this.bufferedImage = new BufferedImage(NUM_SLOTS * this.cellSize, this.cellSize,
+					BufferedImage.TYPE_INT_RGB);
+			this.draw(this.bufferedImage.createGraphics());
+		}
+		return this.bufferedImage;
+	}
+
+	/**
+	 * Draws every slot of the atlas.
+	 */
+	private void draw(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(this.font);
+
+		for (int tile = 0; tile < Tile.NUM_TILES; tile++) {
+			this.drawSlot(g, tile, Tile.background(tile), Tile.text(tile));
+		}
+		this.drawSlot(g, PRESSED_REVEALED, Color.BLUE, "");
+		this.drawSlot(g, PRESSED_HIDDEN, Color.DARK_GRAY, "");
+
+		g.dispose();
+	}
+
+	/**
+	 * Draws a single slot: the background, a border, and centered text.
+	 */
+	private void drawSlot(Graphics2D g, int slot, Color background, String text) {
+		int x = slot * this.cellSize;
+
+		g.setColor(background);
+		g.fillRect(x, 0, this.cellSize, this.cellSize);
+		g.setColor(Color.BLACK);
+		g.drawRect(x, 0, this.cellSize - 1, this.cellSize - 1);
+
+		if (!text.isEmpty() && this.cellSize >= MIN_TEXT_SIZE) {
+			FontMetrics metrics = g.getFontMetrics();
+			g.drawString(text, x + (this.cellSize - metrics.stringWidth(text)) / 2,
+					(this.cellSize - metrics.getHeight()) / 2 + metrics.getAscent());
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+
+import javax.swing.AbstractAction;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+
+import minesweeper.engine.ChunkedWorld;
+
+/**
+ *
+ * This class is a window that plays a ChunkedWorld, a board with no edges.
+ * The view can be moved anywhere by dragging with the middle mouse button or
+ * with the arrow keys, and the difficulty toggle brings it back to where
+ * play started. Clicking reveals, chords and flags as on a Board, and the
+ * play button starts a new world.
+ *
+ * The world is kept in WORLD_DIRECTORY, next to the saved game, with its
+ * seed, so play carries on where it was left the next time the window
+ * opens. Changed chunks are written every AUTOSAVE_MILLIS and when the
+ * window closes.
+ *
+ * Moves are played on the event dispatch thread. At the densities a
+ * ChunkedWorld allows, a reveal spreads over a few chunks at most, and
+ * evicting a chunk writes a few hundred bytes.
+ *
+ * @author blueajo
+ *
+ */
+public class WorldWindow extends JFrame {
+
+	private static final long serialVersionUID = 1L;
+
+	static final File WORLD_DIRECTORY = new File(MinesweeperWindow.SAVE_FILE.getParentFile(), "world");
+	private static final String SEED_FILE = "seed";
+	private static final int AUTOSAVE_MILLIS = 60000;
+
+	// A sixth of the cells are mines, about as dense as MEDIUM.
+	private static final int MINES_PER_CHUNK = ChunkedWorld.CHUNK_SIZE * ChunkedWorld.CHUNK_SIZE / 6;
+	private static final int MAX_CHUNKS = 256;
+	private static final int CELL_SIZE = 24;
+	private static final int SCROLL_CELLS = 8;
+
+	private final OptionBar bar;
+	private final WorldView view;
+	private ChunkedWorld world;
+	private long revealed;
+
+	/**
+	 * Constructs and displays a window playing the world in WORLD_DIRECTORY,
+	 * or a new world if there is none.
+	 *
+	 * @throws IOException
+	 *             if the world cannot be opened
+	 */
+	public WorldWindow() throws IOException {
+		this.world = open(WORLD_DIRECTORY, false);
+
+		this.setTitle("Minesweeper - infinite world");
+		this.setDefaultCloseOperation(EXIT_ON_CLOSE);
+		this.setResizable(true);
+		this.setMinimumSize(new Dimension(700, 750));
+		this.setPreferredSize(new Dimension(1000, 900));
+		this.pack();
+		this.setLocationRelativeTo(null);
+		setLayout(new BorderLayout(0, 0));
+
+		this.bar = new OptionBar();
+		this.bar.setOpaque(true);
+		this.view = new WorldView();
+
+		this.add(this.bar, BorderLayout.PAGE_START);
+		this.add(this.view, BorderLayout.CENTER);
+
+		this.initControls();
+		this.initSaving();
+		this.showStatus();
+
+		this.setVisible(true);
+		this.view.center();
+	}
+
+	/**
+	 * Opens the world kept in a directory, with the seed stored there.
+	 *
+	 * @param directory
+	 *            where the world is kept
+	 * @param fresh
+	 *            true to throw away what is there and start a new world
+	 * @return the world
+	 */
+	static ChunkedWorld open(File directory, boolean fresh) throws IOException {
+		File seedFile = new File(directory, SEED_FILE);
+
+		if (fresh) {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+		}
+
+		long seed;
+		if (seedFile.isFile()) {
+			try (DataInputStream in = new DataInputStream(new FileInputStream(seedFile))) {
+				seed = in.readLong();
+			}
+		} else {
+			directory.mkdirs();
+			seed = new SplittableRandom().nextLong();
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(seedFile))) {
+				out.writeLong(seed);
+			}
+		}
+
+		try {
+			return new ChunkedWorld(seed, MINES_PER_CHUNK, directory, MAX_CHUNKS);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Turns the bar's buttons into the world's controls.
+	 */
+	private void initControls() {
+		this.bar.solveButton.setText("");
+		this.bar.difficultyToggle.setText("ORIGIN");
+		this.bar.flagToggle.setText("");
+
+		this.bar.playButton.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				WorldWindow.this.newWorld();
+			}
+		});
+
+		this.bar.difficultyToggle.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				WorldWindow.this.view.center();
+			}
+		});
+
+		InputMap keys = this.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+		int[][] arrows = { { KeyEvent.VK_LEFT, -1, 0 }, { KeyEvent.VK_RIGHT, 1, 0 }, { KeyEvent.VK_UP, 0, -1 },
+				{ KeyEvent.VK_DOWN, 0, 1 } };
+		for (final int[] arrow : arrows) {
+			String name = "scroll" + arrow[0];
+			keys.put(KeyStroke.getKeyStroke(arrow[0], 0), name);
+			this.getRootPane().getActionMap().put(name, new AbstractAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					WorldWindow.this.view.scroll(arrow[1] * SCROLL_CELLS * CELL_SIZE,
+							arrow[2] * SCROLL_CELLS * CELL_SIZE);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the world on a timer and when the window closes.
+	 */
+	private void initSaving() {
+		Timer autosave = new Timer(AUTOSAVE_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				try {
+					WorldWindow.this.world.flush();
+				} catch (UncheckedIOException ex) {
+					System.err.println("could not save the world: " + ex.getMessage());
+				}
+			}
+		});
+		autosave.start();
+
+		this.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				try {
+					WorldWindow.this.world.close();
+				} catch (IOException ex) {
+					System.err.println("could not save the world: " + ex.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Throws the world away and starts a new one.
+	 */
+	private void newWorld() {
+		try {
+			this.world.close();
+			this.world = open(WORLD_DIRECTORY, true);
+		} catch (IOException e) {
+			System.err.println("could not start a new world: " + e.getMessage());
+			return;
+		}
+		this.revealed = 0;
+		this.showStatus();
+		this.view.center();
+	}
+
+	/**
+	 * Shows the cells revealed this session and whether the world is lost.
+	 */
+	private void showStatus() {
+		this.bar.updateMinesLeft((int) Math.min(Integer.MAX_VALUE, this.revealed));
+		if (this.world.isLost()) {
+			this.bar.playButton.setBackground(Color.RED);
+			this.bar.playButton.setText("YOU LOSE. NEW WORLD?");
+		} else {
+			this.bar.playButton.setBackground(Color.LIGHT_GRAY);
+			this.bar.playButton.setText("NEW WORLD");
+		}
+	}
+
+	/**
+	 * The part of the world in the window. As on a Board, rows run left to
+	 * right and columns top to bottom.
+	 */
+	private final class WorldView extends JComponent {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TileAtlas atlas = new TileAtlas(CELL_SIZE, UIManager.getFont("Label.font"));
+
+		// The world pixel at the top left corner of the view.
+		private long left, top;
+
+		// Where the middle button was last dragged to.
+		private int dragX, dragY;
+
+		WorldView() {
+			MouseAdapter mouse = new MouseAdapter() {
+				@Override
+				public void mousePressed(MouseEvent e) {
+					WorldView.this.dragX = e.getX();
+					WorldView.this.dragY = e.getY();
+				}
+
+				@Override
+				public void mouseDragged(MouseEvent e) {
+					if (SwingUtilities.isMiddleMouseButton(e)) {
+						WorldView.this.scroll(WorldView.this.dragX - e.getX(), WorldView.this.dragY - e.getY());
+						WorldView.this.dragX = e.getX();
+						WorldView.this.dragY = e.getY();
+					}
+				}
+
+				@Override
+				public void mouseReleased(MouseEvent e) {
+					WorldView.this.click(e);
+				}
+			};
+			this.addMouseListener(mouse);
+			this.addMouseMotionListener(mouse);
+			this.setOpaque(true);
+		}
+
+		/**
+		 * Moves the view so that the origin, where play starts, is in the
+		 * middle.
+		 */
+		void center() {
+			this.left = -this.getWidth() / 2;
+			this.top = -this.getHeight() / 2;
+			this.repaint();
+		}
+
+		/**
+		 * Moves the view by the given number of pixels.
+		 */
+		void scroll(int dx, int dy) {
+			this.left += dx;
+			this.top += dy;
+			this.repaint();
+		}
+
+		/**
+		 * Plays the move for a click: the left button reveals a hidden cell
+		 * or chords a revealed one, and the right button flags.
+		 */
+		private void click(MouseEvent e) {
+			if (!this.contains(e.getPoint())) {
+				return;
+			}
+			ChunkedWorld world = WorldWindow.this.world;
+			int x = (int) Math.floorDiv(this.left + e.getX(), CELL_SIZE);
+			int y = (int) Math.floorDiv(this.top + e.getY(), CELL_SIZE);
+
+			if (SwingUtilities.isLeftMouseButton(e)) {
+				if (world.isRevealed(x, y)) {
+					WorldWindow.this.revealed += world.chord(x, y);
+				} else {
+					WorldWindow.this.revealed += world.reveal(x, y);
+				}
+			} else if (SwingUtilities.isRightMouseButton(e)) {
+				world.toggleFlag(x, y);
+			} else {
+				return;
+			}
+
+			WorldWindow.this.showStatus();
+			this.repaint();
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			ChunkedWorld world = WorldWindow.this.world;
+			long firstX = Math.floorDiv(this.left, CELL_SIZE);
+			long firstY = Math.floorDiv(this.top, CELL_SIZE);
+			int columns = this.getWidth() / CELL_SIZE + 2;
+			int rows = this.getHeight() / CELL_SIZE + 2;
+			GraphicsConfiguration gc = (g instanceof Graphics2D) ? ((Graphics2D) g).getDeviceConfiguration() : null;
+
+			// Paints again if the atlas lost its contents while being copied
+			// from.
+			do {
+				Image image = this.atlas.prepare(gc);
+
+				for (int i = 0; i < columns; i++) {
+					for (int j = 0; j < rows; j++) {
+						long x = firstX + i;
+						long y = firstY + j;
+						int tile = Tile.of(world, (int) x, (int) y);
+						this.atlas.drawTile(g, image, tile, (int) (x * CELL_SIZE - this.left),
+								(int) (y * CELL_SIZE - this.top));
+					}
+				}
+			} while (this.atlas.contentsLost());
+		}
+	}
+}
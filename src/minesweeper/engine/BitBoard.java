@@ -0,0 +1,277 @@
+package minesweeper.engine;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class is one bit of state for every cell of a board, packed 64
+ *         cells to a long. Cell index i is bit (i % 64) of word (i / 64), so
+ *         the cells of a row are contiguous and the cells above and below a
+ *         cell are exactly cols bits away. Shifting the whole board by a
+ *         neighbor's offset lines every cell up with that neighbor, which lets
+ *         neighbor counts be computed 64 cells at a time.
+ *
+ */
+public final class BitBoard {
+
+	// The column offset of each of the 8 neighbors, in the order used by
+	// countNeighbors(byte[], BitBoard, int, int).
+	private static final int[] NEIGHBOR_COLS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	private final int rows, cols;
+	private final int size;
+	final long[] words;
+
+	/**
+	 * Constructs a board of the given dimensions with every bit clear.
+	 *
+	 * @param rows
+	 *            the number of rows in the board
+	 * @param cols
+	 *            the number of columns in the board
+	 */
+	public BitBoard(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.size = rows * cols;
+		this.words = new long[(this.size + 63) >>> 6];
+	}
+
+	public boolean get(int index) {
+		return (this.words[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public void set(int index) {
+		this.words[index >>> 6] |= 1L << index;
+	}
+
+	public void clear(int index) {
+		this.words[index >>> 6] &= ~(1L << index);
+	}
+
+	public void set(int index, boolean value) {
+		if (value) {
+			this.set(index);
+		} else {
+			this.clear(index);
+		}
+	}
+
+	/**
+	 * Finds the next set bit, skipping clear bits 64 at a time.
+	 *
+	 * @param from
+	 *            the index to start looking at
+	 * @return the index of the first set bit at or after from, or -1 if there
+	 *         is none
+	 */
+	public int nextSetBit(int from) {
+		if (from >= this.size) {
+			return -1;
+		}
+
+		int w = from >>> 6;
+		long word = this.words[w] & (-1L << from);
+		while (true) {
+			if (word != 0) {
+				int index = (w << 6) + Long.numberOfTrailingZeros(word);
+				return (index < this.size) ? index : -1;
+			}
+			if (++w == this.words.length) {
+				return -1;
+			}
+			word = this.words[w];
+		}
+	}
+
+	/**
+	 * Clears every bit.
+	 */
+	public void clearAll() {
+		Arrays.fill(this.words, 0L);
+	}
+
+	/**
+	 * Makes this board a copy of another of the same size.
+	 *
+	 * @param other
+	 *            the board to copy
+	 * @throws IllegalArgumentException
+	 *             if the boards differ in size
+	 */
+	public void copyFrom(BitBoard other) {
+		if (other.rows != this.rows || other.cols != this.cols) {
+			throw new IllegalArgumentException("cannot copy a " + other.rows + "x" + other.cols + " board into a "
+					+ this.rows + "x" + this.cols + " board");
+		}
+		System.arraycopy(other.words, 0, this.words, 0, this.words.length);
+	}
+
+	/**
+	 * @return the number of set bits
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : this.words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	public int getCols() {
+		return this.cols;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of longs backing this board
+	 */
+	public int getNumWords() {
+		return this.words.length;
+	}
+
+	/**
+	 * Counts the set bits among the (up to) 8 neighbors of a cell. Each row of
+	 * the 3x3 window is read with a single masked word operation.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @return the number of neighbors whose bit is set
+	 */
+	public int countNeighbors(int index) {
+		int row = index / this.cols;
+		int col = index - row * this.cols;
+		int left = (col > 0) ? 1 : 0;
+		int width = left + 1 + ((col < this.cols - 1) ? 1 : 0);
+		int count = 0;
+
+		for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++) {
+			count += Long.bitCount(this.bits(r * this.cols + col - left, width));
+		}
+		return count - (this.get(index) ? 1 : 0);
+	}
+
+	/**
+	 * Returns the given number of bits starting at a cell, as the low bits of
+	 * a long.
+	 *
+	 * @param start
+	 *            the index of the first cell
+	 * @param length
+	 *            the number of bits, at most 64
+	 */
+	private long bits(int start, int length) {
+		return this.window((long) start) & (-1L >>> (64 - length));
+	}
+
+	/**
+	 * Returns the 64 bits starting at the given bit position. Positions before
+	 * the first cell or after the last one read as clear.
+	 *
+	 * @param position
+	 *            the bit position of the first bit, which may be negative
+	 */
+	private long window(long position) {
+		int word = (int) (position >> 6);
+		int shift = (int) (position & 63);
+		long low = this.word(word) >>> shift;
+		return (shift == 0) ? low : low | (this.word(word + 1) << (64 - shift));
+	}
+
+	/**
+	 * @return the word at the given index, or 0 outside the board
+	 */
+	private long word(int word) {
+		return (word >= 0 && word < this.words.length) ? this.words[word] : 0L;
+	}
+
+	/**
+	 * Counts, for every cell whose bit is clear in exclude, how many of its 8
+	 * neighbors have their bit set in this board, and stores the count in
+	 * counts. The neighbors of 64 cells are added at once with a bit-sliced
+	 * 4-bit counter, and words whose cells all count 0 are skipped, so counts
+	 * must be zeroed beforehand.
+	 *
+	 * Only words in [firstWord, lastWord) are processed, so disjoint word
+	 * ranges can be counted by different threads.
+	 *
+	 * @param counts
+	 *            the per-cell counts to fill in, indexed like this board
+	 * @param exclude
+	 *            the cells to skip, or null to count every cell
+	 * @param firstWord
+	 *            the first word to count
+	 * @param lastWord
+	 *            one past the last word to count
+	 */
+	public void countNeighbors(byte[] counts, BitBoard exclude, int firstWord, int lastWord) {
+		int cols = this.cols;
+		int[] offsets = { -cols - 1, -cols, -cols + 1, -1, 1, cols - 1, cols, cols + 1 };
+
+		for (int w = firstWord; w < lastWord; w++) {
+			long base = (long) w << 6;
+			long firstCol = this.columnMask(base, 0);
+			long lastCol = this.columnMask(base, cols - 1);
+
+			long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+
+			for (int i = 0; i < 8; i++) {
+				long x = this.window(base + offsets[i]);
+				if (NEIGHBOR_COLS[i] < 0) {
+					x &= ~firstCol;
+				} else if (NEIGHBOR_COLS[i] > 0) {
+					x &= ~lastCol;
+				}
+
+				// Adds x to the 4-bit counter s3 s2 s1 s0, one bit per cell.
+				long carry0 = s0 & x;
+				s0 ^= x;
+				long carry1 = s1 & carry0;
+				s1 ^= carry0;
+				long carry2 = s2 & carry1;
+				s2 ^= carry1;
+				s3 |= carry2;
+			}
+
+			long nonZero = (s0 | s1 | s2 | s3);
+			if (exclude != null) {
+				nonZero &= ~exclude.words[w];
+			}
+			if (base + 64 > this.size) {
+				nonZero &= -1L >>> (base + 64 - this.size);
+			}
+
+			while (nonZero != 0) {
+				int bit = Long.numberOfTrailingZeros(nonZero);
+				nonZero &= nonZero - 1;
+
+				counts[(w << 6) + bit] = (byte) (((s0 >>> bit) & 1) | (((s1 >>> bit) & 1) << 1)
+						| (((s2 >>> bit) & 1) << 2) | (((s3 >>> bit) & 1) << 3));
+			}
+		}
+	}
+
+	/**
+	 * Returns the bits of the cells in the given column among the 64 cells
+	 * starting at base. Such masks stop horizontal neighbors from wrapping
+	 * around to the next row.
+	 */
+	private long columnMask(long base, int col) {
+		long mask = 0;
+		long first = base + Math.floorMod(col - base, (long) this.cols);
+
+		for (long p = first; p < base + 64; p += this.cols) {
+			mask |= 1L << (p - base);
+		}
+		return mask;
+	}
+}
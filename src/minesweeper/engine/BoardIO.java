@@ -0,0 +1,323 @@
+package minesweeper.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class writes a GameState out and reads it back, as text for
+ *         reading and diffing, or packed binary for giant boards. Both forms
+ *         are written and read one cell at a time through a fixed-size
+ *         buffer, so the memory used beyond the game itself is the same for
+ *         any size of board.
+ *
+ *         The text form is a header line,
+ *
+ *         minesweeper ROWS COLS MINES SEED started|new
+ *
+ *         followed by one line of COLS symbols for each row: '.' for a hidden
+ *         cell, '*' for a hidden mine, 'f' for a flag on a safe cell, 'F' for
+ *         a flag on a mine, '0' to '8' for a revealed cell and its number of
+ *         adjacent mines, and 'X' for the mine that was revealed.
+ *
+ *         The binary form is a header (MAGIC, VERSION, rows, cols, mines,
+ *         seed, whether the game started, and the exploded mine or -1),
+ *         followed by one bit per cell for the mines, then one nibble per
+ *         cell for its state: 0 to 8 for a revealed cell and its number,
+ *         HIDDEN or FLAGGED. Cell i is bit i % 8 of mine byte i / 8, and the
+ *         low nibble of state byte i / 2 when i is even.
+ *
+ *         Numbers are written for whoever reads the dump; on import they
+ *         only mark a cell as revealed and are counted again from the mines.
+ *
+ */
+public final class BoardIO {
+
+	private static final int MAGIC = 0x4D534244;
+	private static final int VERSION = 1;
+
+	private static final int HIDDEN = 9;
+	private static final int FLAGGED = 10;
+
+	// The longest header line read from the text form.
+	private static final int MAX_HEADER = 256;
+
+	private BoardIO() {
+	}
+
+	/**
+	 * Writes a game in the text form.
+	 *
+	 * @param state
+	 *            the game to write
+	 * @param out
+	 *            where to write it, which is flushed but not closed
+	 * @throws IOException
+	 *             if out cannot be written
+	 */
+	public static void writeText(GameState state, Writer out) throws IOException {
+		Writer text = (out instanceof BufferedWriter) ? out : new BufferedWriter(out);
+
+		text.write("minesweeper " + state.getRows() + " " + state.getCols() + " " + state.getNumMines() + " "
+				+ state.getSeed() + " " + (state.isStarted() ? "started" : "new") + "\n");
+
+		for (int row = 0; row < state.getRows(); row++) {
+			for (int col = 0; col < state.getCols(); col++) {
+				text.write(symbol(state, state.index(row, col)));
+			}
+			text.write('\n');
+		}
+		text.flush();
+	}
+
+	private static char symbol(GameState state, int index) {
+		if (state.isRevealed(index)) {
+			return (char) ('0' + state.getAdjacent(index));
+		}
+		if (index == state.getExploded()) {
+			return 'X';
+		}
+		if (state.isFlagged(index)) {
+			return state.isMine(index) ? 'F' : 'f';
+		}
+		return state.isMine(index) ? '*' : '.';
+	}
+
+	/**
+	 * Reads a game written by writeText.
+	 *
+	 * @param in
+	 *            where to read it from, which is not closed
+	 * @return the game, with no listeners
+	 * @throws IOException
+	 *             if in cannot be read or does not hold a valid game
+	 */
+	public static GameState readText(Reader in) throws IOException {
+		Reader text = (in instanceof BufferedReader) ? in : new BufferedReader(in);
+
+		String[] header = readLine(text).trim().split(" +");
+		if (header.length != 6 || !header[0].equals("minesweeper")
+				|| !(header[5].equals("started") || header[5].equals("new"))) {
+			throw new IOException("not a minesweeper board");
+		}
+
+		GameState state;
+		try {
+			state = new GameState(Integer.parseInt(header[1]), Integer.parseInt(header[2]),
+					Integer.parseInt(header[3]), Long.parseLong(header[4]));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid board header", e);
+		}
+		boolean started = header[5].equals("started");
+
+		int exploded = -1;
+		for (int row = 0; row < state.getRows(); row++) {
+			for (int col = 0; col < state.getCols(); col++) {
+				int index = state.index(row, col);
+				int c = readSymbol(text);
+
+				switch (c) {
+					case '.':	break;
+					case '*':	state.mine.set(index);
+								break;
+					case 'f':	state.flagged.set(index);
+								break;
+					case 'F':	state.mine.set(index);
+								state.flagged.set(index);
+								break;
+					case 'X':	if (exploded >= 0) {
+									throw new IOException("more than one mine was revealed");
+								}
+								state.mine.set(index);
+								exploded = index;
+								break;
+					default:	if (c < '0' || c > '8') {
+									throw new IOException("unexpected '" + (char) c + "' at row " + row + ", column " + col);
+								}
+								state.revealed.set(index);
+				}
+			}
+		}
+
+		restore(state, started, exploded);
+		return state;
+	}
+
+	/**
+	 * Reads one line, without its line terminator.
+	 */
+	private static String readLine(Reader in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int c = in.read(); c != '\n'; c = in.read()) {
+			if (c < 0) {
+				throw new EOFException("the board ended early");
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+			if (line.length() > MAX_HEADER) {
+				throw new IOException("not a minesweeper board");
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Reads the next symbol, skipping line terminators and spaces.
+	 */
+	private static int readSymbol(Reader in) throws IOException {
+		int c;
+		do {
+			c = in.read();
+		} while (c == '\n' || c == '\r' || c == ' ');
+
+		if (c < 0) {
+			throw new EOFException("the board ended early");
+		}
+		return c;
+	}
+
+	/**
+	 * Writes a game in the binary form.
+	 *
+	 * @param state
+	 *            the game to write
+	 * @param out
+	 *            where to write it, which is flushed but not closed
+	 * @throws IOException
+	 *             if out cannot be written
+	 */
+	public static void writeBinary(GameState state, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(state.getRows());
+		data.writeInt(state.getCols());
+		data.writeInt(state.getNumMines());
+		data.writeLong(state.getSeed());
+		data.writeBoolean(state.isStarted());
+		data.writeInt(state.getExploded());
+
+		// Mines, eight cells to a byte, straight from the bitboard's words.
+		long[] words = state.mine.words;
+		int numCells = state.getNumCells();
+		for (int b = 0; b < (numCells + 7) >>> 3; b++) {
+			data.writeByte((int) (words[b >>> 3] >>> ((b & 7) << 3)));
+		}
+
+		for (int i = 0; i < numCells; i += 2) {
+			int low = nibble(state, i);
+			int high = (i + 1 < numCells) ? nibble(state, i + 1) : 0;
+			data.writeByte(low | (high << 4));
+		}
+		data.flush();
+	}
+
+	private static int nibble(GameState state, int index) {
+		if (state.isRevealed(index)) {
+			return state.getAdjacent(index);
+		}
+		return state.isFlagged(index) ? FLAGGED : HIDDEN;
+	}
+
+	/**
+	 * Reads a game written by writeBinary.
+	 *
+	 * @param in
+	 *            where to read it from, which is not closed, though it may
+	 *            be read past the end of the game
+	 * @return the game, with no listeners
+	 * @throws IOException
+	 *             if in cannot be read or does not hold a valid game
+	 */
+	public static GameState readBinary(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a minesweeper board");
+		}
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("unsupported board version " + version);
+		}
+
+		GameState state;
+		try {
+			state = new GameState(data.readInt(), data.readInt(), data.readInt(), data.readLong());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid board header", e);
+		}
+		boolean started = data.readBoolean();
+		int exploded = data.readInt();
+
+		int numCells = state.getNumCells();
+		if (exploded < -1 || exploded >= numCells) {
+			throw new IOException("invalid exploded cell " + exploded);
+		}
+
+		long[] words = state.mine.words;
+		for (int b = 0; b < (numCells + 7) >>> 3; b++) {
+			words[b >>> 3] |= (long) data.readUnsignedByte() << ((b & 7) << 3);
+		}
+		if (numCells % 64 != 0 && (words[words.length - 1] >>> (numCells % 64)) != 0) {
+			throw new IOException("mines past the last cell");
+		}
+
+		for (int i = 0; i < numCells; i += 2) {
+			int b = data.readUnsignedByte();
+			setState(state, i, b & 0xF);
+			if (i + 1 < numCells) {
+				setState(state, i + 1, b >>> 4);
+			}
+		}
+
+		if (exploded >= 0 && (!state.mine.get(exploded) || state.flagged.get(exploded))) {
+			throw new IOException("the exploded cell is not a hidden mine");
+		}
+		restore(state, started, exploded);
+		return state;
+	}
+
+	private static void setState(GameState state, int index, int nibble) throws IOException {
+		if (nibble == FLAGGED) {
+			state.flagged.set(index);
+		} else if (nibble <= 8) {
+			if (state.mine.get(index)) {
+				throw new IOException("mine " + index + " is revealed");
+			}
+			state.revealed.set(index);
+		} else if (nibble != HIDDEN) {
+			throw new IOException("invalid state " + nibble + " for cell " + index);
+		}
+	}
+
+	/**
+	 * Checks that what was read adds up, then brings the game's counts up to
+	 * date.
+	 */
+	private static void restore(GameState state, boolean started, int exploded) throws IOException {
+		int numMines = state.mine.cardinality();
+		if (started ? numMines != state.getNumMines() : numMines != 0) {
+			throw new IOException("the board has " + numMines + " mines instead of "
+					+ (started ? state.getNumMines() : 0));
+		}
+		if (!started && (state.revealed.cardinality() != 0 || exploded >= 0)) {
+			throw new IOException("cells are revealed before the mines were placed");
+		}
+
+		state.restore(started, exploded);
+	}
+}
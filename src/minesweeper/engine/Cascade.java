@@ -0,0 +1,159 @@
+package minesweeper.engine;
+
+/**
+ * This class holds the rules for revealing cells that GameState and
+ * ChunkedWorld share: revealing a cell, chording around a number, and
+ * spreading a reveal outward through cells with no adjacent mines. The
+ * board is reached through Cells, so each kind of board keeps its own
+ * addressing, storage and work queue, and only the rules live here.
+ *
+ * @author blueajo
+ *
+ */
+final class Cascade {
+
+	/**
+	 * The board a Cascade plays on. A cell is whatever long the board
+	 * addresses it by.
+	 */
+	interface Cells {
+
+		boolean isMine(long cell);
+
+		boolean isRevealed(long cell);
+
+		boolean isFlagged(long cell);
+
+		/**
+		 * @return the number of mines next to a cell that is not a mine
+		 */
+		int getAdjacent(long cell);
+
+		/**
+		 * @return the number of flagged cells next to a cell
+		 */
+		int numAdjacentFlagged(long cell);
+
+		/**
+		 * Fills buffer with the neighbors of a cell.
+		 *
+		 * @return the number of neighbors
+		 */
+		int getNeighbors(long cell, long[] buffer);
+
+		/**
+		 * Marks a safe cell revealed and queues it to spread from.
+		 */
+		void push(long cell);
+
+		/**
+		 * @return true if a cell is queued to spread from
+		 */
+		boolean hasQueued();
+
+		/**
+		 * Takes the next cell to spread from off the queue.
+		 */
+		long poll();
+
+		/**
+		 * Ends the game after a mine is revealed.
+		 */
+		void explode(long cell);
+	}
+
+	private final Cells cells;
+	private final long[] neighborBuffer = new long[8];
+
+	Cascade(Cells cells) {
+		this.cells = cells;
+	}
+
+	/**
+	 * @return true if a cell is neither revealed nor flagged, so revealing it
+	 *         is a move
+	 */
+	boolean canReveal(long cell) {
+		return !this.cells.isRevealed(cell) && !this.cells.isFlagged(cell);
+	}
+
+	/**
+	 * @return true if a cell is revealed and has as many flags next to it as
+	 *         mines, so chording it is a move
+	 */
+	boolean canChord(long cell) {
+		return this.cells.isRevealed(cell) && this.cells.getAdjacent(cell) == this.cells.numAdjacentFlagged(cell);
+	}
+
+	/**
+	 * Reveals a cell that canReveal allows. If the cell has no adjacent
+	 * mines, every adjacent cell is revealed as well.
+	 *
+	 * @return false if the cell was a mine
+	 */
+	boolean reveal(long cell) {
+		if (this.cells.isMine(cell)) {
+			this.cells.explode(cell);
+			return false;
+		}
+
+		this.cells.push(cell);
+		this.spread();
+		return true;
+	}
+
+	/**
+	 * Reveals every hidden, unflagged neighbor of a cell that canChord allows.
+	 * If any of them is a mine, nothing else is revealed.
+	 *
+	 * @return false if a neighbor was a mine
+	 */
+	boolean chord(long cell) {
+		int count = this.cells.getNeighbors(cell, this.neighborBuffer);
+
+		// Looks for a mine first, so that none of the other neighbors are
+		// left revealed but uncounted.
+		for (int i = 0; i < count; i++) {
+			long adj = this.neighborBuffer[i];
+
+			if (this.canReveal(adj) && this.cells.isMine(adj)) {
+				this.cells.explode(adj);
+				return false;
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			long adj = this.neighborBuffer[i];
+
+			if (this.canReveal(adj)) {
+				this.cells.push(adj);
+			}
+		}
+
+		this.spread();
+		return true;
+	}
+
+	/**
+	 * Takes cells off the queue until it is empty: every cell with no
+	 * adjacent mines queues its hidden, unflagged neighbors. The cost is
+	 * proportional to the size of the revealed region.
+	 */
+	private void spread() {
+		while (this.cells.hasQueued()) {
+			long cell = this.cells.poll();
+			if (this.cells.getAdjacent(cell) != 0) {
+				continue;
+			}
+
+			int count = this.cells.getNeighbors(cell, this.neighborBuffer);
+			for (int i = 0; i < count; i++) {
+				long adj = this.neighborBuffer[i];
+
+				if (this.canReveal(adj)) {
+					this.cells.push(adj);
+				}
+			}
+		}
+	}
+}
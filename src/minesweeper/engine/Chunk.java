@@ -0,0 +1,117 @@
+package minesweeper.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class is one SIZE x SIZE square of a ChunkedWorld. Each of its rows
+ * is packed into one long per kind of state, so a chunk is three arrays of
+ * 64 longs whatever its contents.
+ *
+ * A chunk's mines are generated from its own seed, so they never need to be
+ * stored: only the revealed and flagged bits are written when a chunk is
+ * evicted, and only if they changed since it was loaded.
+ *
+ * @author blueajo
+ *
+ */
+final class Chunk {
+
+	static final int SHIFT = 6;
+	static final int SIZE = 1 << SHIFT;
+	static final int MASK = SIZE - 1;
+	static final int CELLS = SIZE * SIZE;
+
+	final int cx, cy;
+	final long[] mine = new long[SIZE];
+	final long[] revealed = new long[SIZE];
+	final long[] flagged = new long[SIZE];
+
+	// Whether revealed or flagged changed since the chunk was loaded.
+	boolean dirty;
+
+	/**
+	 * Constructs the chunk at the given chunk coordinates and places its
+	 * mines. No cell within one row and column of the world's origin is a
+	 * mine, so that a game can always start there.
+	 *
+	 * @param cx
+	 *            the row of the chunk, in chunks
+	 * @param cy
+	 *            the column of the chunk, in chunks
+	 * @param seed
+	 *            the chunk's seed
+	 * @param numMines
+	 *            the number of mines in the chunk
+	 */
+	Chunk(int cx, int cy, long seed, int numMines) {
+		this.cx = cx;
+		this.cy = cy;
+
+		SplittableRandom random = new SplittableRandom(seed);
+		int placed = 0;
+		while (placed < numMines) {
+			int cell = random.nextInt(CELLS);
+			int row = cell >>> SHIFT;
+			int col = cell & MASK;
+
+			if (this.isMine(row, col) || this.isNearOrigin(row, col)) {
+				continue;
+			}
+			this.mine[row] |= 1L << col;
+			placed++;
+		}
+	}
+
+	private boolean isNearOrigin(int row, int col) {
+		long x = ((long) this.cx << SHIFT) + row;
+		long y = ((long) this.cy << SHIFT) + col;
+		return Math.abs(x) <= 1 && Math.abs(y) <= 1;
+	}
+
+	boolean isMine(int row, int col) {
+		return (this.mine[row] & (1L << col)) != 0;
+	}
+
+	boolean isRevealed(int row, int col) {
+		return (this.revealed[row] & (1L << col)) != 0;
+	}
+
+	boolean isFlagged(int row, int col) {
+		return (this.flagged[row] & (1L << col)) != 0;
+	}
+
+	void reveal(int row, int col) {
+		this.revealed[row] |= 1L << col;
+		this.dirty = true;
+	}
+
+	void toggleFlag(int row, int col) {
+		this.flagged[row] ^= 1L << col;
+		this.dirty = true;
+	}
+
+	/**
+	 * Counts the mines next to a cell that are inside this chunk.
+	 */
+	int countMines(int row, int col) {
+		int count = 0;
+		for (int r = Math.max(0, row - 1); r <= Math.min(MASK, row + 1); r++) {
+			long bits = this.mine[r];
+			// The three columns around col, with col itself left out of its
+			// own row.
+			long window = (col == 0) ? (bits & 3L) : (bits >>> (col - 1)) & 7L;
+			if (r == row) {
+				window &= (col == 0) ? ~1L : ~2L;
+			}
+			count += Long.bitCount(window);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the key of the chunk at the given chunk coordinates
+	 */
+	static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,431 @@
+package minesweeper.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class keeps the chunks a ChunkedWorld has evicted, packed into one
+ * file per REGION x REGION chunks in a directory, so the directory holds a
+ * file for every region explored rather than for every chunk.
+ *
+ * A region file starts with a header naming the world and the region, then
+ * an index with an int for each of its chunks: the first sector of the
+ * chunk's record shifted left by 8, plus the number of sectors it takes, or
+ * 0 if the chunk was never written. A record is the chunk's revealed and
+ * flagged bits, deflated, behind their length, in SECTOR-byte sectors.
+ * Mines are not stored since they are generated again from the seed.
+ *
+ * A chunk is always written to free sectors and its index entry updated
+ * after, so a crash leaves the entry pointing at either the old or the new
+ * record. The old record's sectors are then free for the next write, so a
+ * region file stays within a few sectors per chunk however often its chunks
+ * are written. Only the most recently used regions are kept open.
+ *
+ * Once the game is lost, the mine that was revealed is kept in one more
+ * file, so that a lost world is not played on when it is opened again. It
+ * is written to a temporary file which is then renamed over the old one.
+ *
+ * @author blueajo
+ *
+ */
+final class ChunkStore implements Closeable {
+
+	static final int REGION_SHIFT = 5;
+	static final int REGION = 1 << REGION_SHIFT;
+	private static final int REGION_MASK = REGION - 1;
+
+	private static final int MAGIC = 0x4D535247;
+	private static final int LOST_MAGIC = 0x4D534C53;
+	private static final int VERSION = 1;
+
+	private static final int SECTOR = 256;
+	private static final int HEADER = 32;
+	private static final int INDEX = REGION * REGION * 4;
+	private static final int FIRST_SECTOR = (HEADER + INDEX + SECTOR - 1) / SECTOR;
+
+	// The revealed and flagged bits of a chunk, and the most a record of them
+	// can take once deflated, with its length.
+	private static final int BITS = Chunk.SIZE * 2 * 8;
+	private static final int MAX_RECORD = 4 + BITS + BITS / 64 + 64;
+
+	private static final int MAX_OPEN_REGIONS = 8;
+
+	private final File directory;
+	private final long seed;
+	private final int minesPerChunk;
+
+	// The open regions, least recently used first.
+	private final Map<Long, Region> regions;
+
+	private final Deflater deflater = new Deflater();
+	private final Inflater inflater = new Inflater();
+	private final byte[] bits = new byte[BITS];
+	private final byte[] record = new byte[MAX_RECORD];
+
+	/**
+	 * Constructs a store in the given directory, creating it if needed.
+	 *
+	 * @param directory
+	 *            where to keep the chunks
+	 * @param seed
+	 *            the seed of the world
+	 * @param minesPerChunk
+	 *            the number of mines in each chunk of the world, which with
+	 *            the seed keeps regions of another world left in the
+	 *            directory from being read
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created
+	 */
+	ChunkStore(File directory, long seed, int minesPerChunk) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("cannot create " + directory));
+		}
+		this.directory = directory;
+		this.seed = seed;
+		this.minesPerChunk = minesPerChunk;
+		this.regions = new LinkedHashMap<Long, Region>(MAX_OPEN_REGIONS * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Region> eldest) {
+				if (this.size() <= MAX_OPEN_REGIONS) {
+					return false;
+				}
+				try {
+					eldest.getValue().file.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return true;
+			}
+		};
+	}
+
+	private File lostFile() {
+		return new File(this.directory, "lost");
+	}
+
+	/**
+	 * Finds the region holding a chunk, opening it if it is not open.
+	 */
+	private Region region(int cx, int cy) throws IOException {
+		int rx = cx >> REGION_SHIFT;
+		int ry = cy >> REGION_SHIFT;
+		long key = Chunk.key(rx, ry);
+
+		Region region = this.regions.get(key);
+		if (region == null) {
+			File file = new File(this.directory, Integer.toHexString(rx) + "_" + Integer.toHexString(ry) + ".region");
+			region = new Region(file, rx, ry);
+			this.regions.put(key, region);
+		}
+		return region;
+	}
+
+	/**
+	 * @return the position of a chunk in its region's index
+	 */
+	private static int slot(Chunk chunk) {
+		return ((chunk.cx & REGION_MASK) << REGION_SHIFT) | (chunk.cy & REGION_MASK);
+	}
+
+	/**
+	 * Writes a chunk's revealed and flagged bits.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the chunk cannot be written
+	 */
+	void write(Chunk chunk) {
+		for (int row = 0, i = 0; row < Chunk.SIZE; row++, i += 16) {
+			putLong(this.bits, i, chunk.revealed[row]);
+			putLong(this.bits, i + 8, chunk.flagged[row]);
+		}
+
+		this.deflater.reset();
+		this.deflater.setInput(this.bits);
+		this.deflater.finish();
+		int length = this.deflater.deflate(this.record, 4, MAX_RECORD - 4);
+		if (!this.deflater.finished()) {
+			throw new IllegalStateException("a chunk's bits deflated past MAX_RECORD");
+		}
+		putInt(this.record, 0, length);
+
+		try {
+			this.region(chunk.cx, chunk.cy).write(slot(chunk), this.record, 4 + length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads a chunk's revealed and flagged bits back into a freshly
+	 * generated copy of it.
+	 *
+	 * @param chunk
+	 *            the chunk, whose mines have been placed
+	 * @return false if the chunk was never written, in which case it is left
+	 *         as it was
+	 * @throws UncheckedIOException
+	 *             if the chunk cannot be read or its record is corrupt
+	 */
+	boolean read(Chunk chunk) {
+		try {
+			Region region = this.region(chunk.cx, chunk.cy);
+			int entry = region.index[slot(chunk)];
+			if (entry == 0) {
+				return false;
+			}
+
+			int sectors = entry & 0xFF;
+			region.file.seek((long) (entry >>> 8) * SECTOR);
+			int length = region.file.readInt();
+			if (length < 0 || 4 + length > sectors * SECTOR || length > MAX_RECORD - 4) {
+				throw new IOException("corrupt record for chunk " + chunk.cx + ", " + chunk.cy);
+			}
+			region.file.readFully(this.record, 0, length);
+
+			this.inflater.reset();
+			this.inflater.setInput(this.record, 0, length);
+			if (this.inflater.inflate(this.bits) != BITS || !this.inflater.finished()) {
+				throw new IOException("corrupt record for chunk " + chunk.cx + ", " + chunk.cy);
+			}
+		} catch (DataFormatException e) {
+			throw new UncheckedIOException(new IOException(e));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		for (int row = 0, i = 0; row < Chunk.SIZE; row++, i += 16) {
+			chunk.revealed[row] = getLong(this.bits, i);
+			chunk.flagged[row] = getLong(this.bits, i + 8);
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the game was lost.
+	 *
+	 * @param x
+	 *            the row of the mine that was revealed
+	 * @param y
+	 *            the column of the mine that was revealed
+	 * @throws UncheckedIOException
+	 *             if the file cannot be written
+	 */
+	void writeLost(int x, int y) {
+		File file = this.lostFile();
+		File temp = new File(this.directory, file.getName() + ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(LOST_MAGIC);
+				out.writeLong(this.seed);
+				out.writeInt(this.minesPerChunk);
+				out.writeInt(x);
+				out.writeInt(y);
+			}
+			replace(temp, file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads whether the game was lost.
+	 *
+	 * @return the row and column of the mine that was revealed, or null if
+	 *         the game was not lost
+	 * @throws UncheckedIOException
+	 *             if the file cannot be read or is corrupt
+	 */
+	int[] readLost() {
+		File file = this.lostFile();
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != LOST_MAGIC || in.readLong() != this.seed || in.readInt() != this.minesPerChunk) {
+				// Left by another world.
+				return null;
+			}
+			return new int[] { in.readInt(), in.readInt() };
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Renames a temporary file over the file it replaces.
+	 */
+	private static void replace(File temp, File file) throws IOException {
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("cannot replace " + file);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of region files open
+	 */
+	int getNumOpen() {
+		return this.regions.size();
+	}
+
+	/**
+	 * Closes every region file.
+	 *
+	 * @throws IOException
+	 *             if a region file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (Region region : this.regions.values()) {
+			try {
+				region.file.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		this.regions.clear();
+		this.deflater.end();
+		this.inflater.end();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * One open region file, with its index and which of its sectors are in
+	 * use.
+	 */
+	private final class Region {
+
+		final RandomAccessFile file;
+		final int[] index = new int[REGION * REGION];
+		final BitSet used = new BitSet();
+
+		Region(File path, int rx, int ry) throws IOException {
+			this.file = new RandomAccessFile(path, "rw");
+			try {
+				if (!this.readHeader(rx, ry)) {
+					// New, or left by another world, so it is started over.
+					this.file.setLength(0);
+					this.file.writeInt(MAGIC);
+					this.file.writeInt(VERSION);
+					this.file.writeLong(ChunkStore.this.seed);
+					this.file.writeInt(ChunkStore.this.minesPerChunk);
+					this.file.writeInt(rx);
+					this.file.writeInt(ry);
+					this.file.setLength((long) FIRST_SECTOR * SECTOR);
+				}
+			} catch (IOException e) {
+				this.file.close();
+				throw e;
+			}
+			this.used.set(0, FIRST_SECTOR);
+		}
+
+		/**
+		 * Reads the header and index if they belong to this world and region.
+		 */
+		private boolean readHeader(int rx, int ry) throws IOException {
+			if (this.file.length() < (long) FIRST_SECTOR * SECTOR) {
+				return false;
+			}
+			if (this.file.readInt() != MAGIC || this.file.readInt() != VERSION
+					|| this.file.readLong() != ChunkStore.this.seed
+					|| this.file.readInt() != ChunkStore.this.minesPerChunk || this.file.readInt() != rx
+					|| this.file.readInt() != ry) {
+				return false;
+			}
+
+			byte[] entries = new byte[INDEX];
+			this.file.seek(HEADER);
+			this.file.readFully(entries);
+			for (int i = 0; i < this.index.length; i++) {
+				int entry = getInt(entries, 4 * i);
+				this.index[i] = entry;
+				if (entry != 0) {
+					this.used.set(entry >>> 8, (entry >>> 8) + (entry & 0xFF));
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Writes a record to free sectors, then points the slot's index entry
+		 * at it and frees the sectors of the record it replaces.
+		 */
+		void write(int slot, byte[] record, int length) throws IOException {
+			int sectors = (length + SECTOR - 1) / SECTOR;
+
+			// The first run of free sectors long enough, which may run past
+			// the end of the file.
+			int start = this.used.nextClearBit(FIRST_SECTOR);
+			while (this.used.nextSetBit(start) != -1 && this.used.nextSetBit(start) < start + sectors) {
+				start = this.used.nextClearBit(this.used.nextSetBit(start));
+			}
+
+			this.file.seek((long) start * SECTOR);
+			this.file.write(record, 0, length);
+
+			int old = this.index[slot];
+			int entry = (start << 8) | sectors;
+			this.file.seek(HEADER + 4L * slot);
+			this.file.writeInt(entry);
+			this.index[slot] = entry;
+
+			this.used.set(start, start + sectors);
+			if (old != 0) {
+				this.used.clear(old >>> 8, (old >>> 8) + (old & 0xFF));
+			}
+		}
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static void putLong(byte[] bytes, int offset, long value) {
+		for (int i = 0; i < 8; i++) {
+			bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+		}
+	}
+
+	private static long getLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+}
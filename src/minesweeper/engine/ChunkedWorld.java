@@ -0,0 +1,460 @@
+package minesweeper.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class is a minesweeper game on a board with no edges. The
+ *         board is split into Chunk.SIZE x Chunk.SIZE chunks, each generated
+ *         the first time one of its cells is used, from a seed that depends
+ *         only on the world's seed and where the chunk is. No cell within one
+ *         row and column of (0, 0) is a mine, so play starts there.
+ *
+ *         Only the most recently used chunks are kept in memory. When a chunk
+ *         falls out, its revealed and flagged cells are written to a
+ *         ChunkStore on disk if they changed, and they are read back the next
+ *         time the chunk is used. Memory therefore stays the same however far
+ *         a player explores, apart from the queue of a single cascade. A
+ *         loss is written to the store as soon as it happens, so a lost world
+ *         stays lost when its directory is opened again.
+ *
+ *         Cells are addressed by row x and column y, which may be any int, as
+ *         with the rows and columns of GameState. Adjacent mine counts are
+ *         found across chunk borders by looking at the neighboring chunks.
+ *         Unlike a GameState, the game can be lost but never won.
+ *
+ */
+public class ChunkedWorld implements Closeable {
+
+	public static final int CHUNK_SIZE = Chunk.SIZE;
+
+	// Below this many mines per chunk, zero cells could join into regions
+	// that never end, and a single reveal would never finish.
+	private static final int MIN_MINES_PER_CHUNK = Chunk.CELLS / 8;
+	private static final int MAX_MINES_PER_CHUNK = Chunk.CELLS / 2;
+	private static final int MIN_CHUNKS = 16;
+
+	private final long seed;
+	private final int minesPerChunk;
+	private final int maxChunks;
+	private final ChunkStore store;
+
+	// The chunks in memory, least recently used first.
+	private final Map<Long, Chunk> chunks;
+
+	// The chunk used last, so that runs of cells in one chunk skip the map.
+	private long lastKey;
+	private Chunk lastChunk;
+
+	// Work stack for cascades, of packed coordinates. Every cell pushed onto
+	// it is already marked revealed.
+	private long[] stack = new long[256];
+	private int stackSize;
+	private int revealCount;
+	private final Cascade cascade = new Cascade(new Cells());
+
+	private boolean lost;
+	private int explodedX, explodedY;
+	private long numWrites;
+
+	/**
+	 * Constructs a world.
+	 *
+	 * @param seed
+	 *            the seed every chunk's mines are generated from
+	 * @param minesPerChunk
+	 *            the number of mines in each chunk, between an eighth and a
+	 *            half of CHUNK_SIZE * CHUNK_SIZE
+	 * @param directory
+	 *            where evicted chunks are kept. Chunks already there from a
+	 *            world with the same seed and mines per chunk are read back,
+	 *            so play carries on where it was left.
+	 * @param maxChunks
+	 *            the most chunks to keep in memory, at least 16
+	 * @throws IllegalArgumentException
+	 *             for an invalid number of mines or chunks
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created, or holds a loss that
+	 *             cannot be read
+	 */
+	public ChunkedWorld(long seed, int minesPerChunk, File directory, final int maxChunks) {
+		if (minesPerChunk < MIN_MINES_PER_CHUNK || minesPerChunk > MAX_MINES_PER_CHUNK) {
+			throw new IllegalArgumentException("minesPerChunk must be between " + MIN_MINES_PER_CHUNK + " and "
+					+ MAX_MINES_PER_CHUNK);
+		}
+		if (maxChunks < MIN_CHUNKS) {
+			throw new IllegalArgumentException("maxChunks must be at least " + MIN_CHUNKS);
+		}
+
+		this.seed = seed;
+		this.minesPerChunk = minesPerChunk;
+		this.maxChunks = maxChunks;
+		this.store = new ChunkStore(directory, seed, minesPerChunk);
+		int[] exploded = this.store.readLost();
+		if (exploded != null) {
+			this.lost = true;
+			this.explodedX = exploded[0];
+			this.explodedY = exploded[1];
+		}
+		this.chunks = new LinkedHashMap<Long, Chunk>(maxChunks * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+				if (this.size() <= maxChunks) {
+					return false;
+				}
+				ChunkedWorld.this.evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Finds the chunk holding a cell, loading or generating it if it is not
+	 * in memory. Loading can evict another chunk, so a chunk must not be
+	 * changed after another has been looked up: look it up again instead.
+	 */
+	private Chunk chunk(int x, int y) {
+		int cx = x >> Chunk.SHIFT;
+		int cy = y >> Chunk.SHIFT;
+		long key = Chunk.key(cx, cy);
+
+		if (this.lastChunk != null && key == this.lastKey) {
+			return this.lastChunk;
+		}
+
+		Chunk chunk = this.chunks.get(key);
+		if (chunk == null) {
+			chunk = new Chunk(cx, cy, mix(this.seed + mix(key)), this.minesPerChunk);
+			this.store.read(chunk);
+			this.chunks.put(key, chunk);
+		}
+
+		this.lastKey = key;
+		this.lastChunk = chunk;
+		return chunk;
+	}
+
+	private void evict(Chunk chunk) {
+		if (chunk.dirty) {
+			this.store.write(chunk);
+			chunk.dirty = false;
+			this.numWrites++;
+		}
+		if (chunk == this.lastChunk) {
+			this.lastChunk = null;
+		}
+	}
+
+	/**
+	 * Writes every chunk in memory that changed since it was loaded, so that
+	 * the directory holds the whole game.
+	 *
+	 * @throws UncheckedIOException
+	 *             if a chunk cannot be written
+	 */
+	public void flush() {
+		for (Chunk chunk : this.chunks.values()) {
+			if (chunk.dirty) {
+				this.store.write(chunk);
+				chunk.dirty = false;
+				this.numWrites++;
+			}
+		}
+	}
+
+	/**
+	 * Writes every chunk that changed and closes the store. The world must not
+	 * be used afterwards.
+	 *
+	 * @throws IOException
+	 *             if a chunk cannot be written or the store cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			this.store.close();
+		}
+	}
+
+	/**
+	 * Reveals the given cell if it is not flagged and not already revealed. If
+	 * the cell has no adjacent mines, every adjacent cell is revealed as well.
+	 *
+	 * @param x
+	 *            the row of the cell
+	 * @param y
+	 *            the column of the cell
+	 * @return the number of safe cells revealed
+	 */
+	public int reveal(int x, int y) {
+		long cell = pack(x, y);
+		if (this.lost || !this.cascade.canReveal(cell)) {
+			return 0;
+		}
+		return this.cascade.reveal(cell) ? this.takeCount() : 0;
+	}
+
+	/**
+	 * Reveals every neighbor of a revealed cell, provided the number of
+	 * flagged neighbors equals the number of adjacent mines. If any unflagged
+	 * neighbor is a mine, the user loses and nothing else is revealed.
+	 *
+	 * @param x
+	 *            the row of the revealed cell
+	 * @param y
+	 *            the column of the revealed cell
+	 * @return the number of safe cells revealed
+	 */
+	public int chord(int x, int y) {
+		long cell = pack(x, y);
+		if (this.lost || !this.cascade.canChord(cell)) {
+			return 0;
+		}
+		return this.cascade.chord(cell) ? this.takeCount() : 0;
+	}
+
+	/**
+	 * Flags or unflags the given cell. Does nothing if the cell has already
+	 * been revealed.
+	 *
+	 * @param x
+	 *            the row of the cell
+	 * @param y
+	 *            the column of the cell
+	 * @return true if the flag was toggled
+	 */
+	public boolean toggleFlag(int x, int y) {
+		if (this.lost) {
+			return false;
+		}
+
+		Chunk chunk = this.chunk(x, y);
+		int row = x & Chunk.MASK;
+		int col = y & Chunk.MASK;
+		if (chunk.isRevealed(row, col)) {
+			return false;
+		}
+		chunk.toggleFlag(row, col);
+		return true;
+	}
+
+	/**
+	 * @return the number of cells revealed since the last call, after
+	 *         giving back the memory of an unusually large cascade
+	 */
+	private int takeCount() {
+		int count = this.revealCount;
+		this.revealCount = 0;
+		if (this.stack.length > 1 << 16) {
+			this.stack = new long[256];
+		}
+		return count;
+	}
+
+	private void explode(int x, int y) {
+		this.lost = true;
+		this.explodedX = x;
+		this.explodedY = y;
+		this.store.writeLost(x, y);
+	}
+
+	/**
+	 * @return the number of mines next to a cell, which is only meaningful
+	 *         for cells that are not mines
+	 */
+	public int getAdjacent(int x, int y) {
+		int row = x & Chunk.MASK;
+		int col = y & Chunk.MASK;
+
+		// Cells away from the chunk's border only need the chunk itself.
+		if (row > 0 && row < Chunk.MASK && col > 0 && col < Chunk.MASK) {
+			return this.chunk(x, y).countMines(row, col);
+		}
+
+		int count = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if ((dx != 0 || dy != 0) && this.isMine(x + dx, y + dy)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of flagged cells next to a cell
+	 */
+	public int numAdjacentFlagged(int x, int y) {
+		int count = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if ((dx != 0 || dy != 0) && this.isFlagged(x + dx, y + dy)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	public boolean isMine(int x, int y) {
+		return this.chunk(x, y).isMine(x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	public boolean isRevealed(int x, int y) {
+		return this.chunk(x, y).isRevealed(x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	public boolean isFlagged(int x, int y) {
+		return this.chunk(x, y).isFlagged(x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * @return true if a mine has been revealed
+	 */
+	public boolean isLost() {
+		return this.lost;
+	}
+
+	/**
+	 * @return the row of the mine that was revealed, if the game is lost
+	 */
+	public int getExplodedX() {
+		return this.explodedX;
+	}
+
+	/**
+	 * @return the column of the mine that was revealed, if the game is lost
+	 */
+	public int getExplodedY() {
+		return this.explodedY;
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+	public int getMinesPerChunk() {
+		return this.minesPerChunk;
+	}
+
+	public int getMaxChunks() {
+		return this.maxChunks;
+	}
+
+	/**
+	 * @return the number of chunks in memory
+	 */
+	public int getNumLoaded() {
+		return this.chunks.size();
+	}
+
+	/**
+	 * @return the number of times a chunk has been written to disk
+	 */
+	public long getNumWrites() {
+		return this.numWrites;
+	}
+
+	private static long pack(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Scrambles a long, so that neighboring chunks get unrelated seeds.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * The world as the Cascade sees it, with each cell addressed by its
+	 * packed coordinates.
+	 */
+	private final class Cells implements Cascade.Cells {
+
+		@Override
+		public boolean isMine(long cell) {
+			return ChunkedWorld.this.isMine((int) (cell >> 32), (int) cell);
+		}
+
+		@Override
+		public boolean isRevealed(long cell) {
+			return ChunkedWorld.this.isRevealed((int) (cell >> 32), (int) cell);
+		}
+
+		@Override
+		public boolean isFlagged(long cell) {
+			return ChunkedWorld.this.isFlagged((int) (cell >> 32), (int) cell);
+		}
+
+		@Override
+		public int getAdjacent(long cell) {
+			return ChunkedWorld.this.getAdjacent((int) (cell >> 32), (int) cell);
+		}
+
+		@Override
+		public int numAdjacentFlagged(long cell) {
+			return ChunkedWorld.this.numAdjacentFlagged((int) (cell >> 32), (int) cell);
+		}
+
+		@Override
+		public int getNeighbors(long cell, long[] buffer) {
+			int x = (int) (cell >> 32);
+			int y = (int) cell;
+			int count = 0;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx != 0 || dy != 0) {
+						buffer[count++] = pack(x + dx, y + dy);
+					}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public void push(long cell) {
+			ChunkedWorld world = ChunkedWorld.this;
+			world.chunk((int) (cell >> 32), (int) cell).reveal((int) (cell >> 32) & Chunk.MASK,
+					(int) cell & Chunk.MASK);
+
+			if (world.stackSize == world.stack.length) {
+				world.stack = Arrays.copyOf(world.stack, world.stackSize * 2);
+			}
+			world.stack[world.stackSize++] = cell;
+			world.revealCount++;
+		}
+
+		@Override
+		public boolean hasQueued() {
+			return ChunkedWorld.this.stackSize > 0;
+		}
+
+		@Override
+		public long poll() {
+			return ChunkedWorld.this.stack[--ChunkedWorld.this.stackSize];
+		}
+
+		@Override
+		public void explode(long cell) {
+			ChunkedWorld.this.explode((int) (cell >> 32), (int) cell);
+		}
+	}
+}
@@ -0,0 +1,541 @@
+package minesweeper.engine;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class keeps the undo and redo history of a GameState. The game
+ *         is divided into blocks of BLOCK_SIZE cells. Each version of the
+ *         game holds a copy of only the blocks its move changed, taken the
+ *         first time the move touches them. Every block no move touched is
+ *         shared with the game itself, so a version costs memory in
+ *         proportion to the cells its move changed, not to the board.
+ *
+ *         Undoing a version swaps its copies with the game's blocks, so the
+ *         same copies then hold what a redo puts back. The counters and, for
+ *         the first move, the mine layout are swapped the same way.
+ *
+ *         The history is kept within a memory budget. Once it goes over, the
+ *         oldest versions are dropped and can no longer be undone. A reset
+ *         clears the history, so undo never goes back into a previous game.
+ *
+ *         Bots can explore a line of play with checkpoint and rollback,
+ *         which undo every move made since the checkpoint at the cost of the
+ *         cells those moves changed.
+ *
+ *         The moves the game makes are recorded by the game itself. Placing
+ *         the mines is undone together with the move that follows it, which
+ *         reveals the first click.
+ *
+ */
+public final class GameHistory {
+
+	static final int BLOCK_SHIFT = 12;
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_WORDS = BLOCK_SIZE >>> 6;
+
+	// Roughly what a version and a page cost beyond their arrays.
+	private static final long VERSION_BYTES = 64;
+	private static final long PAGE_BYTES = 64;
+
+	// The most pages kept for reuse once their versions are dropped.
+	private static final int MAX_FREE_PAGES = 64;
+
+	private final GameState state;
+	private final long budget;
+	private long used;
+
+	// The versions that can be undone, newest first, and those that can be
+	// redone, next first.
+	private final ArrayDeque<Version> undo = new ArrayDeque<Version>();
+	private final ArrayDeque<Version> redo = new ArrayDeque<Version>();
+	private final ArrayDeque<Page> free = new ArrayDeque<Page>();
+
+	// The version moves are recorded into, or null until the next move.
+	private Version current;
+	private boolean joinNext;
+	private long numDropped;
+
+	// stamps[block] == stamp once the block is copied into current.
+	private final int[] stamps;
+	private int stamp;
+
+	// The cells an undo or redo changed, for listeners.
+	private int[] changed = new int[64];
+	private int numChanged;
+	private final byte[] scratch;
+
+	/**
+	 * Starts keeping the history of a game.
+	 *
+	 * @param state
+	 *            the game
+	 * @param budget
+	 *            the most bytes to keep, beyond which the oldest versions are
+	 *            dropped. The version of the latest move is always kept.
+	 * @throws IllegalArgumentException
+	 *             if the budget is negative
+	 * @throws IllegalStateException
+	 *             if the game already has a history
+	 */
+	public GameHistory(GameState state, long budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("budget must not be negative");
+		}
+		if (state.history != null) {
+			throw new IllegalStateException("the game already has a history");
+		}
+
+		this.state = state;
+		this.budget = budget;
+		this.stamps = new int[(state.getNumCells() + BLOCK_SIZE - 1) >>> BLOCK_SHIFT];
+		this.scratch = new byte[Math.min(BLOCK_SIZE, state.getNumCells())];
+		state.history = this;
+	}
+
+	/**
+	 * Stops keeping the history of the game and forgets it.
+	 */
+	public void detach() {
+		this.clear();
+		if (this.state.history == this) {
+			this.state.history = null;
+		}
+	}
+
+	/**
+	 * Starts a new version for a move, unless the move joins the version of
+	 * the mines being placed. Forgets whatever could be redone.
+	 */
+	void begin() {
+		if (this.joinNext) {
+			this.joinNext = false;
+			if (this.current != null) {
+				return;
+			}
+		}
+
+		this.clearRedo();
+
+		// A move that changed nothing leaves its version to the next one.
+		if (this.current != null && this.current.isUnchanged(this.state)) {
+			return;
+		}
+
+		this.current = new Version(this.state);
+		this.undo.push(this.current);
+		this.used += VERSION_BYTES;
+
+		if (++this.stamp == 0) {
+			Arrays.fill(this.stamps, 0);
+			this.stamp = 1;
+		}
+		this.trim();
+	}
+
+	/**
+	 * Makes the next move part of the version in which the mines were
+	 * placed.
+	 */
+	void placed() {
+		this.joinNext = true;
+	}
+
+	/**
+	 * Copies the blocks holding a cell and its neighbors into the current
+	 * version, unless they have been already, before the cell is revealed or
+	 * flagged and its neighbors' counts change.
+	 */
+	void touch(int index) {
+		if (this.current == null) {
+			return;
+		}
+
+		int cols = this.state.getCols();
+		this.touchRange(index - cols - 1, index - cols + 1);
+		this.touchRange(index - 1, index + 1);
+		this.touchRange(index + cols - 1, index + cols + 1);
+	}
+
+	private void touchRange(int first, int last) {
+		first = Math.max(0, first);
+		last = Math.min(this.state.getNumCells() - 1, last);
+		if (first > last) {
+			return;
+		}
+
+		this.copy(first >> BLOCK_SHIFT);
+		this.copy(last >> BLOCK_SHIFT);
+	}
+
+	private void copy(int block) {
+		if (this.stamps[block] == this.stamp) {
+			return;
+		}
+		this.stamps[block] = this.stamp;
+
+		Page page = this.takePage(block);
+		page.copyFrom(this.state);
+		this.current.add(page);
+		this.used += page.bytes();
+
+		if (this.used > this.budget) {
+			this.trim();
+		}
+	}
+
+	/**
+	 * @return true if there is a move to undo
+	 */
+	public boolean canUndo() {
+		return !this.undo.isEmpty();
+	}
+
+	/**
+	 * @return true if there is a move to redo
+	 */
+	public boolean canRedo() {
+		return !this.redo.isEmpty();
+	}
+
+	/**
+	 * Undoes the last move that changed the game. Listeners are told which
+	 * cells changed.
+	 *
+	 * @return false if there was nothing to undo
+	 */
+	public boolean undo() {
+		while (!this.undo.isEmpty() && this.undo.peek().isUnchanged(this.state)) {
+			this.release(this.undo.pop());
+		}
+		return this.undoVersion();
+	}
+
+	private boolean undoVersion() {
+		if (this.undo.isEmpty()) {
+			return false;
+		}
+		this.current = null;
+		this.joinNext = false;
+
+		Version version = this.undo.pop();
+		this.swap(version);
+		this.redo.push(version);
+		return true;
+	}
+
+	/**
+	 * Redoes the last move undone. Listeners are told which cells changed.
+	 *
+	 * @return false if there was nothing to redo
+	 */
+	public boolean redo() {
+		if (this.redo.isEmpty()) {
+			return false;
+		}
+		this.current = null;
+		this.joinNext = false;
+
+		Version version = this.redo.pop();
+		this.swap(version);
+		this.undo.push(version);
+		this.trim();
+		return true;
+	}
+
+	/**
+	 * Marks the current point of the game, so that it can be rolled back to.
+	 *
+	 * @return the checkpoint
+	 */
+	public long checkpoint() {
+		this.current = null;
+		this.joinNext = false;
+		return this.numDropped + this.undo.size();
+	}
+
+	/**
+	 * Undoes every move made since a checkpoint. The moves can then be
+	 * redone, until another move is made.
+	 *
+	 * @param checkpoint
+	 *            a checkpoint returned by checkpoint
+	 * @throws IllegalArgumentException
+	 *             if the checkpoint was undone already
+	 * @throws IllegalStateException
+	 *             if the checkpoint has been dropped to stay within the
+	 *             budget, or cleared by a reset
+	 */
+	public void rollback(long checkpoint) {
+		if (checkpoint < this.numDropped) {
+			throw new IllegalStateException("the checkpoint is no longer in the history");
+		}
+		if (checkpoint > this.numDropped + this.undo.size()) {
+			throw new IllegalArgumentException("the checkpoint has already been undone");
+		}
+
+		while (this.numDropped + this.undo.size() > checkpoint) {
+			this.undoVersion();
+		}
+	}
+
+	/**
+	 * Forgets every version, as a reset of the game does.
+	 */
+	public void clear() {
+		this.numDropped += this.undo.size();
+		while (!this.undo.isEmpty()) {
+			this.release(this.undo.pop());
+		}
+		this.clearRedo();
+		this.current = null;
+		this.joinNext = false;
+	}
+
+	private void clearRedo() {
+		while (!this.redo.isEmpty()) {
+			this.release(this.redo.pop());
+		}
+	}
+
+	/**
+	 * Drops the oldest versions until the history is within its budget,
+	 * always keeping the newest.
+	 */
+	private void trim() {
+		while (this.used > this.budget && this.undo.size() > 1) {
+			this.release(this.undo.removeLast());
+			this.numDropped++;
+		}
+	}
+
+	/**
+	 * @return the number of versions that can be undone
+	 */
+	public int getNumUndo() {
+		return this.undo.size();
+	}
+
+	/**
+	 * @return the number of versions that can be redone
+	 */
+	public int getNumRedo() {
+		return this.redo.size();
+	}
+
+	/**
+	 * @return the bytes the history holds
+	 */
+	public long getMemoryUsed() {
+		return this.used;
+	}
+
+	public long getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Swaps a version's copies with the game, then tells listeners and the
+	 * journal which cells changed.
+	 */
+	private void swap(Version version) {
+		GameState state = this.state;
+		boolean wasOver = state.isOver();
+		this.numChanged = 0;
+
+		for (int i = 0; i < version.numPages; i++) {
+			this.swap(version.pages[i]);
+		}
+
+		boolean placementChanged = version.started != state.isStarted();
+		if (placementChanged) {
+			if (state.isStarted()) {
+				if (version.layout == null) {
+					version.layout = new BitBoard(state.getRows(), state.getCols());
+					version.layoutBytes = 8L * version.layout.getNumWords();
+					this.used += version.layoutBytes;
+				}
+				state.copyMines(version.layout);
+				state.unplaceMines();
+			} else {
+				state.placeLayout(version.layout);
+			}
+			version.started = !version.started;
+		}
+
+		int numFlagged = state.getNumFlagged();
+		int numSafeRevealed = state.getNumSafeRevealed();
+		int exploded = state.getExploded();
+		state.setCounters(version.numFlagged, version.numSafeRevealed, version.exploded);
+		version.numFlagged = numFlagged;
+		version.numSafeRevealed = numSafeRevealed;
+		version.exploded = exploded;
+
+		// Mines and flags look different once the game is over.
+		if (wasOver != state.isOver()) {
+			for (int i = 0; i < state.getNumMines(); i++) {
+				this.addChanged(state.getMine(i));
+			}
+			for (int i = state.nextFlagged(0); i >= 0; i = state.nextFlagged(i + 1)) {
+				this.addChanged(i);
+			}
+		}
+
+		if (state.journal != null) {
+			state.journal.restore(state, this.changed, this.numChanged, placementChanged);
+		}
+		state.fireStateRestored(this.changed, this.numChanged);
+	}
+
+	/**
+	 * Swaps a page with the game's block, noting every cell whose revealed or
+	 * flagged state differs.
+	 */
+	private void swap(Page page) {
+		GameState state = this.state;
+		long[] revealed = state.revealed.words;
+		long[] flagged = state.flagged.words;
+		int firstWord = page.block * BLOCK_WORDS;
+
+		for (int i = 0; i < page.revealed.length; i++) {
+			int w = firstWord + i;
+			long r = revealed[w];
+			long f = flagged[w];
+
+			for (long diff = (r ^ page.revealed[i]) | (f ^ page.flagged[i]); diff != 0; diff &= diff - 1) {
+				this.addChanged((w << 6) + Long.numberOfTrailingZeros(diff));
+			}
+
+			revealed[w] = page.revealed[i];
+			flagged[w] = page.flagged[i];
+			page.revealed[i] = r;
+			page.flagged[i] = f;
+		}
+
+		int firstCell = page.block << BLOCK_SHIFT;
+		int length = page.flaggedAdjacent.length;
+		this.swap(state.flaggedAdjacent, firstCell, page.flaggedAdjacent, length);
+		this.swap(state.hiddenAdjacent, firstCell, page.hiddenAdjacent, length);
+	}
+
+	private void swap(byte[] counts, int firstCell, byte[] copy, int length) {
+		System.arraycopy(counts, firstCell, this.scratch, 0, length);
+		System.arraycopy(copy, 0, counts, firstCell, length);
+		System.arraycopy(this.scratch, 0, copy, 0, length);
+	}
+
+	private void addChanged(int index) {
+		if (this.numChanged == this.changed.length) {
+			this.changed = Arrays.copyOf(this.changed, 2 * this.numChanged);
+		}
+		this.changed[this.numChanged++] = index;
+	}
+
+	/**
+	 * Takes a page for a block, reusing a free one of the same size.
+	 */
+	private Page takePage(int block) {
+		int words = Math.min(BLOCK_WORDS, this.state.revealed.getNumWords() - block * BLOCK_WORDS);
+		int cells = Math.min(BLOCK_SIZE, this.state.getNumCells() - (block << BLOCK_SHIFT));
+
+		Page page = this.free.peek();
+		if (page != null && page.revealed.length == words && page.flaggedAdjacent.length == cells) {
+			this.free.pop();
+		} else {
+			page = new Page(words, cells);
+		}
+		page.block = block;
+		return page;
+	}
+
+	private void release(Version version) {
+		for (int i = 0; i < version.numPages; i++) {
+			Page page = version.pages[i];
+			this.used -= page.bytes();
+			if (this.free.size() < MAX_FREE_PAGES) {
+				this.free.push(page);
+			}
+		}
+		this.used -= VERSION_BYTES + version.layoutBytes;
+		if (version == this.current) {
+			this.current = null;
+		}
+	}
+
+	/**
+	 * A version of the game: copies of the blocks that differ from the game,
+	 * and the counters of the game at that version.
+	 */
+	private static final class Version {
+
+		private Page[] pages = new Page[4];
+		private int numPages;
+
+		private int numFlagged, numSafeRevealed, exploded;
+		private boolean started;
+
+		// The mines, once the first move is undone, and their size.
+		private BitBoard layout;
+		private long layoutBytes;
+
+		Version(GameState state) {
+			this.numFlagged = state.getNumFlagged();
+			this.numSafeRevealed = state.getNumSafeRevealed();
+			this.exploded = state.getExploded();
+			this.started = state.isStarted();
+		}
+
+		void add(Page page) {
+			if (this.numPages == this.pages.length) {
+				this.pages = Arrays.copyOf(this.pages, 2 * this.numPages);
+			}
+			this.pages[this.numPages++] = page;
+		}
+
+		/**
+		 * @return true if the version is the same as the game, so that
+		 *         undoing it would change nothing
+		 */
+		boolean isUnchanged(GameState state) {
+			return this.numPages == 0 && this.started == state.isStarted()
+					&& this.numFlagged == state.getNumFlagged()
+					&& this.numSafeRevealed == state.getNumSafeRevealed()
+					&& this.exploded == state.getExploded();
+		}
+	}
+
+	/**
+	 * A copy of one block: its revealed and flagged words and its flagged
+	 * and hidden neighbor counts. The last block of a board may be shorter.
+	 */
+	private static final class Page {
+
+		private int block;
+		private final long[] revealed, flagged;
+		private final byte[] flaggedAdjacent, hiddenAdjacent;
+
+		Page(int words, int cells) {
+			this.revealed = new long[words];
+			this.flagged = new long[words];
+			this.flaggedAdjacent = new byte[cells];
+			this.hiddenAdjacent = new byte[cells];
+		}
+
+		void copyFrom(GameState state) {
+			int firstWord = this.block * BLOCK_WORDS;
+			System.arraycopy(state.revealed.words, firstWord, this.revealed, 0, this.revealed.length);
+			System.arraycopy(state.flagged.words, firstWord, this.flagged, 0, this.flagged.length);
+
+			int firstCell = this.block << BLOCK_SHIFT;
+			System.arraycopy(state.flaggedAdjacent, firstCell, this.flaggedAdjacent, 0, this.flaggedAdjacent.length);
+			System.arraycopy(state.hiddenAdjacent, firstCell, this.hiddenAdjacent, 0, this.hiddenAdjacent.length);
+		}
+
+		long bytes() {
+			return PAGE_BYTES + 16L * this.revealed.length + 2L * this.flaggedAdjacent.length;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package minesweeper.engine;
+
+/**
+ * Receives notifications whenever a GameState changes, so that a view (or a
+ * solver) can follow a game without polling every cell.
+ *
+ * @author blueajo
+ *
+ */
+public interface GameListener {
+
+	/**
+	 * Called once per move with every safe cell the move revealed, including
+	 * the whole of any zero-cell cascade. The array is reused by the game, so
+	 * listeners must copy any indices they want to keep.
+	 *
+	 * @param cells
+	 *            the indices of the revealed cells, in reveal order
+	 * @param count
+	 *            the number of valid entries in cells
+	 */
+	void cellsRevealed(int[] cells, int count);
+
+	/**
+	 * Called after a cell has been flagged or unflagged.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @param flagged
+	 *            true if the cell is now flagged
+	 */
+	void flagToggled(int index, boolean flagged);
+
+	/**
+	 * Called once when the game is won or lost.
+	 *
+	 * @param won
+	 *            true if every safe cell was revealed, false if a mine was hit
+	 */
+	void gameEnded(boolean won);
+
+	/**
+	 * Called after the game has been reset to a new, unstarted game of the
+	 * same size, so that every cell is hidden again.
+	 */
+	void gameReset();
+
+	/**
+	 * Called after an undo or redo has put back another version of the game.
+	 * Any of the listed cells may have been revealed, hidden, flagged or
+	 * unflagged, and the game may have started, stopped being started, ended
+	 * or stopped being over. Once the game is over, its mines and flags are
+	 * listed too, since they look different.
+	 *
+	 * @param cells
+	 *            the indices of the cells that changed, possibly more than
+	 *            once. The array is reused by the game.
+	 * @param count
+	 *            the number of valid entries in cells
+	 */
+	void stateRestored(int[] cells, int count);
+}
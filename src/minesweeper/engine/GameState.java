@@ -0,0 +1,959 @@
+package minesweeper.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class is the state of a single game of minesweeper, with no
+ *         dependency on Swing. Every cell is addressed by its index,
+ *         row * cols + col, and all per-cell state is kept in flat primitive
+ *         arrays so that a game can be played headless and on boards with
+ *         millions of cells.
+ *
+ */
+public class GameState {
+
+	private final int rows, cols;
+	private final int numCells;
+	private final int numMines;
+	private final int numSafe;
+	private long seed;
+
+	BitBoard mine;
+	BitBoard revealed;
+	BitBoard flagged;
+	byte[] adjacent;
+
+	// The index of every mine, in no particular order, once they are placed.
+	// Together with the flagged bitboard, this lets the end of a game touch
+	// only the mines and flags instead of every cell.
+	private final int[] mineList;
+
+	// Per-cell counts of flagged and of hidden neighbors, maintained as cells
+	// are flagged and revealed so that chording never has to look around.
+	byte[] flaggedAdjacent;
+	byte[] hiddenAdjacent;
+
+	private int numFlagged, numSafeRevealed;
+	private boolean started;
+	private boolean lost;
+	private int exploded;
+
+	// Work queue for reveals. Every cell pushed onto it is already marked
+	// revealed, so the revealed array doubles as the cascade's visited set
+	// and the queue itself is the batch reported to listeners. Cells before
+	// revealHead have been spread from.
+	private int[] revealQueue;
+	private int revealCount;
+	private int revealHead;
+	private final Cascade cascade = new Cascade(new Cells());
+
+	private final Neighbors neighbors;
+	private final int[] neighborBuffer = new int[8];
+	private final int[] counterBuffer = new int[8];
+
+	private final List<GameListener> listeners = new ArrayList<GameListener>();
+
+	// The journal recording this game's moves and the history keeping its
+	// versions, if any.
+	MoveJournal journal;
+	GameHistory history;
+
+	/**
+	 * Constructs a game with the given dimensions and number of mines, and a
+	 * random seed. No mines are placed until the first reveal.
+	 *
+	 * @param rows
+	 *            the number of rows in the board
+	 * @param cols
+	 *            the number of columns in the board
+	 * @param numMines
+	 *            the number of mines to place
+	 * @throws IllegalArgumentException
+	 *             for invalid numbers of mines, rows, and columns
+	 */
+	public GameState(int rows, int cols, int numMines) {
+		this(rows, cols, numMines, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Constructs a game with the given dimensions and number of mines whose
+	 * layout is determined by seed. No mines are placed until the first reveal.
+	 *
+	 * @param rows
+	 *            the number of rows in the board
+	 * @param cols
+	 *            the number of columns in the board
+	 * @param numMines
+	 *            the number of mines to place
+	 * @param seed
+	 *            the seed for the mine layout
+	 * @throws IllegalArgumentException
+	 *             for invalid numbers of mines, rows, and columns
+	 */
+	public GameState(int rows, int cols, int numMines, long seed) {
+		if (rows < 3 || cols < 3) {
+			throw new IllegalArgumentException("rows and cols must be at least 3");
+		}
+
+		if ((long) rows * cols > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("a " + rows + "x" + cols + " board has too many squares");
+		}
+
+		if (numMines > rows * cols - 9 || numMines < 0) {
+			throw new IllegalArgumentException("For a " + rows + "x" + cols +
+					" board, there must be fewer than " + (rows * cols - 9) + "squares");
+		}
+
+		this.rows = rows;
+		this.cols = cols;
+		this.numCells = rows * cols;
+		this.numMines = numMines;
+		this.numSafe = this.numCells - numMines;
+		this.seed = seed;
+
+		// Mines, revealed and flagged cells are packed 64 to a long so that
+		// whole neighborhoods can be tested with word operations.
+		this.mine = new BitBoard(rows, cols);
+		this.revealed = new BitBoard(rows, cols);
+		this.flagged = new BitBoard(rows, cols);
+		this.adjacent = new byte[this.numCells];
+		this.mineList = new int[numMines];
+		this.neighbors = new Neighbors(rows, cols);
+
+		this.flaggedAdjacent = new byte[this.numCells];
+		this.hiddenAdjacent = new byte[this.numCells];
+		this.initHiddenAdjacent();
+
+		this.numFlagged = 0;
+		this.numSafeRevealed = 0;
+		this.started = false;
+		this.lost = false;
+		this.exploded = -1;
+
+		this.revealQueue = new int[Math.min(this.numCells, 1024)];
+		this.revealCount = 0;
+	}
+
+	/**
+	 * Starts a new game of the same size and number of mines in place, reusing
+	 * every buffer of this one. No mines are placed until the first reveal.
+	 * Listeners stay registered and are notified.
+	 *
+	 * @param seed
+	 *            the seed for the new mine layout
+	 */
+	public void reset(long seed) {
+		this.seed = seed;
+
+		this.mine.clearAll();
+		this.revealed.clearAll();
+		this.flagged.clearAll();
+		Arrays.fill(this.adjacent, (byte) 0);
+		Arrays.fill(this.flaggedAdjacent, (byte) 0);
+		this.initHiddenAdjacent();
+
+		this.numFlagged = 0;
+		this.numSafeRevealed = 0;
+		this.started = false;
+		this.lost = false;
+		this.exploded = -1;
+		this.revealCount = 0;
+
+		if (this.journal != null) {
+			this.journal.reset(seed);
+		}
+		if (this.history != null) {
+			this.history.clear();
+		}
+		for (GameListener listener : this.listeners) {
+			listener.gameReset();
+		}
+	}
+
+	/**
+	 * Sets every cell's hidden neighbor count to its number of neighbors: 8 in
+	 * the interior, fewer along the border.
+	 */
+	private void initHiddenAdjacent() {
+		Arrays.fill(this.hiddenAdjacent, (byte) 8);
+
+		for (int row = 0; row < this.rows; row++) {
+			int first = this.index(row, 0);
+			int last = this.index(row, this.cols - 1);
+			this.hiddenAdjacent[first] = (byte) this.neighbors.count(first);
+			this.hiddenAdjacent[last] = (byte) this.neighbors.count(last);
+		}
+		for (int col = 0; col < this.cols; col++) {
+			int top = this.index(0, col);
+			int bottom = this.index(this.rows - 1, col);
+			this.hiddenAdjacent[top] = (byte) this.neighbors.count(top);
+			this.hiddenAdjacent[bottom] = (byte) this.neighbors.count(bottom);
+		}
+	}
+
+	/**
+	 * Registers a listener to be notified of changes to this game.
+	 *
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addGameListener(GameListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes a previously registered listener.
+	 *
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeGameListener(GameListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Places the mines for this game using this game's seed. Ensures that the
+	 * cell at safeIndex and none of its adjacent cells are mines, then counts
+	 * the number of adjacent mines for every cell. The same seed and safeIndex
+	 * always produce the same layout.
+	 *
+	 * Only the mine positions are sampled, by rejection over cell indices, so
+	 * the work is proportional to the number of mines rather than the number
+	 * of cells. Boards that are more than half mines sample the safe cells
+	 * instead. Sparse boards then count adjacency mine by mine; denser boards
+	 * count it for 64 cells at a time on the mine bitboard.
+	 *
+	 * Boards with millions of cells are generated in parallel on the common
+	 * ForkJoinPool instead; see placeMines(int, ForkJoinPool).
+	 *
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @throws IllegalStateException
+	 *             if the mines have already been placed
+	 */
+	public void placeMines(int safeIndex) {
+		if (this.started) {
+			throw new IllegalStateException("mines have already been placed");
+		}
+		if (this.journal != null) {
+			this.journal.start(safeIndex, false);
+		}
+		if (this.history != null) {
+			this.history.begin();
+			this.history.placed();
+		}
+
+		if (this.numCells >= ParallelGenerator.PARALLEL_THRESHOLD) {
+			this.placeMinesParallel(safeIndex, ForkJoinPool.commonPool());
+			return;
+		}
+		this.started = true;
+
+		SplittableRandom random = new SplittableRandom(this.seed);
+		int numCandidates = this.numCells - (this.neighbors.count(safeIndex) + 1);
+
+		if (this.numMines <= numCandidates / 2) {
+			for (int placed = 0; placed < this.numMines;) {
+				int index = random.nextInt(this.numCells);
+
+				if (!this.mine.get(index) && !this.isInSafeZone(index, safeIndex)) {
+					this.mine.set(index);
+					this.mineList[placed++] = index;
+				}
+			}
+
+			if (this.numMines < this.mine.getNumWords()) {
+				for (int index : this.mineList) {
+					this.countAdjacent(index);
+				}
+				return;
+			}
+		} else {
+			// Starts with every candidate as a mine, then clears the safe ones.
+			for (int i = 0; i < this.numCells; i++) {
+				this.mine.set(i, !this.isInSafeZone(i, safeIndex));
+			}
+
+			for (int cleared = numCandidates - this.numMines; cleared > 0;) {
+				int index = random.nextInt(this.numCells);
+
+				if (this.mine.get(index)) {
+					this.mine.clear(index);
+					cleared--;
+				}
+			}
+			this.listMines();
+		}
+
+		this.mine.countNeighbors(this.adjacent, this.mine, 0, this.mine.getNumWords());
+	}
+
+	/**
+	 * Places the mines for this game using this game's seed, generating row
+	 * stripes of the board in parallel on the given pool. Exactly numMines
+	 * mines are placed, and the same seed and safeIndex always produce the same
+	 * layout no matter how many threads the pool has, though not the same
+	 * layout as the serial placement.
+	 *
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @param pool
+	 *            the pool to generate on
+	 * @throws IllegalStateException
+	 *             if the mines have already been placed
+	 */
+	public void placeMines(int safeIndex, ForkJoinPool pool) {
+		if (this.started) {
+			throw new IllegalStateException("mines have already been placed");
+		}
+		if (this.journal != null) {
+			this.journal.start(safeIndex, true);
+		}
+		if (this.history != null) {
+			this.history.begin();
+			this.history.placed();
+		}
+		this.placeMinesParallel(safeIndex, pool);
+	}
+
+	private void placeMinesParallel(int safeIndex, ForkJoinPool pool) {
+		this.started = true;
+
+		ParallelGenerator.generate(this, safeIndex, pool);
+		this.listMines();
+	}
+
+	/**
+	 * Places the mines in a layout chosen by the caller, such as a generator
+	 * that only accepts layouts that can be solved without guessing, then
+	 * counts the number of adjacent mines for every cell.
+	 *
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @param layout
+	 *            the mines, with the same size as this game
+	 * @throws IllegalStateException
+	 *             if the mines have already been placed
+	 * @throws IllegalArgumentException
+	 *             if the layout is the wrong size, does not have exactly
+	 *             numMines mines, or has a mine next to safeIndex
+	 */
+	public void placeMines(int safeIndex, BitBoard layout) {
+		if (this.started) {
+			throw new IllegalStateException("mines have already been placed");
+		}
+		if (layout.cardinality() != this.numMines) {
+			throw new IllegalArgumentException("the layout has " + layout.cardinality() + " mines instead of "
+					+ this.numMines);
+		}
+
+		int count = this.neighbors.get(safeIndex, this.neighborBuffer);
+		boolean safe = !layout.get(safeIndex);
+		for (int i = 0; i < count; i++) {
+			safe &= !layout.get(this.neighborBuffer[i]);
+		}
+		if (!safe) {
+			throw new IllegalArgumentException("the layout has a mine next to the first click");
+		}
+
+		if (this.history != null) {
+			this.history.begin();
+			this.history.placed();
+		}
+		this.placeLayout(layout);
+
+		if (this.journal != null) {
+			this.journal.layout(safeIndex, this.mine);
+		}
+	}
+
+	/**
+	 * Places the mines in a layout and counts the number of adjacent mines
+	 * for every cell, with no checks, as an undo or a replay does.
+	 */
+	void placeLayout(BitBoard layout) {
+		this.mine.copyFrom(layout);
+		this.started = true;
+		Arrays.fill(this.adjacent, (byte) 0);
+		this.mine.countNeighbors(this.adjacent, this.mine, 0, this.mine.getNumWords());
+		this.listMines();
+	}
+
+	/**
+	 * Takes the mines off the board, as undoing the first move does.
+	 */
+	void unplaceMines() {
+		this.mine.clearAll();
+		Arrays.fill(this.adjacent, (byte) 0);
+		this.started = false;
+	}
+
+	/**
+	 * Sets the counters, as an undo does once it has put back the cells.
+	 *
+	 * @param exploded
+	 *            the index of the mine that was revealed, or -1
+	 */
+	void setCounters(int numFlagged, int numSafeRevealed, int exploded) {
+		this.numFlagged = numFlagged;
+		this.numSafeRevealed = numSafeRevealed;
+		this.lost = exploded >= 0;
+		this.exploded = exploded;
+	}
+
+	/**
+	 * Sets whether a cell is revealed and flagged, keeping the counts up to
+	 * date, as a replay of an undo does.
+	 */
+	void setCell(int index, boolean revealed, boolean flagged) {
+		int count = this.neighbors.get(index, this.counterBuffer);
+
+		if (revealed != this.revealed.get(index)) {
+			int delta = revealed ? 1 : -1;
+			this.revealed.set(index, revealed);
+			this.numSafeRevealed += delta;
+			for (int i = 0; i < count; i++) {
+				this.hiddenAdjacent[this.counterBuffer[i]] -= delta;
+			}
+		}
+		if (flagged != this.flagged.get(index)) {
+			int delta = flagged ? 1 : -1;
+			this.flagged.set(index, flagged);
+			this.numFlagged += delta;
+			for (int i = 0; i < count; i++) {
+				this.flaggedAdjacent[this.counterBuffer[i]] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Tells listeners that an undo or redo changed the game.
+	 */
+	void fireStateRestored(int[] cells, int count) {
+		for (GameListener listener : this.listeners) {
+			listener.stateRestored(cells, count);
+		}
+	}
+
+	/**
+	 * Brings every count up to date after the mine, revealed and flagged
+	 * boards have been filled in directly, as BoardIO does when it reads a
+	 * game. Only for a game no listener has been added to yet.
+	 *
+	 * @param started
+	 *            whether the mines have been placed
+	 * @param exploded
+	 *            the index of the mine that was revealed, or -1
+	 */
+	void restore(boolean started, int exploded) {
+		Arrays.fill(this.adjacent, (byte) 0);
+		this.mine.countNeighbors(this.adjacent, this.mine, 0, this.mine.getNumWords());
+
+		Arrays.fill(this.flaggedAdjacent, (byte) 0);
+		this.initHiddenAdjacent();
+		for (int i = this.revealed.nextSetBit(0); i >= 0; i = this.revealed.nextSetBit(i + 1)) {
+			int count = this.neighbors.get(i, this.counterBuffer);
+			for (int j = 0; j < count; j++) {
+				this.hiddenAdjacent[this.counterBuffer[j]]--;
+			}
+		}
+		for (int i = this.flagged.nextSetBit(0); i >= 0; i = this.flagged.nextSetBit(i + 1)) {
+			int count = this.neighbors.get(i, this.counterBuffer);
+			for (int j = 0; j < count; j++) {
+				this.flaggedAdjacent[this.counterBuffer[j]]++;
+			}
+		}
+
+		this.resume(started, exploded, this.flagged.cardinality(), this.revealed.cardinality());
+	}
+
+	/**
+	 * Sets the counters of a game whose boards and per-cell counts have all
+	 * been filled in directly, as SaveFile does when it loads a game. Only for
+	 * a game no listener has been added to yet.
+	 *
+	 * @param started
+	 *            whether the mines have been placed
+	 * @param exploded
+	 *            the index of the mine that was revealed, or -1
+	 * @param numFlagged
+	 *            the number of flagged cells
+	 * @param numSafeRevealed
+	 *            the number of revealed cells
+	 */
+	void resume(boolean started, int exploded, int numFlagged, int numSafeRevealed) {
+		this.numFlagged = numFlagged;
+		this.numSafeRevealed = numSafeRevealed;
+		this.started = started;
+		this.lost = exploded >= 0;
+		this.exploded = exploded;
+		this.revealCount = 0;
+
+		if (started) {
+			this.listMines();
+		}
+	}
+
+	/**
+	 * Fills the mine list from the mine bitboard.
+	 */
+	private void listMines() {
+		int count = 0;
+		for (int i = this.mine.nextSetBit(0); i >= 0; i = this.mine.nextSetBit(i + 1)) {
+			this.mineList[count++] = i;
+		}
+	}
+
+	/**
+	 * Copies this game's mines.
+	 *
+	 * @param out
+	 *            the board to copy into, with the same size as this game
+	 */
+	public void copyMines(BitBoard out) {
+		out.copyFrom(this.mine);
+	}
+
+	/**
+	 * Adds the mine at the given index to the adjacency count of each of its
+	 * safe neighbors.
+	 *
+	 * @param index
+	 *            the index of the mine
+	 */
+	private void countAdjacent(int index) {
+		int count = this.neighbors.get(index, this.neighborBuffer);
+
+		for (int i = 0; i < count; i++) {
+			int adj = this.neighborBuffer[i];
+			if (!this.mine.get(adj)) {
+				this.adjacent[adj]++;
+			}
+		}
+	}
+
+	/**
+	 * Determines whether a cell is within the 3x3 area around the first click.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @return true if the cell must not be a mine
+	 */
+	boolean isInSafeZone(int index, int safeIndex) {
+		return Math.abs(this.row(index) - this.row(safeIndex)) <= 1
+				&& Math.abs(this.col(index) - this.col(safeIndex)) <= 1;
+	}
+
+	/**
+	 * Reveals the given cell if it is not flagged and not already revealed. If
+	 * the cell has no adjacent mines, every adjacent cell is revealed as well.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @return the number of safe cells revealed
+	 */
+	public int reveal(int index) {
+		if (this.isOver() || !this.cascade.canReveal(index)) {
+			return 0;
+		}
+		if (this.journal != null) {
+			this.journal.reveal(index);
+		}
+		if (this.history != null) {
+			this.history.begin();
+		}
+
+		this.revealCount = 0;
+		this.revealHead = 0;
+		// If the cell is a mine, then the user loses.
+		if (!this.cascade.reveal(index)) {
+			return 0;
+		}
+		return this.publishReveal();
+	}
+
+	/**
+	 * Reveals every neighbor of a revealed cell, provided the number of
+	 * flagged neighbors equals the number of adjacent mines. If any unflagged
+	 * neighbor is a mine, the user loses and nothing else is revealed.
+	 *
+	 * @param index
+	 *            the index of the revealed cell
+	 * @return the number of safe cells revealed
+	 */
+	public int chord(int index) {
+		if (this.isOver() || !this.cascade.canChord(index)) {
+			return 0;
+		}
+		if (this.journal != null) {
+			this.journal.chord(index);
+		}
+		if (this.history != null) {
+			this.history.begin();
+		}
+
+		this.revealCount = 0;
+		this.revealHead = 0;
+		if (!this.cascade.chord(index) || this.revealCount == 0) {
+			return 0;
+		}
+		return this.publishReveal();
+	}
+
+	/**
+	 * Flags or unflags the given cell. Does nothing if the cell has already
+	 * been revealed.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @return true if the flag was toggled
+	 */
+	public boolean toggleFlag(int index) {
+		if (this.isOver() || this.revealed.get(index)) {
+			return false;
+		}
+		if (this.journal != null) {
+			this.journal.flag(index);
+		}
+		if (this.history != null) {
+			this.history.begin();
+			this.history.touch(index);
+		}
+
+		int delta;
+		if (this.flagged.get(index)) {
+			this.numFlagged--;
+			delta = -1;
+		} else {
+			this.numFlagged++;
+			delta = 1;
+		}
+		this.flagged.set(index, !this.flagged.get(index));
+
+		int count = this.neighbors.get(index, this.counterBuffer);
+		for (int i = 0; i < count; i++) {
+			this.flaggedAdjacent[this.counterBuffer[i]] += delta;
+		}
+
+		for (GameListener listener : this.listeners) {
+			listener.flagToggled(index, this.flagged.get(index));
+		}
+		return true;
+	}
+
+	/**
+	 * Marks a safe cell as revealed, updates its neighbors' hidden counts and
+	 * appends it to the reveal queue.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 */
+	private void pushReveal(int index) {
+		if (this.history != null) {
+			this.history.touch(index);
+		}
+		this.revealed.set(index);
+
+		int count = this.neighbors.get(index, this.counterBuffer);
+		for (int i = 0; i < count; i++) {
+			this.hiddenAdjacent[this.counterBuffer[i]]--;
+		}
+
+		if (this.revealCount == this.revealQueue.length) {
+			this.revealQueue = Arrays.copyOf(this.revealQueue,
+					(int) Math.min(this.numCells, 2L * this.revealQueue.length));
+		}
+		this.revealQueue[this.revealCount++] = index;
+	}
+
+	/**
+	 * Counts the cells the Cascade revealed through the reveal queue, which it
+	 * took breadth first, and tells listeners about the whole region at once.
+	 *
+	 * @return the number of safe cells revealed
+	 */
+	private int publishReveal() {
+		this.numSafeRevealed += this.revealCount;
+		for (GameListener listener : this.listeners) {
+			listener.cellsRevealed(this.revealQueue, this.revealCount);
+		}
+
+		// If the user has revealed every safe cell, then the user wins.
+		if (this.numSafeRevealed == this.numSafe) {
+			for (GameListener listener : this.listeners) {
+				listener.gameEnded(true);
+			}
+		}
+		return this.revealCount;
+	}
+
+	/**
+	 * Ends the game after the mine at the given index is revealed.
+	 *
+	 * @param index
+	 *            the index of the mine
+	 */
+	private void explode(int index) {
+		this.lost = true;
+		this.exploded = index;
+		for (GameListener listener : this.listeners) {
+			listener.gameEnded(false);
+		}
+	}
+
+	/**
+	 * Returns the number of cells which have been flagged adjacent to a given
+	 * cell. The count is kept up to date as cells are flagged, so this is O(1).
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @return the number of adjacent cells which have been flagged
+	 */
+	public int numAdjacentFlagged(int index) {
+		return this.flaggedAdjacent[index];
+	}
+
+	/**
+	 * Returns the number of cells adjacent to a given cell which have not been
+	 * revealed, whether or not they are flagged. The count is kept up to date
+	 * as cells are revealed, so this is O(1).
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @return the number of adjacent cells which are still hidden
+	 */
+	public int numAdjacentHidden(int index) {
+		return this.hiddenAdjacent[index];
+	}
+
+	/**
+	 * @return the number of cells adjacent to the given cell: 3 in a corner, 5
+	 *         along an edge and 8 elsewhere
+	 */
+	public int numNeighbors(int index) {
+		return this.neighbors.count(index);
+	}
+
+	/**
+	 * Determines whether the given coordinates are within the board's bounds.
+	 *
+	 * @param row
+	 *            the index of the row
+	 * @param col
+	 *            the index of the column
+	 * @return true if the cell is on the board, false otherwise
+	 */
+	public boolean isInBounds(int row, int col) {
+		return (row >= 0) && (row < this.rows) && (col >= 0) && (col < this.cols);
+	}
+
+	/**
+	 * @return the index of the cell at the given row and column
+	 */
+	public int index(int row, int col) {
+		return row * this.cols + col;
+	}
+
+	/**
+	 * @return the row of the cell at the given index
+	 */
+	public int row(int index) {
+		return index / this.cols;
+	}
+
+	/**
+	 * @return the column of the cell at the given index
+	 */
+	public int col(int index) {
+		return index % this.cols;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	public int getCols() {
+		return this.cols;
+	}
+
+	/**
+	 * @return the neighbor table for this board, for iterating over the
+	 *         neighbors of a cell without allocating
+	 */
+	public Neighbors getNeighbors() {
+		return this.neighbors;
+	}
+
+	public int getNumCells() {
+		return this.numCells;
+	}
+
+	/**
+	 * Returns one of the mines, so that every mine can be visited without
+	 * looking at every cell. Only valid once the game has started.
+	 *
+	 * @param i
+	 *            between 0 and getNumMines() - 1
+	 * @return the index of the i-th mine, in no particular order
+	 */
+	public int getMine(int i) {
+		return this.mineList[i];
+	}
+
+	/**
+	 * Finds the next flagged cell, skipping unflagged cells 64 at a time, so
+	 * that every flag can be visited without looking at every cell.
+	 *
+	 * @param from
+	 *            the index to start looking at
+	 * @return the index of the first flagged cell at or after from, or -1 if
+	 *         there is none
+	 */
+	public int nextFlagged(int from) {
+		return this.flagged.nextSetBit(from);
+	}
+
+	/**
+	 * @return the seed that determines this game's mine layout
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+
+	public int getNumMines() {
+		return this.numMines;
+	}
+
+	public int getNumFlagged() {
+		return this.numFlagged;
+	}
+
+	public int getNumSafeRevealed() {
+		return this.numSafeRevealed;
+	}
+
+	/**
+	 * @return the index of the mine that ended the game, or -1 if none has
+	 *         been revealed
+	 */
+	public int getExploded() {
+		return this.exploded;
+	}
+
+	public boolean isMine(int index) {
+		return this.mine.get(index);
+	}
+
+	public boolean isRevealed(int index) {
+		return this.revealed.get(index);
+	}
+
+	public boolean isFlagged(int index) {
+		return this.flagged.get(index);
+	}
+
+	/**
+	 * @return the number of mines adjacent to the given cell
+	 */
+	public int getAdjacent(int index) {
+		return this.adjacent[index];
+	}
+
+	/**
+	 * @return true once the mines have been placed
+	 */
+	public boolean isStarted() {
+		return this.started;
+	}
+
+	/**
+	 * @return true if every safe cell has been revealed
+	 */
+	public boolean isWon() {
+		return this.numSafeRevealed == this.numSafe;
+	}
+
+	/**
+	 * @return true if a mine has been revealed
+	 */
+	public boolean isLost() {
+		return this.lost;
+	}
+
+	/**
+	 * @return true if the game has been won or lost
+	 */
+	public boolean isOver() {
+		return this.lost || this.isWon();
+	}
+
+	/**
+	 * The game as the Cascade sees it, with each cell addressed by its index.
+	 */
+	private final class Cells implements Cascade.Cells {
+
+		@Override
+		public boolean isMine(long cell) {
+			return GameState.this.mine.get((int) cell);
+		}
+
+		@Override
+		public boolean isRevealed(long cell) {
+			return GameState.this.revealed.get((int) cell);
+		}
+
+		@Override
+		public boolean isFlagged(long cell) {
+			return GameState.this.flagged.get((int) cell);
+		}
+
+		@Override
+		public int getAdjacent(long cell) {
+			return GameState.this.adjacent[(int) cell];
+		}
+
+		@Override
+		public int numAdjacentFlagged(long cell) {
+			return GameState.this.flaggedAdjacent[(int) cell];
+		}
+
+		@Override
+		public int getNeighbors(long cell, long[] buffer) {
+			int[] neighborBuffer = GameState.this.neighborBuffer;
+			int count = GameState.this.neighbors.get((int) cell, neighborBuffer);
+			for (int i = 0; i < count; i++) {
+				buffer[i] = neighborBuffer[i];
+			}
+			return count;
+		}
+
+		@Override
+		public void push(long cell) {
+			GameState.this.pushReveal((int) cell);
+		}
+
+		@Override
+		public boolean hasQueued() {
+			return GameState.this.revealHead < GameState.this.revealCount;
+		}
+
+		@Override
+		public long poll() {
+			return GameState.this.revealQueue[GameState.this.revealHead++];
+		}
+
+		@Override
+		public void explode(long cell) {
+			GameState.this.explode((int) cell);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package minesweeper.engine;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class appends every move played on a GameState to a compact
+ *         binary journal, from which a MoveReplayer can rebuild the game, or
+ *         any point in it, without the UI. Moves are recorded by the game
+ *         itself, so moves played by the solver or a bot are recorded as
+ *         well as the user's.
+ *
+ *         The journal starts with a header: MAGIC, VERSION, then rows, cols
+ *         and mines as varints, then the seed and the time the journal was
+ *         started, in milliseconds since the epoch, as 8 bytes each. Each
+ *         move follows as one byte naming it, the milliseconds since the
+ *         previous move as a varint, and what the move needs:
+ *
+ *         RESET, the new seed as 8 bytes.
+ *
+ *         START and START_PARALLEL, the first click. The mines were placed
+ *         from the seed by placeMines(int) or placeMines(int, ForkJoinPool).
+ *
+ *         LAYOUT, the first click, then the mines as varint gaps from the
+ *         previous mine, for mines placed by placeMines(int, BitBoard), which
+ *         the seed alone does not reproduce.
+ *
+ *         REVEAL, CHORD and FLAG, the cell.
+ *
+ *         RESTORE, for an undo or redo by a GameHistory: a byte whose bit 0
+ *         says whether the game is started and bit 1 whether that changed,
+ *         then the mines as for LAYOUT if it became started, then the number
+ *         of cells that changed as a varint, each cell followed by a byte
+ *         with bit 0 set if it is revealed and bit 1 if it is flagged, then
+ *         the zigzag varint of the exploded mine, or -1.
+ *
+ *         Cells are written as the zigzag varint of their difference from the
+ *         previous cell, so moves near each other take a byte or two.
+ *
+ *         Moves the game ignores outright, such as revealing a flagged cell,
+ *         are not recorded. Records go through a fixed-size buffer, so the
+ *         stream is only written when the buffer fills and when the journal
+ *         is flushed or closed.
+ *
+ */
+public final class MoveJournal implements Flushable, Closeable {
+
+	static final int MAGIC = 0x4D534A4E;
+	static final int VERSION = 1;
+
+	static final int RESET = 0;
+	static final int START = 1;
+	static final int START_PARALLEL = 2;
+	static final int LAYOUT = 3;
+	static final int REVEAL = 4;
+	static final int CHORD = 5;
+	static final int FLAG = 6;
+	static final int RESTORE = 7;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// The most bytes a record other than a layout can take.
+	private static final int MAX_RECORD = 1 + 10 + 10;
+
+	private final GameState state;
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int length;
+
+	private long lastNanos;
+	private int lastCell;
+	private long numMoves;
+	private boolean closed;
+
+	/**
+	 * Starts recording the moves of a game that has not started.
+	 *
+	 * @param state
+	 *            the game to record
+	 * @param out
+	 *            where to write the journal, which is closed with it
+	 * @throws IllegalStateException
+	 *             if the game has started or is already being recorded
+	 * @throws IOException
+	 *             if the header cannot be written
+	 */
+	public MoveJournal(GameState state, OutputStream out) throws IOException {
+		if (state.isStarted()) {
+			throw new IllegalStateException("the game has already started");
+		}
+		if (state.journal != null) {
+			throw new IllegalStateException("the game is already being recorded");
+		}
+
+		this.state = state;
+		this.out = out;
+
+		this.writeInt(MAGIC);
+		this.buffer[this.length++] = VERSION;
+		this.writeVarint(state.getRows());
+		this.writeVarint(state.getCols());
+		this.writeVarint(state.getNumMines());
+		this.writeLong(state.getSeed());
+		this.writeLong(System.currentTimeMillis());
+		this.drain();
+
+		this.lastNanos = System.nanoTime();
+		state.journal = this;
+	}
+
+	void reset(long seed) {
+		this.begin(RESET);
+		this.writeLong(seed);
+	}
+
+	void start(int safeIndex, boolean parallel) {
+		this.begin(parallel ? START_PARALLEL : START);
+		this.writeCell(safeIndex);
+	}
+
+	void layout(int safeIndex, BitBoard mines) {
+		this.begin(LAYOUT);
+		this.writeCell(safeIndex);
+
+		this.writeMines(mines);
+	}
+
+	void restore(GameState state, int[] cells, int count, boolean placementChanged) {
+		this.begin(RESTORE);
+		this.buffer[this.length++] = (byte) ((state.isStarted() ? 1 : 0) | (placementChanged ? 2 : 0));
+		if (placementChanged && state.isStarted()) {
+			this.writeMines(state.mine);
+		}
+
+		// The mines or the cells can fill the buffer, so there must be room
+		// for each varint after them.
+		if (this.length > BUFFER_SIZE - 5) {
+			this.drain();
+		}
+		this.writeVarint(count);
+		for (int i = 0; i < count; i++) {
+			if (this.length > BUFFER_SIZE - 6) {
+				this.drain();
+			}
+			int index = cells[i];
+			this.writeCell(index);
+			this.buffer[this.length++] = (byte) ((state.isRevealed(index) ? 1 : 0) | (state.isFlagged(index) ? 2 : 0));
+		}
+
+		if (this.length > BUFFER_SIZE - 5) {
+			this.drain();
+		}
+		int exploded = state.getExploded();
+		this.writeVarint((exploded << 1) ^ (exploded >> 31));
+	}
+
+	private void writeMines(BitBoard mines) {
+		int previous = -1;
+		for (int i = mines.nextSetBit(0); i >= 0; i = mines.nextSetBit(i + 1)) {
+			if (this.length > BUFFER_SIZE - 5) {
+				this.drain();
+			}
+			this.writeVarint(i - previous - 1);
+			previous = i;
+		}
+	}
+
+	void reveal(int index) {
+		this.begin(REVEAL);
+		this.writeCell(index);
+	}
+
+	void chord(int index) {
+		this.begin(CHORD);
+		this.writeCell(index);
+	}
+
+	void flag(int index) {
+		this.begin(FLAG);
+		this.writeCell(index);
+	}
+
+	/**
+	 * Starts a record: the move and the milliseconds since the last one.
+	 */
+	private void begin(int move) {
+		if (this.closed) {
+			throw new IllegalStateException("the journal is closed");
+		}
+		if (this.length > BUFFER_SIZE - MAX_RECORD) {
+			this.drain();
+		}
+
+		long now = System.nanoTime();
+		long millis = (now - this.lastNanos) / 1000000;
+		// Keeps the fraction of a millisecond, so fast moves still add up.
+		this.lastNanos += millis * 1000000;
+
+		this.buffer[this.length++] = (byte) move;
+		this.writeVarint(millis);
+		this.numMoves++;
+	}
+
+	private void writeCell(int index) {
+		int delta = index - this.lastCell;
+		this.writeVarint((delta << 1) ^ (delta >> 31));
+		this.lastCell = index;
+	}
+
+	private void writeVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			this.buffer[this.length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.length++] = (byte) value;
+	}
+
+	private void writeVarint(int value) {
+		this.writeVarint(value & 0xFFFFFFFFL);
+	}
+
+	private void writeInt(int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (value >>> shift);
+		}
+	}
+
+	private void writeLong(long value) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (value >>> shift);
+		}
+	}
+
+	/**
+	 * Writes the buffer to the stream.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the stream cannot be written, since moves cannot throw
+	 *             IOException
+	 */
+	private void drain() {
+		try {
+			this.out.write(this.buffer, 0, this.length);
+			this.length = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the number of moves recorded
+	 */
+	public long getNumMoves() {
+		return this.numMoves;
+	}
+
+	/**
+	 * @return the number of bytes recorded but not yet written to the stream
+	 */
+	int getNumBuffered() {
+		return this.length;
+	}
+
+	/**
+	 * Writes every move recorded so far to the stream and flushes it.
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.out.write(this.buffer, 0, this.length);
+		this.length = 0;
+		this.out.flush();
+	}
+
+	/**
+	 * Stops recording the game, writes the rest of the journal and closes the
+	 * stream.
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		if (this.state.journal == this) {
+			this.state.journal = null;
+		}
+
+		try {
+			this.flush();
+		} finally {
+			this.closed = true;
+			this.out.close();
+		}
+	}
+}
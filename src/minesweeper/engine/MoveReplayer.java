@@ -0,0 +1,358 @@
+package minesweeper.engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class plays the moves of a journal written by MoveJournal back
+ *         onto a fresh GameState, one at a time or as many as wanted. The
+ *         game is rebuilt exactly, since mines come from the recorded seed or
+ *         layout, so any point of a recorded game can be reached by replaying
+ *         up to it.
+ *
+ *         The journal is read through a fixed-size buffer and decoded by
+ *         hand, and the game has no listeners unless the caller adds them,
+ *         so replaying costs little more than playing the moves.
+ *
+ */
+public final class MoveReplayer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position, limit;
+
+	private final GameState state;
+	private final long startTime;
+
+	private int lastCell;
+	private int[] restored = new int[64];
+	private long time;
+	private long numMoves;
+
+	// The next move and its time, once read ahead, or -1.
+	private int nextMove = -1;
+	private long nextTime;
+	private boolean ended;
+
+	/**
+	 * Reads the header of a journal and creates the game it starts with.
+	 *
+	 * @param in
+	 *            the journal, which is not closed
+	 * @throws IOException
+	 *             if in cannot be read or is not a journal
+	 */
+	public MoveReplayer(InputStream in) throws IOException {
+		this.in = in;
+
+		if (this.readInt() != MoveJournal.MAGIC) {
+			throw new IOException("not a move journal");
+		}
+		int version = this.readByte();
+		if (version != MoveJournal.VERSION) {
+			throw new IOException("unsupported journal version " + version);
+		}
+
+		try {
+			this.state = new GameState(this.readVarint(), this.readVarint(), this.readVarint(), this.readLong());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid journal header", e);
+		}
+		this.startTime = this.readLong();
+	}
+
+	/**
+	 * Replays a journal up to a given point.
+	 *
+	 * @param in
+	 *            the journal, which is not closed
+	 * @param moves
+	 *            the number of moves to replay, or Long.MAX_VALUE for all
+	 * @return the game after those moves
+	 * @throws IOException
+	 *             if in cannot be read or does not hold a valid journal
+	 */
+	public static GameState replay(InputStream in, long moves) throws IOException {
+		MoveReplayer replayer = new MoveReplayer(in);
+		replayer.skip(moves);
+		return replayer.getState();
+	}
+
+	/**
+	 * @return the game being replayed
+	 */
+	public GameState getState() {
+		return this.state;
+	}
+
+	/**
+	 * @return when the journal was started, in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * @return when the last move replayed was played, in milliseconds since
+	 *         the journal was started
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * @return the number of moves replayed
+	 */
+	public long getNumMoves() {
+		return this.numMoves;
+	}
+
+	/**
+	 * @return when the next move was played, in milliseconds since the
+	 *         journal was started, or -1 if there are no more moves
+	 * @throws IOException
+	 *             if the journal cannot be read
+	 */
+	public long peekTime() throws IOException {
+		return this.readAhead() ? this.nextTime : -1;
+	}
+
+	/**
+	 * Replays the next move.
+	 *
+	 * @return false if there are no more moves
+	 * @throws IOException
+	 *             if the journal cannot be read or the move is invalid
+	 */
+	public boolean step() throws IOException {
+		if (!this.readAhead()) {
+			return false;
+		}
+
+		int move = this.nextMove;
+		this.nextMove = -1;
+		this.time = this.nextTime;
+		this.numMoves++;
+
+		GameState state = this.state;
+		switch (move) {
+			case MoveJournal.RESET:				state.reset(this.readLong());
+												break;
+			case MoveJournal.START:				state.placeMines(this.readCell());
+												break;
+			case MoveJournal.START_PARALLEL:	state.placeMines(this.readCell(), ForkJoinPool.commonPool());
+												break;
+			case MoveJournal.LAYOUT:			this.readLayout();
+												break;
+			case MoveJournal.REVEAL:			state.reveal(this.readCell());
+												break;
+			case MoveJournal.CHORD:				state.chord(this.readCell());
+												break;
+			case MoveJournal.FLAG:				state.toggleFlag(this.readCell());
+												break;
+			case MoveJournal.RESTORE:			this.readRestore();
+												break;
+			default:							throw new IOException("unknown move " + move);
+		}
+		return true;
+	}
+
+	/**
+	 * Replays moves until a given number have been replayed or the journal
+	 * ends.
+	 *
+	 * @param moves
+	 *            the most moves to replay
+	 * @return the number of moves replayed
+	 * @throws IOException
+	 *             if the journal cannot be read or a move is invalid
+	 */
+	public long skip(long moves) throws IOException {
+		long count = 0;
+		while (count < moves && this.step()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Replays every move played up to a given time.
+	 *
+	 * @param time
+	 *            the time, in milliseconds since the journal was started
+	 * @return the number of moves replayed
+	 * @throws IOException
+	 *             if the journal cannot be read or a move is invalid
+	 */
+	public long skipTo(long time) throws IOException {
+		long count = 0;
+		while (this.readAhead() && this.nextTime <= time) {
+			this.step();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the next move and its time, unless already read.
+	 *
+	 * @return false if the journal has ended
+	 */
+	private boolean readAhead() throws IOException {
+		if (this.nextMove >= 0) {
+			return true;
+		}
+		if (this.ended || !this.fill()) {
+			this.ended = true;
+			return false;
+		}
+
+		this.nextMove = this.buffer[this.position++] & 0xFF;
+		this.nextTime = this.time + this.readVarintLong();
+		return true;
+	}
+
+	private void readLayout() throws IOException {
+		int safeIndex = this.readCell();
+		BitBoard layout = this.readMines();
+
+		try {
+			this.state.placeMines(safeIndex, layout);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("invalid layout", e);
+		}
+	}
+
+	private BitBoard readMines() throws IOException {
+		GameState state = this.state;
+		BitBoard layout = new BitBoard(state.getRows(), state.getCols());
+
+		long mine = -1;
+		for (int i = 0; i < state.getNumMines(); i++) {
+			mine += this.readVarintLong() + 1;
+			if (mine >= state.getNumCells()) {
+				throw new IOException("mine " + mine + " is off the board");
+			}
+			layout.set((int) mine);
+		}
+		return layout;
+	}
+
+	/**
+	 * Puts back what an undo or redo changed, straight from the journal, so
+	 * that no history is needed to replay it.
+	 */
+	private void readRestore() throws IOException {
+		GameState state = this.state;
+		int flags = this.readByte();
+		boolean started = (flags & 1) != 0;
+
+		if ((flags & 2) != 0) {
+			if (started) {
+				state.placeLayout(this.readMines());
+			} else {
+				state.unplaceMines();
+			}
+		} else if (started != state.isStarted()) {
+			throw new IOException("the journal does not match the game");
+		}
+
+		int count = this.readVarint();
+		for (int i = 0; i < count; i++) {
+			int index = this.readCell();
+			int cell = this.readByte();
+			state.setCell(index, (cell & 1) != 0, (cell & 2) != 0);
+
+			if (i == this.restored.length) {
+				this.restored = Arrays.copyOf(this.restored, 2 * i);
+			}
+			this.restored[i] = index;
+		}
+
+		int zigzag = this.readVarint();
+		int exploded = (zigzag >>> 1) ^ -(zigzag & 1);
+		if (exploded < -1 || exploded >= state.getNumCells()) {
+			throw new IOException("invalid exploded cell " + exploded);
+		}
+		state.setCounters(state.getNumFlagged(), state.getNumSafeRevealed(), exploded);
+		state.fireStateRestored(this.restored, count);
+	}
+
+	private int readCell() throws IOException {
+		int zigzag = this.readVarint();
+		int index = this.lastCell + ((zigzag >>> 1) ^ -(zigzag & 1));
+		if (index < 0 || index >= this.state.getNumCells()) {
+			throw new IOException("cell " + index + " is off the board");
+		}
+		this.lastCell = index;
+		return index;
+	}
+
+	/**
+	 * Makes sure at least one byte is buffered.
+	 *
+	 * @return false if the stream has ended
+	 */
+	private boolean fill() throws IOException {
+		while (this.position == this.limit) {
+			int read = this.in.read(this.buffer, 0, BUFFER_SIZE);
+			if (read < 0) {
+				return false;
+			}
+			this.position = 0;
+			this.limit = read;
+		}
+		return true;
+	}
+
+	private int readByte() throws IOException {
+		if (!this.fill()) {
+			throw new EOFException("the journal ended in the middle of a move");
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	private long readVarintLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = this.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	private int readVarint() throws IOException {
+		long value = this.readVarintLong();
+		if ((value & ~0xFFFFFFFFL) != 0) {
+			throw new IOException("malformed varint");
+		}
+		return (int) value;
+	}
+
+	private int readInt() throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | this.readByte();
+		}
+		return value;
+	}
+
+	private long readLong() throws IOException {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | this.readByte();
+		}
+		return value;
+	}
+}
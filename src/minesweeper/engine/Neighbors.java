@@ -0,0 +1,77 @@
+package minesweeper.engine;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class lists the neighbors of a cell without allocating. On a
+ *         board indexed by row * cols + col, the 8 neighbors of an interior
+ *         cell are always the same fixed offsets from its index, so only
+ *         cells on the border of the board need bounds checks.
+ *
+ */
+public final class Neighbors {
+
+	private final int rows, cols;
+	private final int[] offsets;
+
+	/**
+	 * Constructs the neighbor table for a board of the given dimensions.
+	 *
+	 * @param rows
+	 *            the number of rows in the board
+	 * @param cols
+	 *            the number of columns in the board
+	 */
+	public Neighbors(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.offsets = new int[] { -cols - 1, -cols, -cols + 1, -1, 1, cols - 1, cols, cols + 1 };
+	}
+
+	/**
+	 * Writes the indices of the neighbors of a cell into out, in row-major
+	 * order.
+	 *
+	 * @param index
+	 *            the index of the cell
+	 * @param out
+	 *            the array to fill, which must hold at least 8 indices
+	 * @return the number of neighbors written: 3 in a corner, 5 along an edge
+	 *         and 8 elsewhere
+	 */
+	public int get(int index, int[] out) {
+		int row = index / this.cols;
+		int col = index - row * this.cols;
+
+		// Interior cells use the fixed offsets directly.
+		if (row > 0 && row < this.rows - 1 && col > 0 && col < this.cols - 1) {
+			for (int i = 0; i < 8; i++) {
+				out[i] = index + this.offsets[i];
+			}
+			return 8;
+		}
+
+		int count = 0;
+		for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++) {
+			for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, this.cols - 1); c++) {
+				if (r != row || c != col) {
+					out[count++] = r * this.cols + c;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of neighbors of a cell: 3 in a corner, 5 along an
+	 *         edge and 8 elsewhere
+	 */
+	public int count(int index) {
+		int row = index / this.cols;
+		int col = index - row * this.cols;
+		int height = (row > 0 ? 1 : 0) + 1 + (row < this.rows - 1 ? 1 : 0);
+		int width = (col > 0 ? 1 : 0) + 1 + (col < this.cols - 1 ? 1 : 0);
+		return height * width - 1;
+	}
+}
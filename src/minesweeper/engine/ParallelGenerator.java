@@ -0,0 +1,242 @@
+package minesweeper.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Generates the mine layout of a very large GameState on a
+ *         ForkJoinPool. The board is cut into stripes of whole rows whose
+ *         height depends only on the board's width, never on the number of
+ *         threads, so a seed always produces the same layout.
+ *
+ *         Generation happens in three steps:
+ *         1. the number of mines in each stripe is drawn serially from the
+ *            game's seed, so that the stripes add up to exactly numMines
+ *         2. each stripe places its mines with its own SplittableRandom
+ *         3. each stripe counts the adjacent mines of its own cells, reading
+ *            across stripe seams only after every stripe has been placed
+ *
+ */
+final class ParallelGenerator {
+
+	/**
+	 * Boards with at least this many cells are generated in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 22;
+
+	// Stripes hold roughly this many cells and are a multiple of 64 rows tall,
+	// so every stripe starts on a word boundary of the mine bitboard.
+	private static final int STRIPE_CELLS = 1 << 20;
+
+	private ParallelGenerator() {
+	}
+
+	/**
+	 * Places the mines of the given game and counts the adjacent mines of
+	 * every cell, in parallel. Ensures that the cell at safeIndex and none of
+	 * its adjacent cells are mines.
+	 *
+	 * @param state
+	 *            the game to generate, which must have no mines yet
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @param pool
+	 *            the pool to generate on
+	 */
+	static void generate(final GameState state, final int safeIndex, ForkJoinPool pool) {
+		final int rows = state.getRows();
+		final int cols = state.getCols();
+		final int stripeRows = stripeRows(cols);
+		final int numStripes = (rows + stripeRows - 1) / stripeRows;
+
+		// Splits the mines between the stripes, in stripe order.
+		SplittableRandom root = new SplittableRandom(state.getSeed());
+		final int[] stripeMines = new int[numStripes];
+		final int[] stripeCandidates = new int[numStripes];
+		final SplittableRandom[] stripeRandoms = new SplittableRandom[numStripes];
+
+		long cellsLeft = (long) state.getNumCells() - safeZoneSize(state, safeIndex, 0, rows);
+		long minesLeft = state.getNumMines();
+
+		for (int s = 0; s < numStripes; s++) {
+			int firstRow = s * stripeRows;
+			int lastRow = Math.min(firstRow + stripeRows, rows);
+			int candidates = (lastRow - firstRow) * cols - safeZoneSize(state, safeIndex, firstRow, lastRow);
+
+			int mines = (s == numStripes - 1) ? (int) minesLeft
+					: drawStripeMines(root, cellsLeft, minesLeft, candidates);
+
+			stripeCandidates[s] = candidates;
+			stripeMines[s] = mines;
+			stripeRandoms[s] = root.split();
+
+			cellsLeft -= candidates;
+			minesLeft -= mines;
+		}
+
+		// Places each stripe's mines.
+		List<Callable<Void>> place = new ArrayList<Callable<Void>>(numStripes);
+		for (int s = 0; s < numStripes; s++) {
+			final int stripe = s;
+			place.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int first = stripe * stripeRows * cols;
+					int last = Math.min((stripe + 1) * stripeRows, rows) * cols;
+					placeStripe(state, safeIndex, first, last, stripeCandidates[stripe],
+							stripeMines[stripe], stripeRandoms[stripe]);
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, place);
+
+		// Counts adjacent mines once every stripe's mines are known.
+		List<Callable<Void>> count = new ArrayList<Callable<Void>>(numStripes);
+		for (int s = 0; s < numStripes; s++) {
+			final int stripe = s;
+			count.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int first = stripe * stripeRows * cols;
+					int last = Math.min((stripe + 1) * stripeRows, rows) * cols;
+					countStripe(state, first, last);
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, count);
+	}
+
+	/**
+	 * @return the height of each stripe on a board with the given width
+	 */
+	static int stripeRows(int cols) {
+		int rowsPerStripe = Math.max(1, STRIPE_CELLS / cols);
+		return ((rowsPerStripe + 63) / 64) * 64;
+	}
+
+	/**
+	 * Draws how many of the remaining mines fall in a stripe. The count follows
+	 * a normal approximation of the hypergeometric distribution, clamped so
+	 * that the remaining stripes can always hold the remaining mines.
+	 *
+	 * @param random
+	 *            the serial source of randomness
+	 * @param cellsLeft
+	 *            the number of candidate cells in this and later stripes
+	 * @param minesLeft
+	 *            the number of mines not yet given to a stripe
+	 * @param candidates
+	 *            the number of candidate cells in this stripe
+	 * @return the number of mines in this stripe
+	 */
+	private static int drawStripeMines(SplittableRandom random, long cellsLeft, long minesLeft,
+			int candidates) {
+		double p = (double) minesLeft / cellsLeft;
+		double mean = candidates * p;
+		double variance = mean * (1 - p) * (cellsLeft - candidates) / Math.max(1, cellsLeft - 1);
+		double gaussian = nextGaussian(random);
+		long mines = Math.round(mean + gaussian * Math.sqrt(variance));
+
+		long min = Math.max(0, minesLeft - (cellsLeft - candidates));
+		long max = Math.min(candidates, minesLeft);
+		return (int) Math.max(min, Math.min(max, mines));
+	}
+
+	/**
+	 * @return a standard normal value drawn with the Box-Muller transform
+	 */
+	private static double nextGaussian(SplittableRandom random) {
+		double u = 1.0 - random.nextDouble();
+		double v = random.nextDouble();
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+	}
+
+	/**
+	 * Places mines uniformly among the candidate cells in [first, last).
+	 * Stripes that are more than half mines sample the safe cells instead.
+	 */
+	private static void placeStripe(GameState state, int safeIndex, int first, int last,
+			int candidates, int mines, SplittableRandom random) {
+		BitBoard mine = state.mine;
+		int size = last - first;
+
+		if (mines <= candidates / 2) {
+			for (int placed = 0; placed < mines;) {
+				int index = first + random.nextInt(size);
+
+				if (!mine.get(index) && !state.isInSafeZone(index, safeIndex)) {
+					mine.set(index);
+					placed++;
+				}
+			}
+		} else {
+			for (int i = first; i < last; i++) {
+				mine.set(i, !state.isInSafeZone(i, safeIndex));
+			}
+
+			for (int cleared = candidates - mines; cleared > 0;) {
+				int index = first + random.nextInt(size);
+
+				if (mine.get(index)) {
+					mine.clear(index);
+					cleared--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the adjacent mines of every safe cell in [first, last), 64 cells
+	 * at a time. Stripes start on a word boundary, so each stripe only writes
+	 * to its own words and cells and stripes never race with each other.
+	 */
+	private static void countStripe(GameState state, int first, int last) {
+		BitBoard mine = state.mine;
+		int lastWord = (last == state.getNumCells()) ? mine.getNumWords() : last >>> 6;
+		mine.countNeighbors(state.adjacent, mine, first >>> 6, lastWord);
+	}
+
+	/**
+	 * @return the number of cells of the safe zone around safeIndex that lie
+	 *         in rows [firstRow, lastRow)
+	 */
+	private static int safeZoneSize(GameState state, int safeIndex, int firstRow, int lastRow) {
+		int count = 0;
+		int row = state.row(safeIndex);
+		int col = state.col(safeIndex);
+
+		for (int r = Math.max(row - 1, firstRow); r <= Math.min(row + 1, lastRow - 1); r++) {
+			for (int c = col - 1; c <= col + 1; c++) {
+				if (state.isInBounds(r, c)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Runs every task on the pool and waits for all of them to finish.
+	 *
+	 * @throws IllegalStateException
+	 *             if a task failed
+	 */
+	private static void invokeAll(ForkJoinPool pool, List<Callable<Void>> tasks) {
+		for (Future<Void> future : pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				throw new IllegalStateException("board generation failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package minesweeper.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class keeps a game saved in a memory-mapped file, so that it
+ *         can be resumed after the program closes or crashes. The file holds
+ *         the game's arrays exactly as GameState keeps them: the mine,
+ *         revealed and flagged bitboards, and the adjacent, flagged and
+ *         hidden neighbor counts. Loading is a bulk copy of each array, with
+ *         nothing to parse or recount.
+ *
+ *         The file has two header slots and two data regions. Each save
+ *         writes the region the latest header does not point to, forces it
+ *         to disk, and only then writes the header for it, with a higher
+ *         generation and a checksum. A crash at any point leaves the newest
+ *         complete save readable: a torn header fails its checksum and the
+ *         other slot is used.
+ *
+ *         The save listens to its game and marks which blocks of BLOCK cells
+ *         have changed since each region was written, so a save only copies
+ *         the blocks that changed. The mines and adjacent counts are only
+ *         written when they are placed or the game is reset.
+ *
+ *         Once open, the file is never replaced or truncated: its pages stay
+ *         mapped until they are garbage collected, even after the save is
+ *         closed, and some systems refuse to truncate, replace or delete a
+ *         file while it is mapped. A save that is done with its game is
+ *         given the next game with reuse instead, which writes the new game
+ *         over the old one in the same file.
+ *
+ *         Like the game itself, a save must only be used on one thread.
+ *
+ */
+public final class SaveFile implements GameListener, Closeable {
+
+	private static final int MAGIC = 0x4D534156;
+	private static final int VERSION = 1;
+	private static final int PAGE = 4096;
+	private static final int HEADER_SIZE = 64;
+
+	// The number of cells in each block whose changes are tracked.
+	private static final int BLOCK_SHIFT = 12;
+
+	private final File file;
+	private final FileChannel channel;
+	private GameState state;
+	private final MappedByteBuffer[] headers = new MappedByteBuffer[2];
+	private final Region[] regions = new Region[2];
+
+	// For each region: the blocks changed since it was written, whether its
+	// mines and adjacent counts need writing, and whether the game had
+	// started when they were last written.
+	private final long[][] dirty = new long[2][];
+	private final boolean[] layoutDirty = new boolean[2];
+	private final boolean[] layoutStarted = new boolean[2];
+
+	// The region the newest header points to, and that header's generation.
+	private int current;
+	private long generation;
+
+	private SaveFile(File file, FileChannel channel, GameState state) throws IOException {
+		this.file = file;
+		this.channel = channel;
+
+		for (int r = 0; r < 2; r++) {
+			this.headers[r] = channel.map(FileChannel.MapMode.READ_WRITE, (long) r * PAGE, HEADER_SIZE);
+		}
+		this.layOut(state);
+	}
+
+	/**
+	 * Maps the data regions for a game and starts tracking its changes.
+	 */
+	private void layOut(GameState state) throws IOException {
+		this.state = state;
+
+		long regionSize = Region.size(state);
+		for (int r = 0; r < 2; r++) {
+			this.regions[r] = new Region(this.channel, 2L * PAGE + r * regionSize, state);
+		}
+
+		int numBlocks = ((state.getNumCells() - 1) >>> BLOCK_SHIFT) + 1;
+		this.dirty[0] = new long[(numBlocks + 63) >>> 6];
+		this.dirty[1] = new long[(numBlocks + 63) >>> 6];
+	}
+
+	/**
+	 * Creates a save file for a game, replacing any file already there, and
+	 * saves the game to it. From then on the save follows the game's changes.
+	 * A file that a save in this program has had open should be given the
+	 * game with reuse instead, since it may still be mapped.
+	 *
+	 * @param file
+	 *            the file to save to
+	 * @param state
+	 *            the game to save
+	 * @return the save
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static SaveFile create(File file, GameState state) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			SaveFile save = new SaveFile(file, channel, state);
+			save.layoutDirty[0] = save.layoutDirty[1] = true;
+			save.current = 1;
+			save.save();
+			state.addGameListener(save);
+			return save;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a save file and loads the newest complete save in it into a new
+	 * game. From then on the save follows that game's changes.
+	 *
+	 * @param file
+	 *            the file to load
+	 * @return the save, whose game is getState()
+	 * @throws IOException
+	 *             if the file cannot be read or holds no complete save
+	 */
+	public static SaveFile open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			ByteBuffer[] slots = new ByteBuffer[2];
+			int best = -1;
+			for (int r = 0; r < 2; r++) {
+				slots[r] = ByteBuffer.allocate(HEADER_SIZE);
+				channel.read(slots[r], (long) r * PAGE);
+				slots[r].flip();
+				if (isValid(slots[r]) && (best < 0 || slots[r].getLong(8) > slots[best].getLong(8))) {
+					best = r;
+				}
+			}
+			if (best < 0) {
+				throw new IOException(file + " holds no complete save");
+			}
+
+			ByteBuffer header = slots[best];
+			int region = header.getInt(16);
+			GameState state;
+			try {
+				state = new GameState(header.getInt(20), header.getInt(24), header.getInt(28), header.getLong(32));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("invalid save header", e);
+			}
+			boolean started = header.get(40) != 0;
+			int exploded = header.getInt(41);
+
+			if (region < 0 || region > 1 || channel.size() < 2L * PAGE + 2 * Region.size(state)) {
+				throw new IOException(file + " is truncated");
+			}
+
+			SaveFile save = new SaveFile(file, channel, state);
+			save.regions[region].readAll(state);
+			state.resume(started, exploded, header.getInt(45), header.getInt(49));
+
+			save.current = region;
+			save.generation = header.getLong(8);
+			save.layoutStarted[region] = started;
+			save.layoutDirty[1 - region] = true;
+			state.addGameListener(save);
+			return save;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static boolean isValid(ByteBuffer header) {
+		if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			return false;
+		}
+		return header.getInt(53) == checksum(header);
+	}
+
+	private static int checksum(ByteBuffer header) {
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < 53; i++) {
+			crc.update(header.get(i));
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * @return the game this saves
+	 */
+	public GameState getState() {
+		return this.state;
+	}
+
+	/**
+	 * @return the file this saves to
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Starts saving another game to this file, in place of the one it saved,
+	 * and saves it. The file is written over rather than replaced. Both
+	 * headers are cleared first, since the new game's regions can overlap
+	 * the old game's, so a crash before the first save completes leaves no
+	 * save rather than a damaged one.
+	 *
+	 * @param state
+	 *            the game to save from now on
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void reuse(GameState state) throws IOException {
+		this.detach();
+
+		for (MappedByteBuffer slot : this.headers) {
+			slot.clear();
+			slot.put(new byte[HEADER_SIZE]);
+			slot.force();
+		}
+
+		this.layOut(state);
+		this.layoutDirty[0] = this.layoutDirty[1] = true;
+		this.current = 1;
+		this.save();
+		state.addGameListener(this);
+	}
+
+	/**
+	 * Stops following the game, keeping the file open to be given another
+	 * game with reuse. Whatever was not saved is lost.
+	 */
+	public void detach() {
+		this.state.removeGameListener(this);
+	}
+
+	/**
+	 * Saves the game. Only blocks that changed since the region being
+	 * written was last written are copied.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save() throws IOException {
+		int target = 1 - this.current;
+		Region region = this.regions[target];
+		long[] blocks = this.dirty[target];
+
+		if (this.layoutDirty[target] || this.layoutStarted[target] != this.state.isStarted()) {
+			region.writeAll(this.state);
+			this.layoutDirty[target] = false;
+			this.layoutStarted[target] = this.state.isStarted();
+		} else {
+			for (int w = 0; w < blocks.length; w++) {
+				for (long bits = blocks[w]; bits != 0; bits &= bits - 1) {
+					region.writeBlock(this.state, (w << 6) + Long.numberOfTrailingZeros(bits));
+				}
+			}
+		}
+		Arrays.fill(blocks, 0L);
+		region.force();
+
+		// The header goes last, once the region it points to is on disk.
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putLong(8, this.generation + 1);
+		header.putInt(16, target);
+		header.putInt(20, this.state.getRows());
+		header.putInt(24, this.state.getCols());
+		header.putInt(28, this.state.getNumMines());
+		header.putLong(32, this.state.getSeed());
+		header.put(40, (byte) (this.state.isStarted() ? 1 : 0));
+		header.putInt(41, this.state.getExploded());
+		header.putInt(45, this.state.getNumFlagged());
+		header.putInt(49, this.state.getNumSafeRevealed());
+		header.putInt(53, checksum(header));
+
+		MappedByteBuffer slot = this.headers[target];
+		slot.clear();
+		slot.put(header);
+		slot.force();
+
+		this.generation++;
+		this.current = target;
+	}
+
+	/**
+	 * Stops following the game and closes the file. Whatever was not saved
+	 * is lost.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.detach();
+		this.channel.close();
+	}
+
+	/**
+	 * Marks the blocks holding a cell and its neighbors as changed, since
+	 * revealing or flagging a cell also changes its neighbors' counts.
+	 */
+	private void mark(int index) {
+		int cols = this.state.getCols();
+		this.markRange(index - cols - 1, index - cols + 1);
+		this.markRange(index - 1, index + 1);
+		this.markRange(index + cols - 1, index + cols + 1);
+	}
+
+	private void markRange(int first, int last) {
+		first = Math.max(0, first);
+		last = Math.min(this.state.getNumCells() - 1, last);
+
+		for (int block = first >> BLOCK_SHIFT; first <= last && block <= last >> BLOCK_SHIFT; block++) {
+			this.dirty[0][block >>> 6] |= 1L << block;
+			this.dirty[1][block >>> 6] |= 1L << block;
+		}
+	}
+
+	@Override
+	public void cellsRevealed(int[] cells, int count) {
+		for (int i = 0; i < count; i++) {
+			this.mark(cells[i]);
+		}
+	}
+
+	@Override
+	public void flagToggled(int index, boolean flagged) {
+		this.mark(index);
+	}
+
+	@Override
+	public void gameEnded(boolean won) {
+		// Only the header changes, and it is written on every save.
+	}
+
+	@Override
+	public void gameReset() {
+		this.layoutDirty[0] = this.layoutDirty[1] = true;
+	}
+
+	@Override
+	public void stateRestored(int[] cells, int count) {
+		for (int i = 0; i < count; i++) {
+			this.mark(cells[i]);
+		}
+		// Undoing the first move lets the next one place other mines.
+		if (!this.state.isStarted()) {
+			this.layoutDirty[0] = this.layoutDirty[1] = true;
+		}
+	}
+
+	/**
+	 * One data region: a mapped section for each of the game's arrays, each
+	 * starting on a page.
+	 */
+	private static final class Region {
+
+		private final ByteBuffer mine, revealed, flagged;
+		private final ByteBuffer adjacent, flaggedAdjacent, hiddenAdjacent;
+
+		Region(FileChannel channel, long offset, GameState state) throws IOException {
+			long words = align(8L * state.mine.getNumWords());
+			long cells = align(state.getNumCells());
+
+			this.mine = map(channel, offset, words);
+			this.revealed = map(channel, offset + words, words);
+			this.flagged = map(channel, offset + 2 * words, words);
+			this.adjacent = map(channel, offset + 3 * words, cells);
+			this.flaggedAdjacent = map(channel, offset + 3 * words + cells, cells);
+			this.hiddenAdjacent = map(channel, offset + 3 * words + 2 * cells, cells);
+		}
+
+		static long size(GameState state) {
+			return 3 * align(8L * state.mine.getNumWords()) + 3 * align(state.getNumCells());
+		}
+
+		private static long align(long size) {
+			return (size + PAGE - 1) / PAGE * PAGE;
+		}
+
+		private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+			return channel.map(FileChannel.MapMode.READ_WRITE, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void readAll(GameState state) {
+			longs(this.mine, 0).get(state.mine.words);
+			longs(this.revealed, 0).get(state.revealed.words);
+			longs(this.flagged, 0).get(state.flagged.words);
+			bytes(this.adjacent, 0).get(state.adjacent);
+			bytes(this.flaggedAdjacent, 0).get(state.flaggedAdjacent);
+			bytes(this.hiddenAdjacent, 0).get(state.hiddenAdjacent);
+		}
+
+		void writeAll(GameState state) {
+			longs(this.mine, 0).put(state.mine.words);
+			longs(this.revealed, 0).put(state.revealed.words);
+			longs(this.flagged, 0).put(state.flagged.words);
+			bytes(this.adjacent, 0).put(state.adjacent);
+			bytes(this.flaggedAdjacent, 0).put(state.flaggedAdjacent);
+			bytes(this.hiddenAdjacent, 0).put(state.hiddenAdjacent);
+		}
+
+		/**
+		 * Writes the parts of a block that can change during a game.
+		 */
+		void writeBlock(GameState state, int block) {
+			int first = block << BLOCK_SHIFT;
+			int end = Math.min(state.getNumCells(), first + (1 << BLOCK_SHIFT));
+			int firstWord = first >>> 6;
+			int endWord = ((end - 1) >>> 6) + 1;
+
+			longs(this.revealed, firstWord).put(state.revealed.words, firstWord, endWord - firstWord);
+			longs(this.flagged, firstWord).put(state.flagged.words, firstWord, endWord - firstWord);
+			bytes(this.flaggedAdjacent, first).put(state.flaggedAdjacent, first, end - first);
+			bytes(this.hiddenAdjacent, first).put(state.hiddenAdjacent, first, end - first);
+		}
+
+		void force() {
+			for (ByteBuffer section : new ByteBuffer[] { this.mine, this.revealed, this.flagged, this.adjacent,
+					this.flaggedAdjacent, this.hiddenAdjacent }) {
+				((MappedByteBuffer) section).force();
+			}
+		}
+
+		/**
+		 * @return a view of a section starting at the given word
+		 */
+		private static LongBuffer longs(ByteBuffer section, int word) {
+			ByteBuffer view = section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			view.position(word * 8);
+			return view.asLongBuffer();
+		}
+
+		/**
+		 * @return a view of a section starting at the given cell
+		 */
+		private static ByteBuffer bytes(ByteBuffer section, int cell) {
+			ByteBuffer view = section.duplicate();
+			view.position(cell);
+			return view;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package minesweeper.sim;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds. Each power of two is
+ * split into 16 linear buckets, so every recorded value is known to within
+ * about 6% with no allocation after construction.
+ *
+ * @author blueajo
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[64 * SUB_BUCKETS];
+	private long total;
+	private long max;
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanos
+	 *            the duration, in nanoseconds
+	 */
+	void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		this.counts[bucket(nanos)]++;
+		this.total++;
+		this.max = Math.max(this.max, nanos);
+	}
+
+	/**
+	 * Adds every duration recorded in another histogram to this one.
+	 */
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < this.counts.length; i++) {
+			this.counts[i] += other.counts[i];
+		}
+		this.total += other.total;
+		this.max = Math.max(this.max, other.max);
+	}
+
+	long getTotal() {
+		return this.total;
+	}
+
+	long getMax() {
+		return this.max;
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the upper end of the bucket holding the given percentile, in
+	 *         nanoseconds, or 0 if nothing was recorded
+	 */
+	long percentile(double percentile) {
+		if (this.total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(percentile / 100 * this.total);
+		long seen = 0;
+		for (int i = 0; i < this.counts.length; i++) {
+			seen += this.counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return Math.min(this.max, upperBound(i));
+			}
+		}
+		return this.max;
+	}
+
+	/**
+	 * Values below SUB_BUCKETS get a bucket each; above that, the top
+	 * SUB_BITS bits after the leading one pick the bucket within its power of
+	 * two.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+}
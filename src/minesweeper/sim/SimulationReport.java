@@ -0,0 +1,126 @@
+package minesweeper.sim;
+
+import minesweeper.solver.PatternCache;
+
+/**
+ * The results of a Simulator run.
+ *
+ * @author blueajo
+ *
+ */
+public final class SimulationReport {
+
+	private final String description;
+	private final long games;
+	private final long wins;
+	private final long moves;
+	private final long elapsedNanos;
+	private final LatencyHistogram latency;
+	private final long cacheHits;
+	private final long cacheMisses;
+
+	SimulationReport(String description, long games, long wins, long moves, long elapsedNanos,
+			LatencyHistogram latency, PatternCache cache) {
+		this.description = description;
+		this.games = games;
+		this.wins = wins;
+		this.moves = moves;
+		this.elapsedNanos = elapsedNanos;
+		this.latency = latency;
+		this.cacheHits = (cache == null) ? 0 : cache.getHits();
+		this.cacheMisses = (cache == null) ? 0 : cache.getMisses();
+	}
+
+	public long getGames() {
+		return this.games;
+	}
+
+	public long getWins() {
+		return this.wins;
+	}
+
+	/**
+	 * @return the fraction of games won, between 0 and 1
+	 */
+	public double getWinRate() {
+		return (this.games == 0) ? 0 : (double) this.wins / this.games;
+	}
+
+	/**
+	 * @return the number of games played per second of wall time
+	 */
+	public double getGamesPerSecond() {
+		return (this.elapsedNanos == 0) ? 0 : this.games * 1e9 / this.elapsedNanos;
+	}
+
+	/**
+	 * @return the mean number of moves per game
+	 */
+	public double getMeanMoves() {
+		return (this.games == 0) ? 0 : (double) this.moves / this.games;
+	}
+
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the time to play one game at that percentile, in nanoseconds,
+	 *         to within about 6%
+	 */
+	public long getLatencyPercentile(double percentile) {
+		return this.latency.percentile(percentile);
+	}
+
+	/**
+	 * @return the time taken by the slowest game, in nanoseconds
+	 */
+	public long getMaxLatency() {
+		return this.latency.getMax();
+	}
+
+	/**
+	 * @return the number of windows the solvers found in the pattern cache
+	 */
+	public long getCacheHits() {
+		return this.cacheHits;
+	}
+
+	/**
+	 * @return the number of windows the solvers had to deduce and add to the
+	 *         pattern cache
+	 */
+	public long getCacheMisses() {
+		return this.cacheMisses;
+	}
+
+	/**
+	 * @return the fraction of window lookups that hit the pattern cache,
+	 *         between 0 and 1
+	 */
+	public double getCacheHitRate() {
+		long lookups = this.cacheHits + this.cacheMisses;
+		return (lookups == 0) ? 0 : (double) this.cacheHits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s%n"
+				+ "games      %d%n"
+				+ "win rate   %.4f (%d won)%n"
+				+ "games/s    %.1f%n"
+				+ "mean moves %.2f%n"
+				+ "latency    p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n"
+				+ "cache      %.4f hit rate (%d hits, %d misses)",
+				this.description, this.games, this.getWinRate(), this.wins, this.getGamesPerSecond(),
+				this.getMeanMoves(), micros(this.getLatencyPercentile(50)), micros(this.getLatencyPercentile(90)),
+				micros(this.getLatencyPercentile(99)), micros(this.getLatencyPercentile(99.9)),
+				micros(this.getMaxLatency()), this.getCacheHitRate(), this.cacheHits, this.cacheMisses);
+	}
+
+	private static String micros(long nanos) {
+		return String.format("%.1fus", nanos / 1000.0);
+	}
+}
@@ -0,0 +1,328 @@
+package minesweeper.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import minesweeper.engine.GameState;
+import minesweeper.solver.PatternCache;
+
+/**
+ * This class plays many games headless with a Strategy and reports how well
+ * and how fast it played, for qualifying strategy changes and catching
+ * performance regressions in the engine.
+ *
+ * Game i of a run is played on seed firstSeed + i, and guesses are limited
+ * by a node budget rather than by time, so a run is reproducible whatever
+ * the number of threads or the speed of the machine. Each worker keeps one
+ * GameState and one Player and resets them between games, so the board, the
+ * game, the solver's work queues and its Frontier are only allocated once
+ * per worker. The linear and guess strategies still allocate the
+ * LinearSolver's rows and the ProbabilityEngine's arrays on every pass that
+ * uses them. Workers take seeds in blocks from a shared counter, so a slow
+ * game on one thread does not hold the others back.
+ *
+ * Every solver of a run shares one PatternCache, so a window shape solved in
+ * one game is looked up in every later game on any thread. The cache can be
+ * loaded from a file before the run and saved back after it, so that later
+ * runs start warm. Cached deductions are the same as fresh ones, so the
+ * cache only changes how fast a run is, not its results.
+ *
+ * @author blueajo
+ *
+ */
+public class Simulator {
+
+	// The number of seeds a worker takes at a time.
+	private static final int BLOCK = 256;
+
+	private static final int DEFAULT_CACHE_CAPACITY = 1 << 16;
+
+	private final int rows, cols, numMines;
+	private final Strategy strategy;
+	private int threads;
+	private int cacheCapacity;
+	private File cacheFile;
+
+	/**
+	 * Constructs a simulator for games of the given size, played on every
+	 * available processor.
+	 *
+	 * @param rows
+	 *            the number of rows in each board
+	 * @param cols
+	 *            the number of columns in each board
+	 * @param numMines
+	 *            the number of mines in each board
+	 * @param strategy
+	 *            how to play
+	 * @throws IllegalArgumentException
+	 *             for invalid numbers of mines, rows, and columns
+	 */
+	public Simulator(int rows, int cols, int numMines, Strategy strategy) {
+		// Checks the size the same way every game will.
+		new GameState(rows, cols, numMines, 0);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.numMines = numMines;
+		this.strategy = strategy;
+		this.threads = Runtime.getRuntime().availableProcessors();
+		this.cacheCapacity = DEFAULT_CACHE_CAPACITY;
+	}
+
+	/**
+	 * Constructs a simulator for one of the window's difficulties.
+	 *
+	 * @param difficulty
+	 *            EASY, MEDIUM or HARD
+	 * @param strategy
+	 *            how to play
+	 * @return the simulator
+	 * @throws IllegalArgumentException
+	 *             if difficulty is not EASY, MEDIUM, or HARD
+	 */
+	public static Simulator forDifficulty(String difficulty, Strategy strategy) {
+		// The same presets as MinesweeperWindow.newState.
+		switch (difficulty) {
+			case "EASY":	return new Simulator(9, 9, 10, strategy);
+			case "MEDIUM":	return new Simulator(16, 16, 40, strategy);
+			case "HARD":	return new Simulator(30, 16, 99, strategy);
+			default:		throw new IllegalArgumentException("difficulty must be EASY, MEDIUM, or HARD");
+		}
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * @param threads
+	 *            the number of games to play at once
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		this.threads = threads;
+	}
+
+	public int getPatternCacheCapacity() {
+		return this.cacheCapacity;
+	}
+
+	/**
+	 * @param cacheCapacity
+	 *            the most windows the run's pattern cache keeps, or 0 to run
+	 *            without one
+	 */
+	public void setPatternCacheCapacity(int cacheCapacity) {
+		if (cacheCapacity < 0) {
+			throw new IllegalArgumentException("cacheCapacity must not be negative");
+		}
+		this.cacheCapacity = cacheCapacity;
+	}
+
+	public File getPatternCacheFile() {
+		return this.cacheFile;
+	}
+
+	/**
+	 * @param cacheFile
+	 *            the file the pattern cache is loaded from, if it exists, before
+	 *            each run and saved to after it, or null to start every run
+	 *            cold
+	 */
+	public void setPatternCacheFile(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Plays games on seeds firstSeed to firstSeed + numGames - 1.
+	 *
+	 * @param firstSeed
+	 *            the seed of the first game
+	 * @param numGames
+	 *            the number of games to play
+	 * @return the results
+	 * @throws UncheckedIOException
+	 *             if the pattern cache file cannot be read or written
+	 */
+	public SimulationReport run(final long firstSeed, final long numGames) {
+		final PatternCache cache = this.loadCache();
+		final AtomicLong next = new AtomicLong(0);
+		List<Callable<Worker>> tasks = new ArrayList<Callable<Worker>>(this.threads);
+
+		for (int t = 0; t < this.threads; t++) {
+			tasks.add(new Callable<Worker>() {
+				@Override
+				public Worker call() {
+					Worker worker = new Worker(cache);
+					long start;
+					while ((start = next.getAndAdd(BLOCK)) < numGames) {
+						long end = Math.min(numGames, start + BLOCK);
+						for (long i = start; i < end; i++) {
+							worker.play(firstSeed + i);
+						}
+					}
+					return worker;
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+		long begin = System.nanoTime();
+		long wins = 0, moves = 0, games = 0;
+		LatencyHistogram latency = new LatencyHistogram();
+
+		try {
+			for (Future<Worker> future : pool.invokeAll(tasks)) {
+				Worker worker = future.get();
+				games += worker.games;
+				wins += worker.wins;
+				moves += worker.moves;
+				latency.add(worker.latency);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("simulation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("simulation failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - begin;
+		this.saveCache(cache);
+
+		String description = String.format("%dx%d with %d mines, %s strategy, seeds %d to %d, %d threads",
+				this.rows, this.cols, this.numMines, this.strategy.getName(), firstSeed, firstSeed + numGames - 1,
+				this.threads);
+		return new SimulationReport(description, games, wins, moves, elapsed, latency, cache);
+	}
+
+	/**
+	 * @return a new pattern cache, warmed from the cache file if there is one,
+	 *         or null if the run has no cache
+	 */
+	private PatternCache loadCache() {
+		if (this.cacheCapacity == 0) {
+			return null;
+		}
+
+		PatternCache cache = new PatternCache(this.cacheCapacity);
+		if (this.cacheFile != null) {
+			try {
+				cache.load(this.cacheFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Saves a run's pattern cache to the cache file, if there are both.
+	 */
+	private void saveCache(PatternCache cache) {
+		if (cache == null || this.cacheFile == null) {
+			return;
+		}
+
+		try {
+			cache.save(this.cacheFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The game, player and tallies of one thread.
+	 */
+	private final class Worker {
+
+		private final PatternCache cache;
+		private GameState state;
+		private Strategy.Player player;
+
+		long games, wins, moves;
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		Worker(PatternCache cache) {
+			this.cache = cache;
+		}
+
+		void play(long seed) {
+			long start = System.nanoTime();
+
+			if (this.state == null) {
+				this.state = new GameState(Simulator.this.rows, Simulator.this.cols, Simulator.this.numMines, seed);
+				this.player = Simulator.this.strategy.newPlayer(this.state, this.cache);
+			} else {
+				this.state.reset(seed);
+			}
+
+			this.moves += this.player.play();
+			this.latency.record(System.nanoTime() - start);
+			this.games++;
+			if (this.state.isWon()) {
+				this.wins++;
+			}
+		}
+	}
+
+	/**
+	 * Runs a simulation from the command line and prints its report.
+	 *
+	 * Usage: Simulator difficulty [strategy [firstSeed [games [threads
+	 * [cacheFile]]]]] where difficulty is EASY, MEDIUM, HARD or
+	 * ROWSxCOLS/MINES, strategy is local, linear or guess, and cacheFile is
+	 * where the pattern cache is kept between runs.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("usage: Simulator EASY|MEDIUM|HARD|ROWSxCOLS/MINES "
+					+ "[local|linear|guess] [firstSeed] [games] [threads] [cacheFile]");
+			System.exit(2);
+		}
+
+		Strategy strategy = Strategy.GUESS;
+		if (args.length > 1) {
+			switch (args[1]) {
+				case "local":	strategy = Strategy.LOCAL;
+								break;
+				case "linear":	strategy = Strategy.LINEAR;
+								break;
+				case "guess":	strategy = Strategy.GUESS;
+								break;
+				default:		throw new IllegalArgumentException("strategy must be local, linear, or guess");
+			}
+		}
+		long firstSeed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+		long games = (args.length > 3) ? Long.parseLong(args[3]) : 100000;
+
+		Simulator simulator;
+		String size = args[0];
+		if (size.matches("\\d+x\\d+/\\d+")) {
+			String[] parts = size.split("[x/]");
+			simulator = new Simulator(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+					Integer.parseInt(parts[2]), strategy);
+		} else {
+			simulator = forDifficulty(size, strategy);
+		}
+		if (args.length > 4) {
+			simulator.setThreads(Integer.parseInt(args[4]));
+		}
+		if (args.length > 5) {
+			simulator.setPatternCacheFile(new File(args[5]));
+		}
+
+		System.out.println(simulator.run(firstSeed, games));
+	}
+}
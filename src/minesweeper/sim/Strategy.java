@@ -0,0 +1,112 @@
+package minesweeper.sim;
+
+import minesweeper.engine.GameState;
+import minesweeper.solver.PatternCache;
+import minesweeper.solver.Solver;
+
+/**
+ * A way of playing games headless. Each simulation worker creates one Player
+ * for its GameState and keeps it for every game it plays, so a strategy can
+ * keep its buffers from one game to the next.
+ *
+ * @author blueajo
+ *
+ */
+public interface Strategy {
+
+	/**
+	 * Only the solver's certain deductions, with no guessing. Games it cannot
+	 * finish count as losses.
+	 */
+	Strategy LOCAL = new SolverStrategy("local", false, false);
+
+	/**
+	 * Certain deductions including the linear solver, with no guessing.
+	 */
+	Strategy LINEAR = new SolverStrategy("linear", true, false);
+
+	/**
+	 * Certain deductions, then the safest guess whenever nothing is certain.
+	 */
+	Strategy GUESS = new SolverStrategy("guess", true, true);
+
+	/**
+	 * @return the name of the strategy, for reports
+	 */
+	String getName();
+
+	/**
+	 * Creates a player for a worker's game.
+	 *
+	 * @param state
+	 *            the game the player plays, which is reset before every game
+	 * @param cache
+	 *            the pattern cache shared by every player of the run, or null
+	 * @return the player
+	 */
+	Player newPlayer(GameState state, PatternCache cache);
+
+	/**
+	 * Plays games on one GameState.
+	 */
+	interface Player {
+
+		/**
+		 * Plays the current game, which has just been reset, as far as the
+		 * strategy can.
+		 *
+		 * @return the number of moves made
+		 */
+		int play();
+	}
+
+	/**
+	 * The strategies built on the Solver. Guesses are given a node budget
+	 * instead of a time budget, so they do not depend on how fast the
+	 * machine is or how busy its other threads are.
+	 */
+	final class SolverStrategy implements Strategy {
+
+		// The most search nodes the probability engine spends on a component.
+		private static final long NODE_BUDGET = 1 << 22;
+
+		private final String name;
+		private final boolean linear;
+		private final boolean guess;
+
+		SolverStrategy(String name, boolean linear, boolean guess) {
+			this.name = name;
+			this.linear = linear;
+			this.guess = guess;
+		}
+
+		@Override
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public Player newPlayer(GameState state, PatternCache cache) {
+			final Solver solver = new Solver(state);
+			solver.setLinearMode(this.linear);
+			solver.setPatternCache(cache);
+
+			if (this.guess) {
+				solver.getProbabilityEngine().setTimeBudgetMillis(0);
+				solver.getProbabilityEngine().setNodeBudget(NODE_BUDGET);
+				return new Player() {
+					@Override
+					public int play() {
+						return solver.play();
+					}
+				};
+			}
+			return new Player() {
+				@Override
+				public int play() {
+					return solver.solve();
+				}
+			};
+		}
+	}
+}
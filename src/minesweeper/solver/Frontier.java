@@ -0,0 +1,214 @@
+package minesweeper.solver;
+
+import java.util.Arrays;
+
+import minesweeper.engine.GameState;
+import minesweeper.engine.Neighbors;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class collects part of the frontier of a game as constraints:
+ *         each revealed number with unknown (hidden and unflagged) neighbors
+ *         says how many of those neighbors are mines. Constraints are grouped
+ *         into independent components, two numbers being in the same
+ *         component when a chain of shared unknown cells links them.
+ *
+ *         Components are collected by a breadth-first search, so the cells
+ *         and constraints of each component have consecutive ids, numbered
+ *         in the order they were met.
+ *
+ *         A Frontier is meant to be cleared and reused. The id of each board
+ *         index is kept in a table the size of the board that is never
+ *         cleared: an entry only counts if the id it holds is in use and maps
+ *         back to the same index, so clearing costs nothing.
+ *
+ */
+final class Frontier {
+
+	private final GameState state;
+	private final Neighbors neighbors;
+	private final int[] numberBuffer = new int[8];
+	private final int[] cellBuffer = new int[8];
+
+	// Frontier cells by id, and the id of each board index.
+	private int[] cells = new int[64];
+	private int numCells;
+	private final int[] cellIds;
+
+	// Constraints by id: the number's board index, its unknown neighbors as
+	// cell ids, and how many of them are mines.
+	private int[] numbers = new int[64];
+	private int[][] vars = new int[64][];
+	private int[] targets = new int[64];
+	private int numConstraints;
+	private final int[] constraintIds;
+
+	// The first cell and constraint id of each component, with one extra
+	// entry closing the last component.
+	private int[] cellStarts = new int[] { 0, 0 };
+	private int[] constraintStarts = new int[] { 0, 0 };
+	private int numComponents;
+
+	Frontier(GameState state) {
+		this.state = state;
+		this.neighbors = state.getNeighbors();
+		this.cellIds = new int[state.getNumCells()];
+		this.constraintIds = new int[state.getNumCells()];
+	}
+
+	/**
+	 * Forgets every component collected so far.
+	 */
+	void clear() {
+		this.numCells = 0;
+		this.numConstraints = 0;
+		this.numComponents = 0;
+	}
+
+	/**
+	 * Collects the component containing the given cell, if it is a revealed
+	 * number with unknown neighbors that is not already collected.
+	 */
+	void add(int index) {
+		if (!this.isConstraint(index) || this.isCollected(index)) {
+			return;
+		}
+
+		int first = this.numConstraints;
+		this.discover(index);
+
+		// The constraint list doubles as the search queue.
+		for (int c = first; c < this.numConstraints; c++) {
+			int number = this.numbers[c];
+			int count = this.neighbors.get(number, this.numberBuffer);
+			int[] ids = new int[this.unknownNeighbors(number)];
+			int v = 0;
+
+			for (int i = 0; i < count; i++) {
+				int cell = this.numberBuffer[i];
+				if (this.state.isRevealed(cell) || this.state.isFlagged(cell)) {
+					continue;
+				}
+
+				int id = this.cellId(cell);
+				if (id == -1) {
+					id = this.newCell(cell);
+
+					int cellCount = this.neighbors.get(cell, this.cellBuffer);
+					for (int j = 0; j < cellCount; j++) {
+						int other = this.cellBuffer[j];
+						if (this.isConstraint(other) && !this.isCollected(other)) {
+							this.discover(other);
+						}
+					}
+				}
+				ids[v++] = id;
+			}
+			this.vars[c] = ids;
+		}
+
+		this.numComponents++;
+		if (this.numComponents + 1 > this.cellStarts.length) {
+			this.cellStarts = Arrays.copyOf(this.cellStarts, 2 * this.cellStarts.length);
+			this.constraintStarts = Arrays.copyOf(this.constraintStarts, 2 * this.constraintStarts.length);
+		}
+		this.cellStarts[this.numComponents] = this.numCells;
+		this.constraintStarts[this.numComponents] = this.numConstraints;
+	}
+
+	int getNumCells() {
+		return this.numCells;
+	}
+
+	/**
+	 * @return the board index of the frontier cell with the given id
+	 */
+	int getCell(int id) {
+		return this.cells[id];
+	}
+
+	int getNumComponents() {
+		return this.numComponents;
+	}
+
+	int getFirstCell(int component) {
+		return this.cellStarts[component];
+	}
+
+	int getEndCell(int component) {
+		return this.cellStarts[component + 1];
+	}
+
+	int getFirstConstraint(int component) {
+		return this.constraintStarts[component];
+	}
+
+	int getEndConstraint(int component) {
+		return this.constraintStarts[component + 1];
+	}
+
+	/**
+	 * @return the cell ids of the unknown neighbors of a constraint
+	 */
+	int[] getVars(int constraint) {
+		return this.vars[constraint];
+	}
+
+	/**
+	 * @return the number of mines among the unknown neighbors of a constraint
+	 */
+	int getTarget(int constraint) {
+		return this.targets[constraint];
+	}
+
+	private boolean isConstraint(int index) {
+		return this.state.isRevealed(index) && this.unknownNeighbors(index) > 0;
+	}
+
+	private int unknownNeighbors(int index) {
+		return this.state.numAdjacentHidden(index) - this.state.numAdjacentFlagged(index);
+	}
+
+	/**
+	 * @return the id of a frontier cell, or -1 if the cell has no id yet
+	 */
+	private int cellId(int index) {
+		int id = this.cellIds[index];
+		return (id < this.numCells && this.cells[id] == index) ? id : -1;
+	}
+
+	/**
+	 * @return true if a number has already been added to the constraint list
+	 */
+	private boolean isCollected(int number) {
+		int id = this.constraintIds[number];
+		return id < this.numConstraints && this.numbers[id] == number;
+	}
+
+	/**
+	 * Adds a number to the end of the constraint list, to be expanded later.
+	 */
+	private void discover(int number) {
+		if (this.numConstraints == this.numbers.length) {
+			int length = 2 * this.numbers.length;
+			this.numbers = Arrays.copyOf(this.numbers, length);
+			this.vars = Arrays.copyOf(this.vars, length);
+			this.targets = Arrays.copyOf(this.targets, length);
+		}
+		this.constraintIds[number] = this.numConstraints;
+		this.numbers[this.numConstraints] = number;
+		this.targets[this.numConstraints] = this.state.getAdjacent(number) - this.state.numAdjacentFlagged(number);
+		this.numConstraints++;
+	}
+
+	private int newCell(int index) {
+		if (this.numCells == this.cells.length) {
+			this.cells = Arrays.copyOf(this.cells, 2 * this.cells.length);
+		}
+		this.cellIds[index] = this.numCells;
+		this.cells[this.numCells] = index;
+		return this.numCells++;
+	}
+}
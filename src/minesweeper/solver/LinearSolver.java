@@ -0,0 +1,321 @@
+package minesweeper.solver;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class finds the cells of a frontier that are certainly safe or
+ *         certainly mines by treating its constraints as a system of linear
+ *         equations. Each number gives one row, sum of its unknown neighbors
+ *         = its remaining mines, and each component is reduced on its own to
+ *         reduced row echelon form with Gaussian elimination.
+ *
+ *         Every variable is 0 or 1, so each reduced row bounds the sum of its
+ *         terms; a variable whose other value would put the sum out of reach
+ *         is decided. This catches deductions that chain across many numbers,
+ *         like long 1-2-1 patterns, that no pair of numbers shows alone.
+ *
+ *         Rows are sparse, and elimination subtracts whole rows, so their
+ *         coefficients are integers rather than bits. They are kept as longs,
+ *         and a component whose coefficients would grow past even that range
+ *         is left undecided rather than solved wrongly. Columns are numbered
+ *         in the order the frontier search met them, which keeps the rows of
+ *         a chain banded and the fill-in small.
+ *
+ */
+final class LinearSolver {
+
+	static final byte UNKNOWN = 0;
+	static final byte SAFE = 1;
+	static final byte MINE = 2;
+
+	// Cells decided by the last call to solve, as board indices.
+	private int[] safe = new int[16];
+	private int numSafe;
+	private int[] mines = new int[16];
+	private int numMines;
+
+	/**
+	 * Reduces every component of the frontier and records the cells it
+	 * decides.
+	 *
+	 * @param frontier
+	 *            the constraints to solve
+	 * @return true if any cell was decided
+	 */
+	boolean solve(Frontier frontier) {
+		this.numSafe = 0;
+		this.numMines = 0;
+
+		for (int k = 0; k < frontier.getNumComponents(); k++) {
+			this.solveComponent(frontier, k);
+		}
+		return this.numSafe > 0 || this.numMines > 0;
+	}
+
+	int getNumSafe() {
+		return this.numSafe;
+	}
+
+	/**
+	 * @return the board index of the i-th cell proven safe
+	 */
+	int getSafe(int i) {
+		return this.safe[i];
+	}
+
+	int getNumMines() {
+		return this.numMines;
+	}
+
+	/**
+	 * @return the board index of the i-th cell proven to be a mine
+	 */
+	int getMine(int i) {
+		return this.mines[i];
+	}
+
+	private void solveComponent(Frontier frontier, int component) {
+		int firstCell = frontier.getFirstCell(component);
+		int n = frontier.getEndCell(component) - firstCell;
+
+		byte[] decided;
+		try {
+			decided = reduce(frontier, component, firstCell, n);
+		} catch (ArithmeticException e) {
+			// The coefficients overflowed, so the component decides nothing.
+			return;
+		}
+
+		for (int v = 0; v < n; v++) {
+			if (decided[v] == SAFE) {
+				this.addSafe(frontier.getCell(firstCell + v));
+			} else if (decided[v] == MINE) {
+				this.addMine(frontier.getCell(firstCell + v));
+			}
+		}
+	}
+
+	/**
+	 * Reduces a component's rows and decides what they can.
+	 *
+	 * @return the decision for each column of the component
+	 * @throws ArithmeticException
+	 *             if a coefficient overflows
+	 */
+	private static byte[] reduce(Frontier frontier, int component, int firstCell, int n) {
+		// Forward elimination: each row is reduced by the pivots so far and
+		// becomes the pivot of its first remaining column.
+		Row[] pivots = new Row[n];
+		for (int c = frontier.getFirstConstraint(component); c < frontier.getEndConstraint(component); c++) {
+			Row row = Row.of(frontier.getVars(c), firstCell, frontier.getTarget(c));
+			row = row.reduce(pivots, 0);
+			if (row.length > 0) {
+				pivots[row.cols[0]] = row;
+			}
+		}
+
+		// Back substitution, last pivot first, so every pivot row is reduced
+		// by pivots that are already in reduced form.
+		for (int col = n - 1; col >= 0; col--) {
+			if (pivots[col] != null) {
+				pivots[col] = pivots[col].reduce(pivots, 1);
+			}
+		}
+
+		byte[] decided = new byte[n];
+		for (int col = 0; col < n; col++) {
+			if (pivots[col] != null) {
+				pivots[col].decide(decided);
+			}
+		}
+		return decided;
+	}
+
+	private void addSafe(int index) {
+		if (this.numSafe == this.safe.length) {
+			this.safe = Arrays.copyOf(this.safe, 2 * this.safe.length);
+		}
+		this.safe[this.numSafe++] = index;
+	}
+
+	private void addMine(int index) {
+		if (this.numMines == this.mines.length) {
+			this.mines = Arrays.copyOf(this.mines, 2 * this.mines.length);
+		}
+		this.mines[this.numMines++] = index;
+	}
+
+	/**
+	 * One sparse equation: the sum of coefs[i] * x[cols[i]] is rhs. Columns
+	 * are sorted and coefficients are nonzero, divided by their common
+	 * divisor, with the first one positive. Arithmetic on them throws
+	 * ArithmeticException on overflow.
+	 */
+	private static final class Row {
+
+		final int[] cols;
+		final long[] coefs;
+		final int length;
+		final long rhs;
+
+		private Row(int[] cols, long[] coefs, int length, long rhs) {
+			this.cols = cols;
+			this.coefs = coefs;
+			this.length = length;
+			this.rhs = rhs;
+		}
+
+		/**
+		 * Builds the row of a constraint over the columns of its component.
+		 */
+		static Row of(int[] vars, int firstCell, int target) {
+			int[] cols = new int[vars.length];
+			for (int i = 0; i < vars.length; i++) {
+				cols[i] = vars[i] - firstCell;
+			}
+			Arrays.sort(cols);
+
+			long[] coefs = new long[vars.length];
+			Arrays.fill(coefs, 1);
+			return new Row(cols, coefs, vars.length, target);
+		}
+
+		/**
+		 * Eliminates, from position start on, every column that has a pivot.
+		 * Each pivot's columns all come after its own, so the columns before
+		 * the one being eliminated never change.
+		 *
+		 * @param pivots
+		 *            the pivot row of each column, or null
+		 * @param start
+		 *            the first position to eliminate
+		 * @return the reduced row
+		 */
+		Row reduce(Row[] pivots, int start) {
+			Row row = this;
+			int i = start;
+
+			while (i < row.length) {
+				Row pivot = pivots[row.cols[i]];
+				if (pivot == null || pivot == this) {
+					i++;
+				} else {
+					row = row.eliminate(pivot, i);
+				}
+			}
+			return row;
+		}
+
+		/**
+		 * Subtracts a multiple of a pivot row to cancel the column at
+		 * position i, which is the pivot's first column.
+		 */
+		private Row eliminate(Row pivot, int i) {
+			long a = pivot.coefs[0];
+			long b = this.coefs[i];
+
+			int[] cols = new int[this.length + pivot.length];
+			long[] coefs = new long[this.length + pivot.length];
+			int length = 0;
+			int p = 0, q = 0;
+
+			while (p < this.length || q < pivot.length) {
+				int colP = (p < this.length) ? this.cols[p] : Integer.MAX_VALUE;
+				int colQ = (q < pivot.length) ? pivot.cols[q] : Integer.MAX_VALUE;
+				int col = Math.min(colP, colQ);
+
+				long coef = 0;
+				if (colP == col) {
+					coef = Math.multiplyExact(a, this.coefs[p++]);
+				}
+				if (colQ == col) {
+					coef = Math.subtractExact(coef, Math.multiplyExact(b, pivot.coefs[q++]));
+				}
+				if (coef != 0) {
+					cols[length] = col;
+					coefs[length++] = coef;
+				}
+			}
+
+			long rhs = Math.subtractExact(Math.multiplyExact(a, this.rhs), Math.multiplyExact(b, pivot.rhs));
+			return normalize(cols, coefs, length, rhs);
+		}
+
+		private static Row normalize(int[] cols, long[] coefs, int length, long rhs) {
+			long divisor = abs(rhs);
+			for (int i = 0; i < length; i++) {
+				divisor = gcd(divisor, abs(coefs[i]));
+			}
+			if (divisor == 0) {
+				divisor = 1;
+			}
+			if (length > 0 && coefs[0] < 0) {
+				divisor = -divisor;
+			}
+
+			for (int i = 0; i < length; i++) {
+				coefs[i] /= divisor;
+			}
+			return new Row(cols, coefs, length, rhs / divisor);
+		}
+
+		/**
+		 * @throws ArithmeticException
+		 *             for Long.MIN_VALUE, which has no positive long
+		 */
+		private static long abs(long value) {
+			return (value < 0) ? Math.negateExact(value) : value;
+		}
+
+		private static long gcd(long a, long b) {
+			while (b != 0) {
+				long t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+
+		/**
+		 * Decides every variable of this row whose other value would put the
+		 * row's sum out of reach, since each variable is 0 or 1.
+		 *
+		 * @param decided
+		 *            the decision for each column, updated in place
+		 */
+		void decide(byte[] decided) {
+			long min = 0, max = 0;
+			for (int i = 0; i < this.length; i++) {
+				if (this.coefs[i] < 0) {
+					min = Math.addExact(min, this.coefs[i]);
+				} else {
+					max = Math.addExact(max, this.coefs[i]);
+				}
+			}
+
+			for (int i = 0; i < this.length; i++) {
+				long coef = this.coefs[i];
+				boolean cannotBeOne;
+				boolean cannotBeZero;
+
+				if (coef > 0) {
+					cannotBeOne = min + coef > this.rhs;
+					cannotBeZero = max - coef < this.rhs;
+				} else {
+					cannotBeOne = max + coef < this.rhs;
+					cannotBeZero = min - coef > this.rhs;
+				}
+
+				// Both at once only happens when a flag is wrong.
+				if (cannotBeOne && !cannotBeZero) {
+					decided[this.cols[i]] = SAFE;
+				} else if (cannotBeZero && !cannotBeOne) {
+					decided[this.cols[i]] = MINE;
+				}
+			}
+		}
+	}
+}
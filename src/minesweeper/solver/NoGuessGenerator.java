@@ -0,0 +1,285 @@
+package minesweeper.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import minesweeper.engine.BitBoard;
+import minesweeper.engine.GameState;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class places mines so that a game can be won from the first
+ *         click without ever guessing. Candidate layouts are played from the
+ *         first click by a Solver in linear mode, which only makes moves it
+ *         is certain of, and a layout is accepted once the solver wins it.
+ *
+ *         Several attempts run at once on a ForkJoinPool, each drawing its
+ *         own layouts, and the first to find one cancels the rest. When the
+ *         solver gets stuck, an attempt first tries to repair the layout in
+ *         place: it moves one unsolved mine next to the revealed area to a
+ *         cell far from it, and plays again. Only after several repairs fail
+ *         does it draw a whole new layout.
+ *
+ *         Generation stops at a deadline. If no layout is found in time, the
+ *         layout the solver got furthest into is used, so the first click
+ *         never waits longer than the budget.
+ *
+ */
+public class NoGuessGenerator {
+
+	private static final long DEFAULT_BUDGET_MILLIS = 50;
+	private static final int DEFAULT_MAX_REPAIRS = 16;
+
+	private long budgetMillis;
+	private int parallelism;
+	private int maxRepairs;
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a generator with a 50 ms budget, running one attempt per
+	 * available processor on the common ForkJoinPool.
+	 */
+	public NoGuessGenerator() {
+		this.budgetMillis = DEFAULT_BUDGET_MILLIS;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+		this.maxRepairs = DEFAULT_MAX_REPAIRS;
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * @param budgetMillis
+	 *            how long generate may take
+	 */
+	public void setBudgetMillis(long budgetMillis) {
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of attempts to run at once
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param maxRepairs
+	 *            how many times a stuck layout is repaired before a new one is
+	 *            drawn, or 0 to always draw a new one
+	 */
+	public void setMaxRepairs(int maxRepairs) {
+		this.maxRepairs = maxRepairs;
+	}
+
+	/**
+	 * @param pool
+	 *            the pool to run attempts on
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Places the mines of a game that has not started. Layouts are drawn from
+	 * the game's seed, though which attempt wins, and so the layout, can
+	 * differ between runs when more than one attempt runs at once.
+	 *
+	 * @param state
+	 *            the game to place mines in
+	 * @param safeIndex
+	 *            the index of the first cell the user reveals
+	 * @return true if the game can be won without guessing, false if the
+	 *         budget ran out first
+	 * @throws IllegalStateException
+	 *             if the mines have already been placed
+	 */
+	public boolean generate(GameState state, int safeIndex) {
+		if (state.isStarted()) {
+			throw new IllegalStateException("mines have already been placed");
+		}
+
+		Run run = new Run(state, safeIndex, System.nanoTime() + this.budgetMillis * 1000000L);
+		SplittableRandom root = new SplittableRandom(state.getSeed());
+
+		List<Callable<BitBoard>> attempts = new ArrayList<Callable<BitBoard>>(this.parallelism);
+		for (int i = 0; i < this.parallelism; i++) {
+			attempts.add(run.new Attempt(root.split()));
+		}
+
+		try {
+			BitBoard layout = this.pool.invokeAny(attempts);
+			state.placeMines(safeIndex, layout);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (!(e.getCause() instanceof TimeoutException)) {
+				throw new IllegalStateException("generation failed", e.getCause());
+			}
+		} finally {
+			run.done.set(true);
+		}
+
+		BitBoard best = run.getBest();
+		if (best != null) {
+			state.placeMines(safeIndex, best);
+		} else {
+			state.placeMines(safeIndex);
+		}
+		return false;
+	}
+
+	/**
+	 * The shared state of one call to generate.
+	 */
+	private final class Run {
+
+		private final GameState target;
+		private final int safeIndex;
+		private final long deadline;
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		// The layout the solver got furthest into, by safe cells revealed.
+		private BitBoard best;
+		private int bestRevealed = -1;
+
+		Run(GameState target, int safeIndex, long deadline) {
+			this.target = target;
+			this.safeIndex = safeIndex;
+			this.deadline = deadline;
+		}
+
+		boolean isOver() {
+			return this.done.get() || System.nanoTime() > this.deadline;
+		}
+
+		synchronized BitBoard getBest() {
+			return this.best;
+		}
+
+		synchronized void offer(GameState game) {
+			if (game.getNumSafeRevealed() > this.bestRevealed) {
+				if (this.best == null) {
+					this.best = new BitBoard(game.getRows(), game.getCols());
+				}
+				game.copyMines(this.best);
+				this.bestRevealed = game.getNumSafeRevealed();
+			}
+		}
+
+		/**
+		 * One thread's search: draws layouts, repairs them, and plays them
+		 * on a scratch game of its own until one is won or the run is over.
+		 */
+		final class Attempt implements Callable<BitBoard> {
+
+			private final SplittableRandom random;
+			private GameState game;
+			private Solver solver;
+			private BitBoard layout;
+			private int[] frontierMines;
+			private int[] interior;
+
+			Attempt(SplittableRandom random) {
+				this.random = random;
+			}
+
+			@Override
+			public BitBoard call() throws TimeoutException {
+				GameState target = Run.this.target;
+				this.game = new GameState(target.getRows(), target.getCols(), target.getNumMines(),
+						this.random.nextLong());
+				this.solver = new Solver(this.game);
+				this.solver.setLinearMode(true);
+				this.layout = new BitBoard(target.getRows(), target.getCols());
+				this.frontierMines = new int[target.getNumMines()];
+				this.interior = new int[target.getNumCells()];
+
+				boolean first = true;
+				while (!Run.this.isOver()) {
+					if (!first) {
+						this.game.reset(this.random.nextLong());
+					}
+					first = false;
+					this.game.placeMines(Run.this.safeIndex);
+
+					for (int repairs = 0; !Run.this.isOver(); repairs++) {
+						if (this.play()) {
+							Run.this.done.set(true);
+							this.game.copyMines(this.layout);
+							return this.layout;
+						}
+						Run.this.offer(this.game);
+
+						if (repairs == NoGuessGenerator.this.maxRepairs || !this.repair()) {
+							break;
+						}
+					}
+				}
+				throw new TimeoutException("no layout without guessing was found in time");
+			}
+
+			/**
+			 * Plays the scratch game from the first click as far as the
+			 * solver can go.
+			 *
+			 * @return true if the solver won
+			 */
+			private boolean play() {
+				this.game.reveal(Run.this.safeIndex);
+				this.solver.solve();
+				return this.game.isWon();
+			}
+
+			/**
+			 * Moves a random unsolved mine next to the revealed area to a
+			 * random cell with no revealed neighbor, and restarts the scratch
+			 * game on the new layout.
+			 *
+			 * @return false if there was no mine or no cell to move it to
+			 */
+			private boolean repair() {
+				int numFrontierMines = 0;
+				int numInterior = 0;
+
+				for (int i = 0; i < this.game.getNumCells(); i++) {
+					if (this.game.isRevealed(i) || this.game.isFlagged(i)) {
+						continue;
+					}
+
+					boolean touchesRevealed = this.game.numAdjacentHidden(i) < this.game.numNeighbors(i);
+					if (this.game.isMine(i)) {
+						if (touchesRevealed) {
+							this.frontierMines[numFrontierMines++] = i;
+						}
+					} else if (!touchesRevealed) {
+						this.interior[numInterior++] = i;
+					}
+				}
+
+				if (numFrontierMines == 0 || numInterior == 0) {
+					return false;
+				}
+
+				this.game.copyMines(this.layout);
+				this.layout.clear(this.frontierMines[this.random.nextInt(numFrontierMines)]);
+				this.layout.set(this.interior[this.random.nextInt(numInterior)]);
+
+				this.game.reset(this.game.getSeed());
+				this.game.placeMines(Run.this.safeIndex, this.layout);
+				return true;
+			}
+		}
+	}
+}
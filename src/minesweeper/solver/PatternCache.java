@@ -0,0 +1,354 @@
+package minesweeper.solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class remembers what the Solver deduced from each frontier
+ *         window it has seen, so that the same shape of numbers and hidden
+ *         cells is only worked out once, even across games.
+ *
+ *         A window is the 7x7 block of cells around a revealed number. Its
+ *         inner 5x5 block holds every number the deduction compares against,
+ *         encoded as remaining mines, and its outer ring only matters as
+ *         hidden or not. Each window is canonicalized to the least encoding
+ *         among its 8 rotations and reflections, and the deduction is stored
+ *         as masks of safe cells and mines in that canonical orientation.
+ *
+ *         The cache holds a bounded number of windows, evicting the least
+ *         recently used, and is safe to share between solvers on different
+ *         threads. It can be saved to a file so that later runs start warm.
+ *
+ */
+public final class PatternCache {
+
+	static final int WINDOW = 7;
+	static final int SIZE = WINDOW * WINDOW;
+
+	// Cell codes. Inner cells use all of them, outer cells only the first two.
+	static final int UNKNOWN = 0;
+	static final int BLOCKED = 1;
+	static final int NUMBER = 2;
+
+	private static final int INNER_BITS = 4;
+	private static final int MAGIC = 0x4D535043;
+
+	// Where each of the 8 symmetries sends each window position, and back,
+	// and the bit of the key each window position lands at.
+	private static final int[][] FORWARD = new int[8][SIZE];
+	private static final int[][] INVERSE = new int[8][SIZE];
+	private static final int[][] SHIFT = new int[8][SIZE];
+	private static final boolean[] INNER = new boolean[SIZE];
+
+	static {
+		for (int t = 0; t < 8; t++) {
+			for (int r = 0; r < WINDOW; r++) {
+				for (int c = 0; c < WINDOW; c++) {
+					int row = r, col = c;
+					if ((t & 1) != 0) {
+						col = WINDOW - 1 - col;
+					}
+					if ((t & 2) != 0) {
+						row = WINDOW - 1 - row;
+					}
+					if ((t & 4) != 0) {
+						int swap = row;
+						row = col;
+						col = swap;
+					}
+					FORWARD[t][r * WINDOW + c] = row * WINDOW + col;
+					INVERSE[t][row * WINDOW + col] = r * WINDOW + c;
+				}
+			}
+		}
+		for (int p = 0; p < SIZE; p++) {
+			INNER[p] = Math.abs(p / WINDOW - WINDOW / 2) <= 2 && Math.abs(p % WINDOW - WINDOW / 2) <= 2;
+		}
+
+		// Canonical positions are laid out from the top of the key down, so the
+		// last one takes the lowest bits.
+		int[] offsets = new int[SIZE];
+		int offset = 0;
+		for (int q = SIZE - 1; q >= 0; q--) {
+			offsets[q] = offset;
+			offset += INNER[q] ? INNER_BITS : 1;
+		}
+		for (int t = 0; t < 8; t++) {
+			for (int p = 0; p < SIZE; p++) {
+				SHIFT[t][p] = offsets[FORWARD[t][p]];
+			}
+		}
+	}
+
+	private final int capacity;
+	private final Map<Key, long[]> entries;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructs an empty cache.
+	 *
+	 * @param capacity
+	 *            the most windows to keep
+	 */
+	public PatternCache(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Key, long[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, long[]> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Forgets every window and resets the counters.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Looks up the deduction for a canonical window.
+	 *
+	 * @return the canonical safe and mine masks, or null if the window has not
+	 *         been seen
+	 */
+	synchronized long[] get(Key key) {
+		long[] value = this.entries.get(key);
+		if (value == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		return value;
+	}
+
+	/**
+	 * Stores the deduction for a canonical window.
+	 */
+	synchronized void put(Key key, long safe, long mines) {
+		this.entries.put(key, new long[] { safe, mines });
+	}
+
+	/**
+	 * Canonicalizes a window.
+	 *
+	 * @param codes
+	 *            the code of each window position: UNKNOWN, BLOCKED, or NUMBER
+	 *            plus the remaining mines of a revealed number
+	 * @return the key of the window, with the symmetry that maps the window's
+	 *         positions to the key's
+	 */
+	static Key canonicalize(int[] codes) {
+		// Codes are stored flipped against BLOCKED, so that the blocked
+		// positions, which are most of a window, are zero and can be skipped.
+		long present = 0;
+		for (int p = 0; p < SIZE; p++) {
+			if (codes[p] != BLOCKED) {
+				present |= 1L << p;
+			}
+		}
+
+		long bestHigh = 0, bestLow = 0;
+		int bestSymmetry = -1;
+		for (int t = 0; t < 8; t++) {
+			long high = 0, low = 0;
+
+			// Places each position's code at its bit in the 124 bits of the key,
+			// which may straddle the two words.
+			int[] shift = SHIFT[t];
+			for (long rest = present; rest != 0; rest &= rest - 1) {
+				int p = Long.numberOfTrailingZeros(rest);
+				long code = codes[p] ^ BLOCKED;
+				int at = shift[p];
+				if (at >= 64) {
+					high |= code << (at - 64);
+				} else {
+					low |= code << at;
+					if (at > 64 - INNER_BITS) {
+						high |= code >>> (64 - at);
+					}
+				}
+			}
+
+			if (bestSymmetry == -1 || high < bestHigh || (high == bestHigh && low < bestLow)) {
+				bestHigh = high;
+				bestLow = low;
+				bestSymmetry = t;
+			}
+		}
+		return new Key(bestHigh, bestLow, bestSymmetry);
+	}
+
+	/**
+	 * Moves a mask of window positions into the canonical orientation.
+	 */
+	static long toCanonical(long mask, int symmetry) {
+		long result = 0;
+		while (mask != 0) {
+			int p = Long.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			result |= 1L << FORWARD[symmetry][p];
+		}
+		return result;
+	}
+
+	/**
+	 * Moves a mask of canonical positions back into a window's orientation.
+	 */
+	static long fromCanonical(long mask, int symmetry) {
+		long result = 0;
+		while (mask != 0) {
+			int q = Long.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+			result |= 1L << INVERSE[symmetry][q];
+		}
+		return result;
+	}
+
+	/**
+	 * Writes every window to a stream, least recently used first, so that
+	 * loading them back keeps their order.
+	 *
+	 * @param out
+	 *            the stream to write to, which is not closed
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public synchronized void save(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(this.entries.size());
+		for (Map.Entry<Key, long[]> entry : this.entries.entrySet()) {
+			data.writeLong(entry.getKey().high);
+			data.writeLong(entry.getKey().low);
+			data.writeLong(entry.getValue()[0]);
+			data.writeLong(entry.getValue()[1]);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Adds every window from a stream written by save.
+	 *
+	 * @param in
+	 *            the stream to read from, which is not closed
+	 * @throws IOException
+	 *             if the stream cannot be read or was not written by save
+	 */
+	public synchronized void load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("not a pattern cache");
+		}
+
+		int count = data.readInt();
+		for (int i = 0; i < count; i++) {
+			Key key = new Key(data.readLong(), data.readLong(), 0);
+			this.put(key, data.readLong(), data.readLong());
+		}
+	}
+
+	/**
+	 * Writes every window to a file.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			this.save(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Adds every window from a file written by save, if it exists.
+	 *
+	 * @throws IOException
+	 *             if the file exists but cannot be read
+	 */
+	public void load(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			this.load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The canonical encoding of a window. The symmetry it was found with is
+	 * carried along but is not part of the key.
+	 */
+	static final class Key {
+
+		final long high;
+		final long low;
+		final int symmetry;
+
+		Key(long high, long low, int symmetry) {
+			this.high = high;
+			this.low = low;
+			this.symmetry = symmetry;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.high == other.high && this.low == other.low;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = this.high * 0x9E3779B97F4A7C15L ^ this.low;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package minesweeper.solver;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class holds the result of a ProbabilityEngine: the chance that
+ *         each frontier cell is a mine, and the chance shared by every hidden
+ *         cell away from the frontier.
+ *
+ */
+public final class Probabilities {
+
+	private final int[] cells;
+	private final double[] probabilities;
+	private final boolean[] safe;
+	private final boolean[] mined;
+	private final int numInterior;
+	private final double interiorProbability;
+	private final boolean exact;
+
+	Probabilities(int[] cells, double[] probabilities, boolean[] safe, boolean[] mined, int numInterior,
+			double interiorProbability, boolean exact) {
+		this.cells = cells;
+		this.probabilities = probabilities;
+		this.safe = safe;
+		this.mined = mined;
+		this.numInterior = numInterior;
+		this.interiorProbability = interiorProbability;
+		this.exact = exact;
+	}
+
+	/**
+	 * @return the number of frontier cells
+	 */
+	public int getNumFrontier() {
+		return this.cells.length;
+	}
+
+	/**
+	 * @param i
+	 *            a position in the frontier, from 0 to getNumFrontier() - 1
+	 * @return the index of the frontier cell at that position
+	 */
+	public int getCell(int i) {
+		return this.cells[i];
+	}
+
+	/**
+	 * @param i
+	 *            a position in the frontier, from 0 to getNumFrontier() - 1
+	 * @return the probability that the frontier cell at that position is a
+	 *         mine
+	 */
+	public double getProbability(int i) {
+		return this.probabilities[i];
+	}
+
+	/**
+	 * @param i
+	 *            a position in the frontier, from 0 to getNumFrontier() - 1
+	 * @return true if the result is exact and the frontier cell at that
+	 *         position is clear in every configuration that fits the mine
+	 *         count
+	 */
+	public boolean isSafe(int i) {
+		return this.exact && this.safe[i];
+	}
+
+	/**
+	 * @param i
+	 *            a position in the frontier, from 0 to getNumFrontier() - 1
+	 * @return true if the result is exact and the frontier cell at that
+	 *         position is a mine in every configuration that fits the mine
+	 *         count
+	 */
+	public boolean isMine(int i) {
+		return this.exact && this.mined[i];
+	}
+
+	/**
+	 * @return the number of hidden, unflagged cells away from the frontier
+	 */
+	public int getNumInterior() {
+		return this.numInterior;
+	}
+
+	/**
+	 * @return the probability that a cell away from the frontier is a mine
+	 */
+	public double getInteriorProbability() {
+		return this.interiorProbability;
+	}
+
+	/**
+	 * @return true if every frontier component was enumerated and weighed
+	 *         exactly, so that isSafe and isMine can prove a cell safe or
+	 *         mined
+	 */
+	public boolean isExact() {
+		return this.exact;
+	}
+
+	/**
+	 * @return the position of the frontier cell least likely to be a mine, or
+	 *         -1 if the frontier is empty
+	 */
+	public int safest() {
+		int best = -1;
+		for (int i = 0; i < this.cells.length; i++) {
+			if (best == -1 || this.probabilities[i] < this.probabilities[best]) {
+				best = i;
+			}
+		}
+		return best;
+	}
+}
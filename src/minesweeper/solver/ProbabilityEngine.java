@@ -0,0 +1,623 @@
+package minesweeper.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import minesweeper.engine.GameState;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class computes the probability that each hidden cell of a game
+ *         is a mine, for choosing the best guess when nothing is certain.
+ *
+ *         The frontier (hidden, unflagged cells next to a revealed number) is
+ *         split into independent components by a Frontier. Every valid mine
+ *         configuration of each component is enumerated, in parallel, and
+ *         counted by its number of mines. The components are then combined
+ *         with the cells away from the frontier, weighting each total number
+ *         of frontier mines by the number of ways to place the rest of the
+ *         mines in the interior.
+ *
+ *         Components larger than the size budget, or still being enumerated
+ *         when the time budget runs out or after visiting more search nodes
+ *         than the node budget, fall back to a local estimate and
+ *         are left out of the exact weighting. Since their mines are only
+ *         estimated, the exact weighting may find no total number of mines
+ *         that fits, and the other components are then weighed by the mine
+ *         density instead, as they are when there are too many components to
+ *         convolve. Such a result is marked as not exact: none of its cells
+ *         is proven safe or mined.
+ *
+ *         In an exact result, a cell is proven safe or mined from the
+ *         configuration counts themselves rather than from its probability:
+ *         it must be clear, or a mine, in every configuration of every mine
+ *         count that can still occur.
+ *
+ *         The time budget keeps a guess quick on any machine, but which
+ *         components finish within it depends on the machine and its load.
+ *         Without a time budget, the size and node budgets give the same
+ *         result every time.
+ *
+ */
+public class ProbabilityEngine {
+
+	private static final int DEFAULT_MAX_COMPONENT_SIZE = 48;
+	private static final long DEFAULT_TIME_BUDGET_MILLIS = 200;
+
+	// Above this many exactly enumerated components, components are weighted
+	// with the interior mine density instead of the exact convolution.
+	private static final int MAX_EXACT_COMPONENTS = 32;
+
+	// Smaller frontiers are enumerated on the calling thread, since handing
+	// them to the pool costs more than it saves.
+	private static final int PARALLEL_CELLS = 64;
+
+	private final GameState state;
+	private Frontier frontier;
+	private int maxComponentSize;
+	private long timeBudgetMillis;
+	private long nodeBudget;
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a probability engine for the given game, with the default
+	 * budgets, running on the common ForkJoinPool.
+	 *
+	 * @param state
+	 *            the game to analyze
+	 */
+	public ProbabilityEngine(GameState state) {
+		this.state = state;
+		this.maxComponentSize = DEFAULT_MAX_COMPONENT_SIZE;
+		this.timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+		this.nodeBudget = Long.MAX_VALUE;
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * @param maxComponentSize
+	 *            the largest component, in cells, that is enumerated exactly
+	 */
+	public void setMaxComponentSize(int maxComponentSize) {
+		this.maxComponentSize = maxComponentSize;
+	}
+
+	/**
+	 * @param timeBudgetMillis
+	 *            how long all components together may spend being enumerated,
+	 *            or 0 for no time limit
+	 */
+	public void setTimeBudgetMillis(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	/**
+	 * @param nodeBudget
+	 *            how many search nodes each component may visit before it is
+	 *            estimated instead, counted in steps of 4096. Unlimited by
+	 *            default.
+	 */
+	public void setNodeBudget(long nodeBudget) {
+		this.nodeBudget = nodeBudget;
+	}
+
+	/**
+	 * @param pool
+	 *            the pool to enumerate components on
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Computes the mine probability of every frontier cell, and of the cells
+	 * away from the frontier. Flags are trusted to be correct. The frontier
+	 * is found by looking at every cell of the board.
+	 *
+	 * @return the probabilities
+	 */
+	public Probabilities compute() {
+		if (this.frontier == null) {
+			this.frontier = new Frontier(this.state);
+		}
+		this.frontier.clear();
+		for (int index = 0; index < this.state.getNumCells(); index++) {
+			this.frontier.add(index);
+		}
+		return this.compute(this.frontier);
+	}
+
+	/**
+	 * Computes the probabilities with a frontier that has already been
+	 * collected, which must hold every component of the game.
+	 *
+	 * @param frontier
+	 *            the whole frontier of the game
+	 * @return the probabilities
+	 */
+	Probabilities compute(Frontier frontier) {
+		long deadline = (this.timeBudgetMillis > 0) ? System.nanoTime() + this.timeBudgetMillis * 1000000L
+				: Long.MAX_VALUE;
+
+		List<Component> components = new ArrayList<Component>(frontier.getNumComponents());
+		for (int k = 0; k < frontier.getNumComponents(); k++) {
+			Component component = new Component(this.maxComponentSize, this.nodeBudget);
+			for (int c = frontier.getFirstConstraint(k); c < frontier.getEndConstraint(k); c++) {
+				component.addConstraint(frontier.getVars(c), frontier.getTarget(c));
+			}
+			components.add(component);
+		}
+
+		this.enumerate(components, deadline, frontier.getNumCells() >= PARALLEL_CELLS);
+
+		int numUnknown = this.state.getNumCells() - this.state.getNumSafeRevealed() - this.state.getNumFlagged();
+		int interior = numUnknown - frontier.getNumCells();
+		int minesLeft = this.state.getNumMines() - this.state.getNumFlagged();
+
+		double[] probabilities = new double[frontier.getNumCells()];
+		boolean[] safe = new boolean[frontier.getNumCells()];
+		boolean[] mined = new boolean[frontier.getNumCells()];
+		List<Component> exact = new ArrayList<Component>();
+
+		for (Component component : components) {
+			if (component.exact) {
+				exact.add(component);
+			} else {
+				minesLeft -= (int) Math.round(component.estimate(probabilities));
+			}
+		}
+
+		double interiorProbability = this.weigh(exact, interior, Math.max(0, minesLeft), probabilities, safe,
+				mined);
+		boolean isExact = exact.size() == components.size() && !Double.isNaN(interiorProbability);
+		if (Double.isNaN(interiorProbability)) {
+			interiorProbability = this.weighByDensity(exact, interior, Math.max(0, minesLeft), probabilities);
+		}
+
+		int[] cells = new int[frontier.getNumCells()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = frontier.getCell(i);
+		}
+		return new Probabilities(cells, probabilities, safe, mined, interior, interiorProbability, isExact);
+	}
+
+	/**
+	 * Enumerates every component, in parallel on the pool if asked to.
+	 */
+	private void enumerate(List<Component> components, final long deadline, boolean parallel) {
+		if (!parallel || components.size() < 2) {
+			for (Component component : components) {
+				component.enumerate(deadline);
+			}
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(components.size());
+		for (final Component component : components) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					component.enumerate(deadline);
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : this.pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("probability computation interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("probability computation failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Combines the exactly enumerated components with the interior, fills in
+	 * the probabilities of their cells, marks the cells that are clear or a
+	 * mine in every configuration that can occur, and returns the probability
+	 * that an interior cell is a mine.
+	 *
+	 * @param components
+	 *            the exactly enumerated components
+	 * @param interior
+	 *            the number of unknown cells away from the frontier
+	 * @param minesLeft
+	 *            the number of mines among the exact components and interior
+	 * @param probabilities
+	 *            the per-cell probabilities to fill in
+	 * @param safe
+	 *            set for the cells proven safe
+	 * @param mined
+	 *            set for the cells proven mined
+	 * @return the interior probability, or NaN if there are too many
+	 *         components to convolve or no number of frontier mines fits
+	 *         minesLeft, in which case nothing is filled in
+	 */
+	private double weigh(List<Component> components, int interior, int minesLeft, double[] probabilities,
+			boolean[] safe, boolean[] mined) {
+		if (components.size() > MAX_EXACT_COMPONENTS) {
+			return Double.NaN;
+		}
+
+		int maxFrontierMines = 0;
+		for (Component component : components) {
+			maxFrontierMines += component.maxMines();
+		}
+
+		// logWeight[s] is the log of the number of ways to place the other
+		// minesLeft - s mines in the interior, up to a constant.
+		double[] logWeight = new double[maxFrontierMines + 1];
+		Arrays.fill(logWeight, Double.NEGATIVE_INFINITY);
+		int first = Math.max(0, minesLeft - interior);
+		if (first <= maxFrontierMines) {
+			logWeight[first] = 0;
+			for (int s = first; s < maxFrontierMines && minesLeft - s > 0; s++) {
+				logWeight[s + 1] = logWeight[s] + Math.log((double) (minesLeft - s) / (interior - minesLeft + s + 1));
+			}
+		}
+
+		// prefix[i] and suffix[i] are the mine count distributions of the
+		// components before and after component i.
+		int n = components.size();
+		double[][] prefix = new double[n + 1][];
+		double[][] suffix = new double[n + 1][];
+		prefix[0] = new double[] { 1 };
+		suffix[n] = new double[] { 1 };
+		for (int i = 0; i < n; i++) {
+			prefix[i + 1] = convolve(prefix[i], components.get(i).solutions);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			suffix[i] = convolve(components.get(i).solutions, suffix[i + 1]);
+		}
+
+		double[] total = prefix[n];
+		double maxLog = Double.NEGATIVE_INFINITY;
+		for (int s = 0; s < total.length; s++) {
+			if (total[s] > 0) {
+				maxLog = Math.max(maxLog, logWeight[s]);
+			}
+		}
+		if (maxLog == Double.NEGATIVE_INFINITY) {
+			return Double.NaN;
+		}
+
+		double[] weight = new double[logWeight.length];
+		for (int s = 0; s < weight.length; s++) {
+			weight[s] = (total[s] > 0) ? Math.exp(logWeight[s] - maxLog) : 0;
+		}
+
+		double z = 0;
+		double interiorMines = 0;
+		for (int s = 0; s < total.length; s++) {
+			z += total[s] * weight[s];
+			interiorMines += total[s] * weight[s] * (minesLeft - s);
+		}
+
+		for (int i = 0; i < n; i++) {
+			Component component = components.get(i);
+			double[] others = convolve(prefix[i], suffix[i + 1]);
+
+			for (int v = 0; v < component.size(); v++) {
+				safe[component.cell(v)] = true;
+				mined[component.cell(v)] = true;
+			}
+
+			for (int k = 0; k < component.solutions.length; k++) {
+				if (component.solutions[k] == 0) {
+					continue;
+				}
+
+				// The component can have k mines if the others can make up a
+				// total that leaves a valid number of mines for the interior.
+				double kWeight = 0;
+				boolean feasible = false;
+				for (int s = 0; s < others.length && k + s < weight.length; s++) {
+					kWeight += others[s] * weight[k + s];
+					feasible |= others[s] > 0 && logWeight[k + s] != Double.NEGATIVE_INFINITY;
+				}
+				if (!feasible) {
+					continue;
+				}
+
+				// The counts of a component are all scaled by the same
+				// divisor, so equal counts stay exactly equal.
+				double[] counts = component.mineCounts[k];
+				for (int v = 0; v < component.size(); v++) {
+					probabilities[component.cell(v)] += counts[v] * kWeight / z;
+					safe[component.cell(v)] &= counts[v] == 0;
+					mined[component.cell(v)] &= counts[v] == component.solutions[k];
+				}
+			}
+		}
+
+		return (interior == 0) ? 0 : interiorMines / z / interior;
+	}
+
+	/**
+	 * Weighs each component on its own, approximating the interior by its
+	 * mine density: each extra frontier mine scales a configuration's weight
+	 * by density / (1 - density). Used when there are too many components for
+	 * the exact convolution, or no exact weighting fits.
+	 */
+	private double weighByDensity(List<Component> components, int interior, int minesLeft,
+			double[] probabilities) {
+		int frontierCells = 0;
+		for (Component component : components) {
+			frontierCells += component.size();
+		}
+
+		double density = (double) minesLeft / Math.max(1, interior + frontierCells);
+		density = Math.max(1e-9, Math.min(1 - 1e-9, density));
+		double logRatio = Math.log(density / (1 - density));
+		double frontierMines = 0;
+
+		for (Component component : components) {
+			double z = 0;
+			double[] weight = new double[component.solutions.length];
+			for (int k = 0; k < weight.length; k++) {
+				weight[k] = component.solutions[k] * Math.exp(k * logRatio);
+				z += weight[k];
+			}
+
+			for (int k = 0; k < weight.length; k++) {
+				if (weight[k] == 0) {
+					continue;
+				}
+				frontierMines += k * weight[k] / z;
+				for (int v = 0; v < component.size(); v++) {
+					probabilities[component.cell(v)] += component.mineCounts[k][v] / component.solutions[k]
+							* weight[k] / z;
+				}
+			}
+		}
+
+		return (interior == 0) ? 0 : Math.max(0, Math.min(1, (minesLeft - frontierMines) / interior));
+	}
+
+	private static double[] convolve(double[] a, double[] b) {
+		double[] result = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != 0) {
+				for (int j = 0; j < b.length; j++) {
+					result[i + j] += a[i] * b[j];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * One independent component of the frontier: its cells, the numbers that
+	 * constrain them, and once enumerated, how many configurations it has
+	 * for each number of mines.
+	 */
+	private static final class Component {
+
+		private final int maxSize;
+		private final long maxNodes;
+
+		// Cells of the component, as frontier ids, in the order they were met.
+		private final Map<Integer, Integer> localIds = new HashMap<Integer, Integer>();
+		private int[] cells = new int[8];
+		private int numCells;
+
+		private final List<int[]> constraints = new ArrayList<int[]>();
+		private final List<Integer> targets = new ArrayList<Integer>();
+
+		boolean exact;
+		double[] solutions;
+		double[][] mineCounts;
+
+		// Search state.
+		private int[][] cellConstraints;
+		private int[] constraintMines;
+		private int[] constraintUnassigned;
+		private int[] targetArray;
+		private boolean[] isMine;
+		private long nodes;
+		private long deadline;
+		private boolean aborted;
+
+		Component(int maxSize, long maxNodes) {
+			this.maxSize = maxSize;
+			this.maxNodes = maxNodes;
+		}
+
+		int size() {
+			return this.numCells;
+		}
+
+		/**
+		 * @return the frontier id of the component's v-th cell
+		 */
+		int cell(int v) {
+			return this.cells[v];
+		}
+
+		int maxMines() {
+			return this.solutions.length - 1;
+		}
+
+		void addConstraint(int[] frontierIds, int target) {
+			int[] local = new int[frontierIds.length];
+			for (int i = 0; i < frontierIds.length; i++) {
+				Integer id = this.localIds.get(frontierIds[i]);
+				if (id == null) {
+					id = this.numCells;
+					this.localIds.put(frontierIds[i], id);
+					if (this.numCells == this.cells.length) {
+						this.cells = Arrays.copyOf(this.cells, 2 * this.cells.length);
+					}
+					this.cells[this.numCells++] = frontierIds[i];
+				}
+				local[i] = id;
+			}
+			this.constraints.add(local);
+			this.targets.add(target);
+		}
+
+		/**
+		 * Counts every valid configuration by its number of mines, unless the
+		 * component is too large, or the deadline passes or the node budget
+		 * runs out first.
+		 */
+		void enumerate(long deadline) {
+			this.exact = false;
+			if (this.numCells > this.maxSize) {
+				return;
+			}
+
+			int n = this.numCells;
+			int numConstraints = this.constraints.size();
+
+			int[] perCell = new int[n];
+			for (int[] constraint : this.constraints) {
+				for (int v : constraint) {
+					perCell[v]++;
+				}
+			}
+			this.cellConstraints = new int[n][];
+			for (int v = 0; v < n; v++) {
+				this.cellConstraints[v] = new int[perCell[v]];
+			}
+			Arrays.fill(perCell, 0);
+
+			this.constraintMines = new int[numConstraints];
+			this.constraintUnassigned = new int[numConstraints];
+			this.targetArray = new int[numConstraints];
+			for (int c = 0; c < numConstraints; c++) {
+				int[] constraint = this.constraints.get(c);
+				this.constraintUnassigned[c] = constraint.length;
+				this.targetArray[c] = this.targets.get(c);
+				for (int v : constraint) {
+					this.cellConstraints[v][perCell[v]++] = c;
+				}
+			}
+
+			this.isMine = new boolean[n];
+			this.solutions = new double[n + 1];
+			this.mineCounts = new double[n + 1][n];
+			this.nodes = 0;
+			this.deadline = deadline;
+			this.aborted = false;
+
+			// Cells are numbered in the order the frontier search met them, so
+			// neighboring cells are close together and constraints close early.
+			this.search(0, 0);
+
+			// A component with no valid configuration means a flag is wrong;
+			// it is estimated rather than weighed.
+			if (!this.aborted && this.hasSolution()) {
+				this.exact = true;
+				int max = n;
+				while (max > 0 && this.solutions[max] == 0) {
+					max--;
+				}
+				this.solutions = Arrays.copyOf(this.solutions, max + 1);
+				this.mineCounts = Arrays.copyOf(this.mineCounts, max + 1);
+
+				// Scales the counts so that products of many components stay
+				// within range. The scale cancels out in every probability.
+				double scale = 0;
+				for (double count : this.solutions) {
+					scale = Math.max(scale, count);
+				}
+				for (int k = 0; k <= max; k++) {
+					this.solutions[k] /= scale;
+					for (int v = 0; v < n; v++) {
+						this.mineCounts[k][v] /= scale;
+					}
+				}
+			}
+		}
+
+		private boolean hasSolution() {
+			for (double count : this.solutions) {
+				if (count > 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void search(int v, int mines) {
+			if (this.aborted) {
+				return;
+			}
+			if ((++this.nodes & 4095) == 0 && (this.nodes > this.maxNodes || System.nanoTime() > this.deadline)) {
+				this.aborted = true;
+				return;
+			}
+
+			if (v == this.numCells) {
+				this.solutions[mines]++;
+				double[] counts = this.mineCounts[mines];
+				for (int i = 0; i < this.numCells; i++) {
+					if (this.isMine[i]) {
+						counts[i]++;
+					}
+				}
+				return;
+			}
+
+			for (int value = 0; value <= 1; value++) {
+				boolean valid = true;
+				for (int c : this.cellConstraints[v]) {
+					this.constraintUnassigned[c]--;
+					this.constraintMines[c] += value;
+					int remaining = this.targetArray[c] - this.constraintMines[c];
+					if (remaining < 0 || remaining > this.constraintUnassigned[c]) {
+						valid = false;
+					}
+				}
+
+				if (valid) {
+					this.isMine[v] = (value == 1);
+					this.search(v + 1, mines + value);
+					this.isMine[v] = false;
+				}
+
+				for (int c : this.cellConstraints[v]) {
+					this.constraintUnassigned[c]++;
+					this.constraintMines[c] -= value;
+				}
+			}
+		}
+
+		/**
+		 * Estimates the probability of each cell locally, as the highest
+		 * remaining mine density among the numbers next to it.
+		 *
+		 * @return the expected number of mines in the component
+		 */
+		double estimate(double[] probabilities) {
+			double[] local = new double[this.numCells];
+			for (int c = 0; c < this.constraints.size(); c++) {
+				int[] constraint = this.constraints.get(c);
+				double density = (double) this.targets.get(c) / constraint.length;
+				for (int v : constraint) {
+					local[v] = Math.max(local[v], density);
+				}
+			}
+
+			double expected = 0;
+			for (int v = 0; v < this.numCells; v++) {
+				probabilities[this.cells[v]] = local[v];
+				expected += local[v];
+			}
+			return expected;
+		}
+	}
+}
@@ -0,0 +1,836 @@
+package minesweeper.solver;
+
+import java.util.Arrays;
+
+import minesweeper.engine.BitBoard;
+import minesweeper.engine.GameListener;
+import minesweeper.engine.GameState;
+import minesweeper.engine.Neighbors;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         This class is a deterministic minesweeper solver. It follows a game
+ *         as a GameListener and keeps a work list of revealed cells whose
+ *         neighborhood changed since they were last examined, so each step
+ *         only looks at the part of the frontier that moved instead of
+ *         rescanning the board.
+ *
+ *         Two rules are applied to each cell on the work list:
+ *         1. single cell: if a number's remaining mines are 0, its hidden
+ *            neighbors are safe; if they equal its hidden neighbors, they are
+ *            all mines
+ *         2. subset: if the hidden neighbors of one number are a subset of
+ *            another's, the difference holds the difference of their
+ *            remaining mines
+ *
+ *         The subset rule works on an encoding of the 7x7 window around the
+ *         cell, so a PatternCache shared between solvers can remember what
+ *         each window shape yields.
+ *
+ *         Safe cells are revealed and mines are flagged as soon as they are
+ *         found. Flags already on the board are trusted to be correct.
+ *
+ *         In linear mode, once the rules run out, the components of the
+ *         frontier around every cell examined since the last pass are also
+ *         solved as systems of equations by a LinearSolver. When
+ *         nothing more can be deduced, a ProbabilityEngine picks the cell
+ *         least likely to be a mine. The solver hands it the frontier from a
+ *         list of revealed cells it keeps as the game moves, and finds cells
+ *         away from the frontier with a cursor that only moves forward while
+ *         cells are being revealed and flagged, so a guess does not rescan
+ *         the board.
+ *
+ */
+public class Solver implements GameListener {
+
+	// Cells away from the frontier are guessed corners first, then edges.
+	private static final int[] INTERIOR_NEIGHBORS = { 3, 5, 8 };
+
+	// Hidden neighbor sets are bitmasks over the 7x7 window centered on the
+	// cell being examined, which holds the neighbors of every cell within a
+	// distance of 2.
+	private static final int WINDOW = 7;
+	private static final int CENTER = WINDOW / 2;
+	private static final int CENTER_POSITION = CENTER * WINDOW + CENTER;
+
+	// Which window positions are within 2 of the center, and the neighbors of
+	// each position within the window.
+	private static final boolean[] INNER = new boolean[WINDOW * WINDOW];
+	private static final long[] NEIGHBOR_MASKS = new long[WINDOW * WINDOW];
+
+	static {
+		for (int p = 0; p < WINDOW * WINDOW; p++) {
+			int r = p / WINDOW;
+			int c = p % WINDOW;
+			INNER[p] = Math.abs(r - CENTER) <= 2 && Math.abs(c - CENTER) <= 2;
+
+			for (int dr = -1; dr <= 1; dr++) {
+				for (int dc = -1; dc <= 1; dc++) {
+					int nr = r + dr;
+					int nc = c + dc;
+					if ((dr != 0 || dc != 0) && nr >= 0 && nr < WINDOW && nc >= 0 && nc < WINDOW) {
+						NEIGHBOR_MASKS[p] |= 1L << (nr * WINDOW + nc);
+					}
+				}
+			}
+		}
+	}
+
+	private final GameState state;
+	private final Neighbors neighbors;
+	private final int[] neighborBuffer = new int[8];
+	private final int[] otherBuffer = new int[8];
+
+	// The window being examined, and what was deduced from it.
+	private final int[] codes = new int[PatternCache.SIZE];
+	private long deducedSafe;
+	private long deducedMines;
+	private PatternCache cache;
+
+	// Revealed cells waiting to be examined, and which cells are waiting.
+	private int[] work;
+	private int workSize;
+	private final BitBoard queued;
+
+	// Cells examined since the last linear pass, and which cells those are.
+	private int[] touched;
+	private int numTouched;
+	private final BitBoard touchedBits;
+
+	// Revealed cells that may still have unknown neighbors, a superset of the
+	// numbers on the frontier, and which cells those are.
+	private int[] border;
+	private int borderSize;
+	private final BitBoard onBorder;
+	private Frontier frontier;
+
+	// Where the search for a cell away from the frontier resumes: the number
+	// of neighbors of the cells being looked for, by INTERIOR_NEIGHBORS, and
+	// the index reached.
+	private int interiorPass;
+	private int interiorCursor;
+
+	private int numMoves;
+	private int numGuesses;
+	private boolean linearMode;
+	private LinearSolver linearSolver;
+	private ProbabilityEngine engine;
+
+	/**
+	 * Constructs a solver for the given game and starts following it. If the
+	 * game is already under way, every revealed cell is examined once.
+	 *
+	 * @param state
+	 *            the game to solve
+	 */
+	public Solver(GameState state) {
+		this.state = state;
+		this.neighbors = state.getNeighbors();
+		this.work = new int[64];
+		this.workSize = 0;
+		this.queued = new BitBoard(state.getRows(), state.getCols());
+		this.touched = new int[64];
+		this.numTouched = 0;
+		this.touchedBits = new BitBoard(state.getRows(), state.getCols());
+		this.border = new int[64];
+		this.borderSize = 0;
+		this.onBorder = new BitBoard(state.getRows(), state.getCols());
+		this.numMoves = 0;
+		this.numGuesses = 0;
+
+		for (int i = 0; i < state.getNumCells(); i++) {
+			if (state.isRevealed(i)) {
+				this.enqueue(i);
+				this.addBorder(i);
+			}
+		}
+
+		state.addGameListener(this);
+	}
+
+	/**
+	 * Stops following the game.
+	 */
+	public void detach() {
+		this.state.removeGameListener(this);
+	}
+
+	/**
+	 * @return the number of reveals and flags this solver has made
+	 */
+	public int getNumMoves() {
+		return this.numMoves;
+	}
+
+	/**
+	 * @return the number of reveals this solver has made without being
+	 *         certain they were safe
+	 */
+	public int getNumGuesses() {
+		return this.numGuesses;
+	}
+
+	/**
+	 * @return true if the solver also solves the frontier as a system of
+	 *         equations once the local rules run out
+	 */
+	public boolean isLinearMode() {
+		return this.linearMode;
+	}
+
+	/**
+	 * @param linearMode
+	 *            true to also solve the frontier as a system of equations once
+	 *            the local rules run out
+	 */
+	public void setLinearMode(boolean linearMode) {
+		this.linearMode = linearMode;
+	}
+
+	/**
+	 * @return the cache of deductions by window shape, or null
+	 */
+	public PatternCache getPatternCache() {
+		return this.cache;
+	}
+
+	/**
+	 * @param cache
+	 *            a cache of deductions by window shape, which may be shared
+	 *            with other solvers, or null to always deduce
+	 */
+	public void setPatternCache(PatternCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the probability engine used for guessing, which can be
+	 *         configured before the first guess
+	 */
+	public ProbabilityEngine getProbabilityEngine() {
+		if (this.engine == null) {
+			this.engine = new ProbabilityEngine(this.state);
+		}
+		return this.engine;
+	}
+
+	/**
+	 * @return the game this solver plays
+	 */
+	public GameState getState() {
+		return this.state;
+	}
+
+	/**
+	 * Plays every move that can be deduced with certainty, until the game is
+	 * over or nothing more can be deduced. In linear mode, the local rules
+	 * are applied first and the linear solver only when they run out. If no
+	 * cell has been revealed yet, the center of the board is revealed first.
+	 *
+	 * @return the number of moves made
+	 */
+	public int solve() {
+		int movesBefore = this.numMoves;
+
+		if (!this.state.isStarted()) {
+			int center = this.state.index(this.state.getRows() / 2, this.state.getCols() / 2);
+			this.state.placeMines(center);
+			this.reveal(center);
+		}
+
+		do {
+			while (this.step()) {
+				// Keeps going while progress is made.
+			}
+		} while (this.linearMode && !this.state.isOver() && this.solveLinear());
+		return this.numMoves - movesBefore;
+	}
+
+	/**
+	 * Plays the game to the end, guessing whenever nothing can be deduced.
+	 *
+	 * @return the number of moves made
+	 */
+	public int play() {
+		int movesBefore = this.numMoves;
+
+		this.solve();
+		while (!this.state.isOver() && this.guess()) {
+			this.solve();
+		}
+		return this.numMoves - movesBefore;
+	}
+
+	/**
+	 * Computes the mine probability of every hidden cell. If the
+	 * probabilities are exact, cells that the global mine count proves safe
+	 * or mined are played; if there are none, the cell least likely to be a
+	 * mine is revealed, preferring corners when the best odds are away from
+	 * the frontier.
+	 *
+	 * @return true if a move was made
+	 */
+	public boolean guess() {
+		if (this.state.isOver() || !this.state.isStarted()) {
+			return false;
+		}
+
+		Probabilities probabilities = this.getProbabilityEngine().compute(this.collectBorder());
+		boolean moved = false;
+
+		for (int i = 0; i < probabilities.getNumFrontier() && probabilities.isExact() && !this.state.isOver(); i++) {
+			if (probabilities.isSafe(i)) {
+				moved |= this.reveal(probabilities.getCell(i));
+			} else if (probabilities.isMine(i)) {
+				moved |= this.flag(probabilities.getCell(i));
+			}
+		}
+		if (moved) {
+			return true;
+		}
+
+		int best = probabilities.safest();
+		int index;
+		if (best != -1 && (probabilities.getNumInterior() == 0
+				|| probabilities.getProbability(best) <= probabilities.getInteriorProbability())) {
+			index = probabilities.getCell(best);
+		} else {
+			index = this.interiorCell();
+		}
+
+		if (index == -1) {
+			return false;
+		}
+		this.numGuesses++;
+		return this.reveal(index);
+	}
+
+	/**
+	 * Solves the components of the frontier around the cells examined since
+	 * the last pass, which are the only ones that can have changed, and plays
+	 * what they decide.
+	 *
+	 * @return true if a move was made
+	 */
+	private boolean solveLinear() {
+		if (this.linearSolver == null) {
+			this.linearSolver = new LinearSolver();
+		}
+
+		Frontier frontier = this.getFrontier();
+		frontier.clear();
+		while (this.numTouched > 0) {
+			int index = this.touched[--this.numTouched];
+			this.touchedBits.clear(index);
+			frontier.add(index);
+		}
+
+		if (!this.linearSolver.solve(frontier)) {
+			return false;
+		}
+
+		boolean moved = false;
+		for (int i = 0; i < this.linearSolver.getNumMines() && !this.state.isOver(); i++) {
+			moved |= this.flag(this.linearSolver.getMine(i));
+		}
+		for (int i = 0; i < this.linearSolver.getNumSafe() && !this.state.isOver(); i++) {
+			moved |= this.reveal(this.linearSolver.getSafe(i));
+		}
+		return moved;
+	}
+
+	/**
+	 * @return the hidden, unflagged cell away from the frontier with the
+	 *         fewest neighbors, or -1 if there is none
+	 */
+	private int interiorCell() {
+		for (; this.interiorPass < INTERIOR_NEIGHBORS.length; this.interiorPass++, this.interiorCursor = 0) {
+			for (; this.interiorCursor < this.state.getNumCells(); this.interiorCursor++) {
+				int i = this.interiorCursor;
+				if (this.state.numNeighbors(i) == INTERIOR_NEIGHBORS[this.interiorPass]
+						&& !this.state.isRevealed(i) && !this.state.isFlagged(i)
+						&& this.state.numAdjacentHidden(i) == this.state.numNeighbors(i)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Starts the search for a cell away from the frontier over, after a move
+	 * that can have put such a cell behind the cursor.
+	 */
+	private void rewindInterior() {
+		this.interiorPass = 0;
+		this.interiorCursor = 0;
+	}
+
+	private Frontier getFrontier() {
+		if (this.frontier == null) {
+			this.frontier = new Frontier(this.state);
+		}
+		return this.frontier;
+	}
+
+	/**
+	 * Drops the cells that have no unknown neighbors left from the border, and
+	 * collects the frontier from the rest, in index order so that components
+	 * are numbered as if the whole board had been scanned.
+	 *
+	 * @return the whole frontier of the game
+	 */
+	private Frontier collectBorder() {
+		int kept = 0;
+		for (int i = 0; i < this.borderSize; i++) {
+			int index = this.border[i];
+			if (this.state.isRevealed(index) && this.unknownNeighbors(index) > 0) {
+				this.border[kept++] = index;
+			} else {
+				this.onBorder.clear(index);
+			}
+		}
+		this.borderSize = kept;
+		Arrays.sort(this.border, 0, kept);
+
+		Frontier frontier = this.getFrontier();
+		frontier.clear();
+		for (int i = 0; i < kept; i++) {
+			frontier.add(this.border[i]);
+		}
+		return frontier;
+	}
+
+	/**
+	 * Examines cells from the work list until one yields a move.
+	 *
+	 * @return true if a move was made, false if the game is over or the work
+	 *         list ran out
+	 */
+	public boolean step() {
+		while (this.workSize > 0 && !this.state.isOver()) {
+			int index = this.work[--this.workSize];
+			this.queued.clear(index);
+			// An undo can hide a cell again while it waits.
+			if (!this.state.isRevealed(index)) {
+				continue;
+			}
+			if (this.linearMode) {
+				this.touch(index);
+			}
+
+			if (this.examine(index)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if no cell is waiting to be examined
+	 */
+	public boolean isStuck() {
+		return this.workSize == 0;
+	}
+
+	/**
+	 * Applies the single cell and subset rules around a revealed cell. With a
+	 * PatternCache, the deduction is looked up by the window's shape first.
+	 *
+	 * @param index
+	 *            the index of the revealed cell
+	 * @return true if a move was made
+	 */
+	private boolean examine(int index) {
+		int hidden = this.unknownNeighbors(index);
+		if (hidden == 0) {
+			return false;
+		}
+
+		// The single cell rule only needs the cell's own neighbors. A cell
+		// with more flags than mines next to it has a wrong flag, and decides
+		// nothing.
+		int remaining = this.remainingMines(index);
+		if (remaining < 0) {
+			return false;
+		}
+		if (remaining == 0 || remaining == hidden) {
+			return this.apply(index, this.unknownMask(index), remaining > 0);
+		}
+
+		this.encodeWindow(index);
+		this.normalizeWindow();
+
+		long safe, mines;
+		if (this.cache == null) {
+			this.deduce();
+			safe = this.deducedSafe;
+			mines = this.deducedMines;
+		} else {
+			PatternCache.Key key = PatternCache.canonicalize(this.codes);
+			long[] cached = this.cache.get(key);
+
+			if (cached == null) {
+				this.deduce();
+				safe = this.deducedSafe;
+				mines = this.deducedMines;
+				this.cache.put(key, PatternCache.toCanonical(safe, key.symmetry),
+						PatternCache.toCanonical(mines, key.symmetry));
+			} else {
+				safe = PatternCache.fromCanonical(cached[0], key.symmetry);
+				mines = PatternCache.fromCanonical(cached[1], key.symmetry);
+			}
+		}
+
+		boolean moved = this.apply(index, safe, false);
+		moved |= this.apply(index, mines, true);
+		return moved;
+	}
+
+	/**
+	 * Fills codes with the window centered on a cell: UNKNOWN for hidden,
+	 * unflagged cells, NUMBER plus the remaining mines for revealed cells
+	 * within 2 of the center, and BLOCKED for everything else. A number with
+	 * more flags than mines next to it is BLOCKED too, since a negative code
+	 * would run into the rest of the key.
+	 */
+	private void encodeWindow(int center) {
+		int row = this.state.row(center) - CENTER;
+		int col = this.state.col(center) - CENTER;
+
+		for (int p = 0; p < PatternCache.SIZE; p++) {
+			int r = row + p / WINDOW;
+			int c = col + p % WINDOW;
+
+			int code = PatternCache.BLOCKED;
+			if (this.state.isInBounds(r, c)) {
+				int index = this.state.index(r, c);
+				if (this.state.isRevealed(index)) {
+					int remaining = this.remainingMines(index);
+					if (INNER[p] && remaining >= 0) {
+						code = PatternCache.NUMBER + remaining;
+					}
+				} else if (!this.state.isFlagged(index)) {
+					code = PatternCache.UNKNOWN;
+				}
+			}
+			this.codes[p] = code;
+		}
+	}
+
+	/**
+	 * Blocks out everything in codes that cannot affect the subset rule: the
+	 * numbers that share no hidden cell with the center, and the hidden cells
+	 * next to none of the numbers that do. Windows that differ only there
+	 * then share a cache entry.
+	 */
+	private void normalizeWindow() {
+		long unknown = 0;
+		for (int p = 0; p < PatternCache.SIZE; p++) {
+			if (this.codes[p] == PatternCache.UNKNOWN) {
+				unknown |= 1L << p;
+			}
+		}
+
+		long mask = NEIGHBOR_MASKS[CENTER_POSITION] & unknown;
+		long relevant = mask;
+
+		for (int p = 0; p < PatternCache.SIZE; p++) {
+			if (p == CENTER_POSITION || this.codes[p] < PatternCache.NUMBER) {
+				continue;
+			}
+
+			long otherMask = NEIGHBOR_MASKS[p] & unknown;
+			if ((otherMask & mask) == 0) {
+				this.codes[p] = PatternCache.BLOCKED;
+			} else {
+				relevant |= otherMask;
+			}
+		}
+
+		long blocked = unknown & ~relevant;
+		while (blocked != 0) {
+			this.codes[Long.numberOfTrailingZeros(blocked)] = PatternCache.BLOCKED;
+			blocked &= blocked - 1;
+		}
+	}
+
+	/**
+	 * Applies the subset rule between the center of the window in codes and
+	 * every other number in it, and sets deducedSafe and deducedMines to the
+	 * cells it decides.
+	 */
+	private void deduce() {
+		long unknown = 0;
+		for (int p = 0; p < PatternCache.SIZE; p++) {
+			if (this.codes[p] == PatternCache.UNKNOWN) {
+				unknown |= 1L << p;
+			}
+		}
+
+		long mask = NEIGHBOR_MASKS[CENTER_POSITION] & unknown;
+		int remaining = this.codes[CENTER_POSITION] - PatternCache.NUMBER;
+		this.deducedSafe = 0;
+		this.deducedMines = 0;
+
+		// Compares with every other number that shares hidden neighbors.
+		for (int p = 0; p < PatternCache.SIZE; p++) {
+			if (p == CENTER_POSITION || this.codes[p] < PatternCache.NUMBER) {
+				continue;
+			}
+
+			long otherMask = NEIGHBOR_MASKS[p] & unknown;
+			if ((otherMask & mask) == 0) {
+				continue;
+			}
+			int otherRemaining = this.codes[p] - PatternCache.NUMBER;
+
+			if ((mask & ~otherMask) == 0) {
+				this.deduceDifference(otherMask & ~mask, otherRemaining - remaining);
+			}
+			if ((otherMask & ~mask) == 0) {
+				this.deduceDifference(mask & ~otherMask, remaining - otherRemaining);
+			}
+		}
+	}
+
+	/**
+	 * Records the cells of a difference set if its mine count decides them.
+	 */
+	private void deduceDifference(long difference, int mines) {
+		if (difference == 0) {
+			return;
+		} else if (mines == 0) {
+			this.deducedSafe |= difference;
+		} else if (mines == Long.bitCount(difference)) {
+			this.deducedMines |= difference;
+		}
+	}
+
+	/**
+	 * Reveals or flags every cell in a window mask.
+	 *
+	 * @param center
+	 *            the index of the cell the window is centered on
+	 * @param mask
+	 *            the cells to play
+	 * @param mines
+	 *            true to flag the cells, false to reveal them
+	 * @return true if a move was made
+	 */
+	private boolean apply(int center, long mask, boolean mines) {
+		int row = this.state.row(center);
+		int col = this.state.col(center);
+		boolean moved = false;
+
+		while (mask != 0 && !this.state.isOver()) {
+			int bit = Long.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+
+			int index = this.state.index(row + bit / WINDOW - CENTER, col + bit % WINDOW - CENTER);
+			if (mines) {
+				moved |= this.flag(index);
+			} else {
+				moved |= this.reveal(index);
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Reveals a cell the solver has proven safe.
+	 *
+	 * @return true if the cell was revealed
+	 */
+	private boolean reveal(int index) {
+		if (this.state.isRevealed(index) || this.state.isFlagged(index)) {
+			return false;
+		}
+		this.numMoves++;
+		this.state.reveal(index);
+		return true;
+	}
+
+	/**
+	 * Flags a cell the solver has proven to be a mine.
+	 *
+	 * @return true if the cell was flagged
+	 */
+	private boolean flag(int index) {
+		if (this.state.isFlagged(index) || this.state.isRevealed(index)) {
+			return false;
+		}
+		this.numMoves++;
+		return this.state.toggleFlag(index);
+	}
+
+	/**
+	 * @return the number of neighbors of a revealed cell that are neither
+	 *         revealed nor flagged
+	 */
+	int unknownNeighbors(int index) {
+		return this.state.numAdjacentHidden(index) - this.state.numAdjacentFlagged(index);
+	}
+
+	/**
+	 * @return the number of mines around a revealed cell that are not flagged
+	 */
+	int remainingMines(int index) {
+		return this.state.getAdjacent(index) - this.state.numAdjacentFlagged(index);
+	}
+
+	/**
+	 * Builds the set of neighbors of a cell that are neither revealed nor
+	 * flagged, as a mask over the window centered on the cell.
+	 */
+	private long unknownMask(int index) {
+		int count = this.neighbors.get(index, this.otherBuffer);
+		int rowOffset = CENTER - this.state.row(index);
+		int colOffset = CENTER - this.state.col(index);
+		long mask = 0;
+
+		for (int i = 0; i < count; i++) {
+			int adj = this.otherBuffer[i];
+
+			if (!this.state.isRevealed(adj) && !this.state.isFlagged(adj)) {
+				int r = this.state.row(adj) + rowOffset;
+				int c = this.state.col(adj) + colOffset;
+				mask |= 1L << (r * WINDOW + c);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Adds a revealed cell to the work list, unless it is already waiting.
+	 */
+	private void enqueue(int index) {
+		if (this.queued.get(index)) {
+			return;
+		}
+		this.queued.set(index);
+
+		if (this.workSize == this.work.length) {
+			this.work = Arrays.copyOf(this.work, 2 * this.work.length);
+		}
+		this.work[this.workSize++] = index;
+	}
+
+	/**
+	 * Remembers that a cell was examined, for the next linear pass.
+	 */
+	private void touch(int index) {
+		if (this.touchedBits.get(index)) {
+			return;
+		}
+		this.touchedBits.set(index);
+
+		if (this.numTouched == this.touched.length) {
+			this.touched = Arrays.copyOf(this.touched, 2 * this.touched.length);
+		}
+		this.touched[this.numTouched++] = index;
+	}
+
+	/**
+	 * Adds a revealed cell to the border, if it is not already on it.
+	 */
+	private void addBorder(int index) {
+		if (this.onBorder.get(index)) {
+			return;
+		}
+		this.onBorder.set(index);
+
+		if (this.borderSize == this.border.length) {
+			this.border = Arrays.copyOf(this.border, 2 * this.border.length);
+		}
+		this.border[this.borderSize++] = index;
+	}
+
+	/**
+	 * Adds the revealed neighbors of a cell to the work list.
+	 */
+	private void enqueueNeighbors(int index) {
+		int count = this.neighbors.get(index, this.neighborBuffer);
+
+		for (int i = 0; i < count; i++) {
+			if (this.state.isRevealed(this.neighborBuffer[i])) {
+				this.enqueue(this.neighborBuffer[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the revealed neighbors of a cell to the border.
+	 */
+	private void borderNeighbors(int index) {
+		int count = this.neighbors.get(index, this.neighborBuffer);
+
+		for (int i = 0; i < count; i++) {
+			if (this.state.isRevealed(this.neighborBuffer[i])) {
+				this.addBorder(this.neighborBuffer[i]);
+			}
+		}
+	}
+
+	@Override
+	public void cellsRevealed(int[] cells, int count) {
+		for (int i = 0; i < count; i++) {
+			this.enqueue(cells[i]);
+			this.enqueueNeighbors(cells[i]);
+			this.addBorder(cells[i]);
+		}
+	}
+
+	@Override
+	public void flagToggled(int index, boolean flagged) {
+		this.enqueueNeighbors(index);
+		// An unflagged cell is unknown again, to itself and its neighbors.
+		if (!flagged) {
+			this.borderNeighbors(index);
+			this.rewindInterior();
+		}
+	}
+
+	@Override
+	public void gameEnded(boolean won) {
+		this.clearWork();
+	}
+
+	@Override
+	public void gameReset() {
+		this.clearWork();
+		while (this.borderSize > 0) {
+			this.onBorder.clear(this.border[--this.borderSize]);
+		}
+		this.rewindInterior();
+		this.numMoves = 0;
+		this.numGuesses = 0;
+	}
+
+	@Override
+	public void stateRestored(int[] cells, int count) {
+		for (int i = 0; i < count; i++) {
+			if (this.state.isRevealed(cells[i])) {
+				this.enqueue(cells[i]);
+				this.addBorder(cells[i]);
+			}
+			this.enqueueNeighbors(cells[i]);
+			this.borderNeighbors(cells[i]);
+		}
+		this.rewindInterior();
+	}
+
+	/**
+	 * Empties the work list and the cells touched since the last linear pass.
+	 */
+	private void clearWork() {
+		while (this.workSize > 0) {
+			this.queued.clear(this.work[--this.workSize]);
+		}
+		while (this.numTouched > 0) {
+			this.touchedBits.clear(this.touched[--this.numTouched]);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Round trips through BoardIO's text and binary forms, for a game that
+ *         has not started, one under way with right and wrong flags, and one
+ *         that was lost.
+ *
+ */
+public class BoardIOTest {
+
+	@Test
+	public void textRoundTrips() throws IOException {
+		for (GameState state : games()) {
+			StringWriter out = new StringWriter();
+			BoardIO.writeText(state, out);
+			GameState read = BoardIO.readText(new StringReader(out.toString()));
+
+			SaveFileTest.assertSameGame(state, read);
+			assertEquals(state.getSeed(), read.getSeed());
+
+			// Writing what was read gives the same text.
+			StringWriter again = new StringWriter();
+			BoardIO.writeText(read, again);
+			assertEquals(out.toString(), again.toString());
+		}
+	}
+
+	@Test
+	public void binaryRoundTrips() throws IOException {
+		for (GameState state : games()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			BoardIO.writeBinary(state, out);
+			GameState read = BoardIO.readBinary(new ByteArrayInputStream(out.toByteArray()));
+
+			SaveFileTest.assertSameGame(state, read);
+			assertEquals(state.getSeed(), read.getSeed());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedBinaryIsRejected() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BoardIO.writeBinary(SaveFileTest.started(16, 30, 99, 4), out);
+		byte[] bytes = out.toByteArray();
+
+		BoardIO.readBinary(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+	}
+
+	/**
+	 * @return a new game, a game under way with a flag on a mine and one on
+	 *         a safe cell, and a lost game, on boards of odd and even sizes
+	 */
+	private static GameState[] games() {
+		GameState fresh = new GameState(9, 9, 10, 1);
+
+		GameState playing = SaveFileTest.started(16, 30, 99, 2);
+		playing.toggleFlag(playing.getMine(0));
+		playing.toggleFlag(SaveFileTest.firstHiddenSafe(playing));
+
+		GameState lost = SaveFileTest.started(33, 17, 100, 3);
+		lost.toggleFlag(lost.getMine(1));
+		lost.reveal(lost.getMine(0));
+
+		return new GameState[] { fresh, playing, lost };
+	}
+}
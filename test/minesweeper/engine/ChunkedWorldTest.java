@@ -0,0 +1,237 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Checks ChunkedWorld across chunk borders, through eviction to its
+ *         region files and back, and when a lost world is opened again.
+ *
+ */
+public class ChunkedWorldTest {
+
+	private static final int SIZE = ChunkedWorld.CHUNK_SIZE;
+	private static final int MINES = SIZE * SIZE / 8;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		this.directory = File.createTempFile("world", "");
+		this.directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		this.directory.delete();
+	}
+
+	@Test
+	public void adjacentMinesAcrossChunkBorders() throws IOException {
+		try (ChunkedWorld world = new ChunkedWorld(1, MINES, this.directory, 16)) {
+			// Every cell of the borders around the four chunks meeting at the
+			// origin, on both sides.
+			for (int a = -SIZE - 1; a <= SIZE; a++) {
+				for (int b : new int[] { -SIZE - 1, -SIZE, -1, 0, SIZE - 1, SIZE }) {
+					assertEquals(countMines(world, a, b), world.getAdjacent(a, b));
+					assertEquals(countMines(world, b, a), world.getAdjacent(b, a));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void cascadeCrossesChunkBorders() throws IOException {
+		try (ChunkedWorld world = new ChunkedWorld(3, MINES, this.directory, 64)) {
+			int revealed = world.reveal(0, 0);
+			assertFalse(world.isLost());
+
+			int count = 0;
+			boolean crossed = false;
+			for (int x = -4 * SIZE; x < 4 * SIZE; x++) {
+				for (int y = -4 * SIZE; y < 4 * SIZE; y++) {
+					if (!world.isRevealed(x, y)) {
+						continue;
+					}
+					count++;
+					crossed |= (x >> 6) != 0 || (y >> 6) != 0;
+					assertFalse(world.isMine(x, y));
+
+					// A revealed zero cell has every neighbor revealed.
+					if (world.getAdjacent(x, y) == 0) {
+						for (int dx = -1; dx <= 1; dx++) {
+							for (int dy = -1; dy <= 1; dy++) {
+								assertTrue(world.isRevealed(x + dx, y + dy));
+							}
+						}
+					}
+				}
+			}
+			assertEquals(revealed, count);
+			assertTrue(crossed);
+		}
+	}
+
+	@Test
+	public void evictedChunksAreReadBack() throws IOException {
+		int[] flagged;
+		int revealed;
+		try (ChunkedWorld world = new ChunkedWorld(5, MINES, this.directory, 16)) {
+			revealed = world.reveal(0, 0);
+			flagged = hiddenCell(world);
+			assertTrue(world.toggleFlag(flagged[0], flagged[1]));
+
+			// Walks far enough that the origin's chunks are evicted.
+			for (int i = 1; i <= 40; i++) {
+				world.isMine(0, i * SIZE * ChunkStore.REGION);
+			}
+			assertEquals(16, world.getNumLoaded());
+			assertTrue(world.getNumWrites() > 0);
+
+			assertTrue(world.isFlagged(flagged[0], flagged[1]));
+			assertEquals(revealed, countRevealed(world));
+		}
+
+		// And again from the directory alone.
+		try (ChunkedWorld world = new ChunkedWorld(5, MINES, this.directory, 16)) {
+			assertTrue(world.isFlagged(flagged[0], flagged[1]));
+			assertEquals(revealed, countRevealed(world));
+			assertFalse(world.isLost());
+		}
+	}
+
+	@Test
+	public void regionFilesStayCompact() throws IOException {
+		try (ChunkedWorld world = new ChunkedWorld(7, MINES, this.directory, 16)) {
+			// Every chunk of one region, written over and over.
+			for (int pass = 0; pass < 4; pass++) {
+				for (int cx = 0; cx < ChunkStore.REGION; cx++) {
+					for (int cy = 0; cy < ChunkStore.REGION; cy++) {
+						world.toggleFlag(cx * SIZE + pass, cy * SIZE + pass);
+					}
+				}
+				world.flush();
+			}
+		}
+
+		File[] files = this.directory.listFiles();
+		assertEquals(1, files.length);
+		// A flag or four deflates to well under a sector a chunk.
+		assertTrue(files[0].length() < 2L * ChunkStore.REGION * ChunkStore.REGION * 256);
+
+		try (ChunkedWorld world = new ChunkedWorld(7, MINES, this.directory, 16)) {
+			for (int cx = 0; cx < ChunkStore.REGION; cx++) {
+				for (int cy = 0; cy < ChunkStore.REGION; cy++) {
+					for (int pass = 0; pass < 4; pass++) {
+						assertEquals(!world.isRevealed(cx * SIZE + pass, cy * SIZE + pass),
+								world.isFlagged(cx * SIZE + pass, cy * SIZE + pass));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void lostWorldStaysLost() throws IOException {
+		int[] mine;
+		try (ChunkedWorld world = new ChunkedWorld(9, MINES, this.directory, 16)) {
+			world.reveal(0, 0);
+			mine = hiddenMine(world);
+			world.reveal(mine[0], mine[1]);
+			assertTrue(world.isLost());
+		}
+
+		try (ChunkedWorld world = new ChunkedWorld(9, MINES, this.directory, 16)) {
+			assertTrue(world.isLost());
+			assertEquals(mine[0], world.getExplodedX());
+			assertEquals(mine[1], world.getExplodedY());
+
+			int[] hidden = hiddenCell(world);
+			assertEquals(0, world.reveal(hidden[0], hidden[1]));
+			assertFalse(world.toggleFlag(hidden[0], hidden[1]));
+		}
+
+		// Another world in the same directory has not lost.
+		try (ChunkedWorld world = new ChunkedWorld(10, MINES, this.directory, 16)) {
+			assertFalse(world.isLost());
+		}
+	}
+
+	private static int countMines(ChunkedWorld world, int x, int y) {
+		int count = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if ((dx != 0 || dy != 0) && world.isMine(x + dx, y + dy)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static int countRevealed(ChunkedWorld world) {
+		int count = 0;
+		for (int x = -2 * SIZE; x < 2 * SIZE; x++) {
+			for (int y = -2 * SIZE; y < 2 * SIZE; y++) {
+				if (world.isRevealed(x, y)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return a hidden safe cell next to the revealed area around the origin
+	 */
+	private static int[] hiddenCell(ChunkedWorld world) {
+		return hidden(world, false);
+	}
+
+	/**
+	 * @return a hidden mine next to the revealed area around the origin
+	 */
+	private static int[] hiddenMine(ChunkedWorld world) {
+		return hidden(world, true);
+	}
+
+	private static int[] hidden(ChunkedWorld world, boolean mine) {
+		for (int x = 0; x < SIZE; x++) {
+			for (int y = 0; y < SIZE; y++) {
+				if (!world.isRevealed(x, y) && world.isMine(x, y) == mine && countRevealedAround(world, x, y) > 0) {
+					return new int[] { x, y };
+				}
+			}
+		}
+		throw new AssertionError("no hidden cell next to the revealed area");
+	}
+
+	private static int countRevealedAround(ChunkedWorld world, int x, int y) {
+		int count = 0;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (world.isRevealed(x + dx, y + dy)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
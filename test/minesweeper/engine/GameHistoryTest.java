@@ -0,0 +1,107 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Undo and redo through GameHistory: taking back the first move,
+ *         taking back a loss, and dropping the oldest versions to stay within
+ *         the memory budget.
+ *
+ */
+public class GameHistoryTest {
+
+	private static final long BUDGET = 64L << 20;
+
+	@Test
+	public void undoFirstMoveReturnsToNotStarted() {
+		GameState state = new GameState(16, 30, 99, 1);
+		GameHistory history = new GameHistory(state, BUDGET);
+		int center = state.index(8, 15);
+
+		state.placeMines(center);
+		state.reveal(center);
+		int revealed = state.getNumSafeRevealed();
+		assertTrue(history.undo());
+
+		assertFalse(state.isStarted());
+		assertFalse(history.canUndo());
+		assertEquals(0, state.getNumSafeRevealed());
+		for (int i = 0; i < state.getNumCells(); i++) {
+			assertFalse(state.isMine(i));
+			assertFalse(state.isRevealed(i));
+		}
+
+		assertTrue(history.redo());
+		assertTrue(state.isStarted());
+		assertEquals(revealed, state.getNumSafeRevealed());
+		assertEquals(state.getNumMines(), countMines(state));
+
+		// Once undone again, the first click can go elsewhere.
+		history.undo();
+		state.placeMines(0);
+		state.reveal(0);
+		assertTrue(state.isRevealed(0));
+		assertEquals(state.getNumMines(), countMines(state));
+	}
+
+	@Test
+	public void undoLosingRevealClearsLoss() {
+		GameState state = SaveFileTest.started(16, 30, 99, 2);
+		GameHistory history = new GameHistory(state, BUDGET);
+		int revealed = state.getNumSafeRevealed();
+
+		int mine = state.getMine(0);
+		state.reveal(mine);
+		assertTrue(state.isLost());
+		assertTrue(history.undo());
+
+		assertFalse(state.isLost());
+		assertFalse(state.isOver());
+		assertEquals(-1, state.getExploded());
+		assertFalse(state.isRevealed(mine));
+		assertEquals(revealed, state.getNumSafeRevealed());
+
+		// The game goes on from where it was.
+		int safe = SaveFileTest.firstHiddenSafe(state);
+		assertTrue(state.reveal(safe) > 0);
+	}
+
+	@Test
+	public void budgetDropsOldestVersions() {
+		GameState state = SaveFileTest.started(16, 30, 99, 3);
+		// Too small for any version but the newest.
+		GameHistory history = new GameHistory(state, 0);
+
+		int[] flagged = new int[10];
+		for (int i = 0; i < flagged.length; i++) {
+			flagged[i] = state.getMine(i);
+			state.toggleFlag(flagged[i]);
+		}
+		assertEquals(1, history.getNumUndo());
+
+		assertTrue(history.undo());
+		assertFalse(history.canUndo());
+		assertFalse(state.isFlagged(flagged[flagged.length - 1]));
+		for (int i = 0; i < flagged.length - 1; i++) {
+			assertTrue(state.isFlagged(flagged[i]));
+		}
+		assertEquals(flagged.length - 1, state.getNumFlagged());
+	}
+
+	private static int countMines(GameState state) {
+		int count = 0;
+		for (int i = 0; i < state.getNumCells(); i++) {
+			if (state.isMine(i)) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
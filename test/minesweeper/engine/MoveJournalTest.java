@@ -0,0 +1,127 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Round trips through MoveJournal and MoveReplayer for RESTORE
+ *         records that start near the end of the journal's buffer, where the
+ *         varints after the cells and the mines must not run past it.
+ *
+ */
+public class MoveJournalTest {
+
+	// The lengths begin() leaves the buffer at without draining it.
+	private static final int FIRST_START = 8150;
+	private static final int LAST_START = 8171;
+
+	// Cells the buffer is padded with flags on, 100 apart so that moving
+	// between them takes a 4-byte record and staying on one a 3-byte record.
+	private static final int PAD_A = 500;
+	private static final int PAD_B = 600;
+
+	@Test
+	public void restoreCellsAtEndOfBuffer() throws IOException {
+		int rows = 300, cols = 300;
+		int mine = 80000;
+
+		for (int start = FIRST_START; start <= LAST_START; start++) {
+			for (int count = 0; count <= 8; count++) {
+				GameState state = new GameState(rows, cols, 1, 1);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				MoveJournal journal = new MoveJournal(state, out);
+
+				state.placeMines(0, layout(rows, cols, mine));
+				// The losing reveal takes 5 bytes, so that the exploded mine
+				// needs 3 bytes at the end of the record.
+				pad(state, journal, start - 5);
+				state.reveal(mine);
+				assertEquals(start, journal.getNumBuffered());
+
+				// Cells far apart take 4 bytes each.
+				int[] cells = new int[count];
+				for (int i = 0; i < count; i++) {
+					cells[i] = i % 2 == 0 ? 0 : rows * cols - 1;
+				}
+				journal.restore(state, cells, count, false);
+
+				assertRoundTrip(state, journal, out);
+			}
+		}
+	}
+
+	@Test
+	public void restoreMinesAtEndOfBuffer() throws IOException {
+		int rows = 1000, cols = 1000;
+		// Gaps of 3 bytes each between the mines.
+		int[] mines = new int[10];
+		for (int i = 0; i < mines.length; i++) {
+			mines[i] = 50000 + 50000 * i;
+		}
+
+		for (int start = FIRST_START; start <= LAST_START; start++) {
+			GameState state = new GameState(rows, cols, mines.length, 1);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			MoveJournal journal = new MoveJournal(state, out);
+
+			state.placeMines(0, layout(rows, cols, mines));
+			pad(state, journal, start);
+
+			// Enough cells that their count takes 3 bytes.
+			int[] cells = new int[20000];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = i;
+			}
+			journal.restore(state, cells, cells.length, true);
+
+			assertRoundTrip(state, journal, out);
+		}
+	}
+
+	private static BitBoard layout(int rows, int cols, int... mines) {
+		BitBoard layout = new BitBoard(rows, cols);
+		for (int mine : mines) {
+			layout.set(mine);
+		}
+		return layout;
+	}
+
+	/**
+	 * Toggles flags until exactly length bytes are buffered.
+	 */
+	private static void pad(GameState state, MoveJournal journal, int length) {
+		int cell = PAD_A;
+		state.toggleFlag(cell);
+		while (journal.getNumBuffered() < length) {
+			if ((length - journal.getNumBuffered()) % 3 != 0) {
+				cell = cell == PAD_A ? PAD_B : PAD_A;
+			}
+			state.toggleFlag(cell);
+		}
+		assertEquals(length, journal.getNumBuffered());
+	}
+
+	private static void assertRoundTrip(GameState state, MoveJournal journal, ByteArrayOutputStream out)
+			throws IOException {
+		journal.close();
+		GameState replayed = MoveReplayer.replay(new ByteArrayInputStream(out.toByteArray()), Long.MAX_VALUE);
+
+		assertEquals(state.isStarted(), replayed.isStarted());
+		assertEquals(state.getExploded(), replayed.getExploded());
+		assertEquals(state.getNumFlagged(), replayed.getNumFlagged());
+		assertEquals(state.getNumSafeRevealed(), replayed.getNumSafeRevealed());
+		for (int i = 0; i < state.getNumCells(); i++) {
+			assertEquals(state.isMine(i), replayed.isMine(i));
+			assertEquals(state.isRevealed(i), replayed.isRevealed(i));
+			assertEquals(state.isFlagged(i), replayed.isFlagged(i));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Checks that ParallelGenerator gives a seed the same layout and
+ *         counts on pools of any size, with exactly the requested number of
+ *         mines and none around the first click.
+ *
+ */
+public class ParallelGeneratorTest {
+
+	// Several stripes tall, with a first click on a seam between stripes.
+	private static final int ROWS = 3000, COLS = 1024;
+	private static final int MINES = 600000;
+
+	@Test
+	public void sameLayoutOnAnyPool() {
+		int safeIndex = ParallelGenerator.stripeRows(COLS) * COLS + COLS / 2;
+		GameState expected = generate(1, safeIndex);
+
+		assertEquals(MINES, expected.mine.cardinality());
+		for (int dr = -1; dr <= 1; dr++) {
+			for (int dc = -1; dc <= 1; dc++) {
+				assertFalse(expected.isMine(safeIndex + dr * COLS + dc));
+			}
+		}
+
+		for (int threads : new int[] { 2, 3, 8 }) {
+			GameState state = generate(threads, safeIndex);
+
+			assertArrayEquals("threads " + threads, expected.mine.words, state.mine.words);
+			assertArrayEquals("threads " + threads, expected.adjacent, state.adjacent);
+		}
+	}
+
+	@Test
+	public void countsMatchSerialCounting() {
+		GameState state = generate(4, 0);
+
+		for (int i = 0; i < state.getNumCells(); i++) {
+			if (state.isMine(i)) {
+				continue;
+			}
+			int count = 0;
+			int row = state.row(i), col = state.col(i);
+			for (int dr = -1; dr <= 1; dr++) {
+				for (int dc = -1; dc <= 1; dc++) {
+					if ((dr != 0 || dc != 0) && state.isInBounds(row + dr, col + dc)
+							&& state.isMine(state.index(row + dr, col + dc))) {
+						count++;
+					}
+				}
+			}
+			assertEquals(count, state.getAdjacent(i));
+		}
+	}
+
+	private static GameState generate(int threads, int safeIndex) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			GameState state = new GameState(ROWS, COLS, MINES, 42);
+			state.placeMines(safeIndex, pool);
+			return state;
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package minesweeper.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Round trips through SaveFile: a game saved and opened again, a
+ *         header torn by a crash, which falls back to the save before, and a
+ *         save given a game of another size with reuse.
+ *
+ */
+public class SaveFileTest {
+
+	// Where the second header slot starts, and a byte inside its checksummed
+	// part.
+	private static final int SECOND_SLOT = 4096;
+	private static final int TORN_BYTE = 30;
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		this.file = File.createTempFile("save", ".msav");
+	}
+
+	@After
+	public void deleteFile() {
+		this.file.delete();
+	}
+
+	@Test
+	public void createThenOpen() throws IOException {
+		GameState state = started(16, 30, 99, 1);
+		state.toggleFlag(state.getMine(0));
+
+		SaveFile save = SaveFile.create(this.file, state);
+		try {
+			assertSameGame(state, this.reopen());
+
+			// Later saves only write what changed.
+			state.reveal(firstHiddenSafe(state));
+			state.toggleFlag(state.getMine(1));
+			save.save();
+			assertSameGame(state, this.reopen());
+		} finally {
+			save.close();
+		}
+	}
+
+	@Test
+	public void tornHeaderFallsBackToPreviousSave() throws IOException {
+		GameState state = started(16, 30, 99, 2);
+		SaveFile save = SaveFile.create(this.file, state);
+		GameState before;
+		try {
+			before = copy(state);
+			// The second save goes to the second slot.
+			state.toggleFlag(state.getMine(0));
+			save.save();
+		} finally {
+			save.close();
+		}
+
+		this.corrupt(SECOND_SLOT + TORN_BYTE);
+		assertSameGame(before, this.reopen());
+	}
+
+	@Test(expected = IOException.class)
+	public void bothHeadersTornIsRejected() throws IOException {
+		GameState state = started(16, 30, 99, 3);
+		SaveFile save = SaveFile.create(this.file, state);
+		try {
+			state.toggleFlag(state.getMine(0));
+			save.save();
+		} finally {
+			save.close();
+		}
+
+		this.corrupt(TORN_BYTE);
+		this.corrupt(SECOND_SLOT + TORN_BYTE);
+		SaveFile.open(this.file).close();
+	}
+
+	@Test
+	public void reuseWritesOverAnotherSize() throws IOException {
+		GameState expert = started(16, 30, 99, 1);
+		GameState huge = started(200, 300, 9000, 2);
+		GameState easy = started(9, 9, 10, 3);
+
+		SaveFile save = SaveFile.create(this.file, expert);
+		try {
+			save.reuse(huge);
+			assertSameGame(huge, this.reopen());
+
+			// Smaller than before, so the new regions overlap the old ones.
+			save.reuse(easy);
+			easy.toggleFlag(firstHiddenSafe(easy));
+			save.save();
+			assertSameGame(easy, this.reopen());
+		} finally {
+			save.close();
+		}
+	}
+
+	/**
+	 * @return a game with its first cell revealed
+	 */
+	static GameState started(int rows, int cols, int mines, long seed) {
+		GameState state = new GameState(rows, cols, mines, seed);
+		int center = state.index(rows / 2, cols / 2);
+		state.placeMines(center);
+		state.reveal(center);
+		return state;
+	}
+
+	static int firstHiddenSafe(GameState state) {
+		int index = 0;
+		while (state.isRevealed(index) || state.isMine(index)) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Checks that two games are the same size and look the same.
+	 */
+	static void assertSameGame(GameState expected, GameState actual) {
+		assertEquals(expected.getRows(), actual.getRows());
+		assertEquals(expected.getCols(), actual.getCols());
+		assertEquals(expected.getNumMines(), actual.getNumMines());
+		assertEquals(expected.isStarted(), actual.isStarted());
+		assertEquals(expected.isLost(), actual.isLost());
+		assertEquals(expected.getExploded(), actual.getExploded());
+		assertEquals(expected.getNumFlagged(), actual.getNumFlagged());
+		assertEquals(expected.getNumSafeRevealed(), actual.getNumSafeRevealed());
+		for (int i = 0; i < expected.getNumCells(); i++) {
+			assertEquals(expected.isMine(i), actual.isMine(i));
+			assertEquals(expected.isRevealed(i), actual.isRevealed(i));
+			assertEquals(expected.isFlagged(i), actual.isFlagged(i));
+			if (!expected.isMine(i)) {
+				assertEquals(expected.getAdjacent(i), actual.getAdjacent(i));
+			}
+		}
+	}
+
+	private static GameState copy(GameState state) throws IOException {
+		StringWriter out = new StringWriter();
+		BoardIO.writeText(state, out);
+		return BoardIO.readText(new StringReader(out.toString()));
+	}
+
+	/**
+	 * Flips every bit of one byte of the file, as a write torn by a crash
+	 * could leave it.
+	 */
+	private void corrupt(long offset) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+			raf.seek(offset);
+			int b = raf.read();
+			raf.seek(offset);
+			raf.write(~b);
+		}
+	}
+
+	private GameState reopen() throws IOException {
+		SaveFile save = SaveFile.open(this.file);
+		try {
+			assertTrue(save.getState().isStarted());
+			return save.getState();
+		} finally {
+			save.close();
+		}
+	}
+}
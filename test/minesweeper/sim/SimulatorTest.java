@@ -0,0 +1,77 @@
+package minesweeper.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Checks that a run's shared PatternCache is used by its solvers, does
+ *         not change the results, and starts a later run warm from its file,
+ *         and that a run with guessing gives the same results on any number
+ *         of threads.
+ *
+ */
+public class SimulatorTest {
+
+	private static final int GAMES = 500;
+
+	@Test
+	public void patternCacheKeepsResults() {
+		Simulator cold = Simulator.forDifficulty("HARD", Strategy.LINEAR);
+		cold.setThreads(2);
+		cold.setPatternCacheCapacity(0);
+		SimulationReport uncached = cold.run(0, GAMES);
+
+		Simulator warm = Simulator.forDifficulty("HARD", Strategy.LINEAR);
+		warm.setThreads(2);
+		SimulationReport cached = warm.run(0, GAMES);
+
+		assertEquals(0, uncached.getCacheHits() + uncached.getCacheMisses());
+		assertTrue(cached.getCacheHits() > 0);
+		assertEquals(uncached.getWins(), cached.getWins());
+		assertEquals(uncached.getMeanMoves(), cached.getMeanMoves(), 0);
+	}
+
+	@Test
+	public void guessRunsMatchAcrossThreads() {
+		Simulator single = Simulator.forDifficulty("HARD", Strategy.GUESS);
+		single.setThreads(1);
+		SimulationReport one = single.run(0, GAMES);
+
+		Simulator multi = Simulator.forDifficulty("HARD", Strategy.GUESS);
+		multi.setThreads(3);
+		SimulationReport three = multi.run(0, GAMES);
+
+		assertEquals(one.getWins(), three.getWins());
+		assertEquals(one.getMeanMoves(), three.getMeanMoves(), 0);
+	}
+
+	@Test
+	public void patternCacheFileStartsWarm() throws IOException {
+		File file = File.createTempFile("patterns", ".bin");
+		file.delete();
+		try {
+			Simulator simulator = Simulator.forDifficulty("HARD", Strategy.LOCAL);
+			simulator.setThreads(1);
+			simulator.setPatternCacheFile(file);
+
+			SimulationReport first = simulator.run(0, GAMES);
+			assertTrue(file.exists());
+			// The same games again find every window in the saved cache.
+			SimulationReport second = simulator.run(0, GAMES);
+
+			assertTrue(first.getCacheMisses() > 0);
+			assertEquals(0, second.getCacheMisses());
+			assertEquals(first.getCacheHits() + first.getCacheMisses(), second.getCacheHits());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package minesweeper.solver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import minesweeper.engine.BoardIO;
+import minesweeper.engine.GameState;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Checks that a ProbabilityEngine only proves cells that really are
+ *         safe or mined, and that a result weighed by the mine density
+ *         because it has too many components is not marked exact.
+ *
+ */
+public class ProbabilityEngineTest {
+
+	@Test
+	public void provenCellsAreRight() {
+		int proven = 0;
+
+		for (long seed = 0; seed < 200; seed++) {
+			GameState state = new GameState(16, 30, 99, seed);
+			int center = state.index(8, 15);
+			state.placeMines(center);
+			state.reveal(center);
+			new Solver(state).solve();
+			if (state.isOver()) {
+				continue;
+			}
+
+			Probabilities probabilities = new ProbabilityEngine(state).compute();
+			for (int i = 0; i < probabilities.getNumFrontier(); i++) {
+				int cell = probabilities.getCell(i);
+				if (probabilities.isSafe(i)) {
+					assertFalse("seed " + seed, state.isMine(cell));
+					proven++;
+				} else if (probabilities.isMine(i)) {
+					assertTrue("seed " + seed, state.isMine(cell));
+					proven++;
+				}
+			}
+		}
+
+		assertTrue(proven > 0);
+	}
+
+	@Test
+	public void fewComponentsAreExact() throws IOException {
+		Probabilities probabilities = new ProbabilityEngine(separateOnes(20)).compute();
+
+		assertTrue(probabilities.isExact());
+	}
+
+	@Test
+	public void tooManyComponentsAreNotExact() throws IOException {
+		Probabilities probabilities = new ProbabilityEngine(separateOnes(50)).compute();
+
+		assertFalse(probabilities.isExact());
+		for (int i = 0; i < probabilities.getNumFrontier(); i++) {
+			assertFalse(probabilities.isSafe(i));
+			assertFalse(probabilities.isMine(i));
+		}
+	}
+
+	/**
+	 * Reads a board of three rows with a revealed 1 every four columns, each
+	 * next to a mine and to none of the other 1s' hidden cells, so that every
+	 * 1 is a component of its own. Every other block also has a mine away
+	 * from the frontier.
+	 */
+	private static GameState separateOnes(int blocks) throws IOException {
+		StringBuilder top = new StringBuilder();
+		StringBuilder middle = new StringBuilder();
+		StringBuilder bottom = new StringBuilder();
+		int mines = 0;
+
+		for (int j = 0; j < blocks; j++) {
+			top.append(".*..");
+			middle.append(".1..");
+			bottom.append((j % 2 == 0) ? "...*" : "....");
+			mines += (j % 2 == 0) ? 2 : 1;
+		}
+
+		String board = "minesweeper 3 " + (4 * blocks) + " " + mines + " 0 started\n" + top + "\n" + middle
+				+ "\n" + bottom + "\n";
+		return BoardIO.readText(new StringReader(board));
+	}
+}
@@ -0,0 +1,79 @@
+package minesweeper.solver;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import minesweeper.engine.GameState;
+
+/**
+ *
+ * @author blueajo
+ *
+ *         Checks that a Solver with a PatternCache plays the same moves as one
+ *         without, including around numbers with more flags next to them than
+ *         mines, whose windows must not be mistaken for other windows.
+ *
+ */
+public class SolverTest {
+
+	@Test
+	public void patternCacheWithWronglyFlaggedNeighbor() {
+		PatternCache cache = new PatternCache(1 << 16);
+
+		for (long seed = 0; seed < 300; seed++) {
+			GameState cached = wronglyFlagged(seed);
+			GameState uncached = wronglyFlagged(seed);
+
+			Solver solver = new Solver(cached);
+			solver.setPatternCache(cache);
+			solver.solve();
+			new Solver(uncached).solve();
+
+			assertEquals("seed " + seed, uncached.isLost(), cached.isLost());
+			for (int i = 0; i < cached.getNumCells(); i++) {
+				assertEquals("seed " + seed, uncached.isRevealed(i), cached.isRevealed(i));
+				assertEquals("seed " + seed, uncached.isFlagged(i), cached.isFlagged(i));
+			}
+		}
+	}
+
+	/**
+	 * Starts an expert game and flags every safe hidden neighbor of a few
+	 * numbers that have at least three more of them than mines.
+	 */
+	private static GameState wronglyFlagged(long seed) {
+		GameState state = new GameState(16, 30, 99, seed);
+		int center = state.index(8, 15);
+		state.placeMines(center);
+		state.reveal(center);
+
+		int[] neighbors = new int[8];
+		int numbers = 0;
+		for (int i = 0; i < state.getNumCells() && numbers < 3; i++) {
+			if (!state.isRevealed(i) || state.getAdjacent(i) == 0) {
+				continue;
+			}
+
+			int count = state.getNeighbors().get(i, neighbors);
+			int safe = 0;
+			for (int k = 0; k < count; k++) {
+				if (!state.isRevealed(neighbors[k]) && !state.isMine(neighbors[k])) {
+					safe++;
+				}
+			}
+			if (safe < state.getAdjacent(i) + 3) {
+				continue;
+			}
+
+			for (int k = 0; k < count; k++) {
+				if (!state.isRevealed(neighbors[k]) && !state.isMine(neighbors[k])
+						&& !state.isFlagged(neighbors[k])) {
+					state.toggleFlag(neighbors[k]);
+				}
+			}
+			numbers++;
+		}
+		return state;
+	}
+}